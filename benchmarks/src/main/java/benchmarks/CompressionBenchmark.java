@@ -0,0 +1,120 @@
+package benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import compression_algorithms.CompressionAlgorithm;
+import compression_algorithms.CompressionAlgorithms;
+import compression_algorithms.PixelBuffer;
+import compression_algorithms.PixelBufferRowSource;
+import compression_algorithms.RowSink;
+
+/**
+ * Encode and decode throughput of every compression algorithm on the generated corpus.
+ *
+ * Besides ops/s, each benchmark reports the rawBytes and compressedBytes aux
+ * counters. Their rates are the throughput in bytes per second, and their
+ * quotient is the compression ratio. Run with -prof gc for the allocation rate.
+ * @author JLepere2
+ * @date 06/01/2018
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CompressionBenchmark {
+
+	@Param({"RunLengthCoding", "RunLengthCodingBitPlane", "RunLengthCodingGrayBitPlane", "HuffmanCoding", "AdaptiveHuffmanCoding", "RansCoding", "ContextHuffmanCoding", "LZCoding", "LazyLZCoding", "Auto", "PredictiveHuffmanCoding", "PredictiveRansCoding"})
+	public String algorithm;
+	
+	@Param({"FLAT", "GRADIENT", "NOISE", "NATURAL"})
+	public Corpus corpus;
+	
+	@Param({"256", "1024", "4096"})
+	public int size;
+	
+	/**
+	 * Generates the image and its compressed form.
+	 * @throws IOException
+	 */
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		algo = CompressionAlgorithms.forName(algorithm);
+		source = new PixelBufferRowSource(PixelBuffer.fromMatrix(corpus.generate(size, SEED)));
+		out = new ReusableOutputStream(size * size);
+		algo.encode(source, out);
+		compressed = out.toByteArray();
+		sink = new BlackholeRowSink();
+	}
+	
+	@Benchmark
+	public void encode(Sizes sizes) throws IOException {
+		source.reset();
+		out.reset();
+		algo.encode(source, out);
+		sizes.rawBytes += (long) size * size;
+		sizes.compressedBytes += out.size();
+	}
+	
+	@Benchmark
+	public void decode(Sizes sizes, Blackhole blackhole) throws IOException {
+		sink.blackhole = blackhole;
+		algo.decode(new ByteArrayInputStream(compressed), sink);
+		sizes.rawBytes += (long) size * size;
+		sizes.compressedBytes += compressed.length;
+	}
+	
+	/*
+	 * Bytes processed, reported per second by JMH
+	 */
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.OPERATIONS)
+	public static class Sizes {
+		public long rawBytes;
+		public long compressedBytes;
+	}
+	
+	/*
+	 * Output stream that keeps its buffer between invocations
+	 */
+	static class ReusableOutputStream extends ByteArrayOutputStream {
+		ReusableOutputStream(int size) { super(size); }
+	}
+	
+	/*
+	 * Row sink consuming the decoded rows
+	 */
+	static class BlackholeRowSink implements RowSink {
+		public void begin(int width, int height) { }
+		public void writeRow(int y, int[] row) { blackhole.consume(row); }
+		Blackhole blackhole;
+	}
+	
+	private CompressionAlgorithm algo;
+	private PixelBufferRowSource source;
+	private ReusableOutputStream out;
+	private byte[] compressed;
+	private BlackholeRowSink sink;
+	
+	private static final long SEED = 42;
+
+}
@@ -0,0 +1,98 @@
+package benchmarks;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Generated benchmark images. Every image is a pure function of its kind,
+ * size and seed, so results are comparable between runs.
+ * @author JLepere2
+ * @date 06/01/2018
+ */
+public enum Corpus {
+
+	/** A single gray value, the best case for run length coding. */
+	FLAT,
+	
+	/** A diagonal ramp through all gray values. */
+	GRADIENT,
+	
+	/** Uniform random gray values, incompressible by all coders. */
+	NOISE,
+	
+	/** Smooth multi-octave value noise with sensor grain, like a photograph. */
+	NATURAL;
+	
+	/**
+	 * Generates a square image.
+	 * @param size the width and height of the image
+	 * @param seed the random seed
+	 * @return the image
+	 */
+	public int[][] generate(int size, long seed) {
+		Random random = new Random(seed);
+		int[][] image = new int[size][size];
+		switch (this) {
+		case FLAT:
+			for (int[] row : image) Arrays.fill(row, 128);
+			break;
+		case GRADIENT:
+			for (int y = 0; y < size; y ++) {
+				for (int x = 0; x < size; x ++) {
+					image[y][x] = ((x + y) * 255 / Math.max(1, 2 * size - 2)) & 0xFF;
+				}
+			}
+			break;
+		case NOISE:
+			for (int y = 0; y < size; y ++) {
+				for (int x = 0; x < size; x ++) {
+					image[y][x] = random.nextInt(256);
+				}
+			}
+			break;
+		case NATURAL:
+			double[][] sum = new double[size][size];
+			double amplitude = 64;
+			for (int cell = Math.max(2, size / 4); cell >= 2; cell /= 2) {
+				addValueNoise(sum, cell, amplitude, random);
+				amplitude /= 1.8;
+			}
+			for (int y = 0; y < size; y ++) {
+				for (int x = 0; x < size; x ++) {
+					int gv = (int) Math.round(128 + sum[y][x] + random.nextGaussian() * 2);
+					image[y][x] = Math.max(0, Math.min(255, gv));
+				}
+			}
+			break;
+		}
+		return image;
+	}
+	
+	/**
+	 * Adds one octave of bilinearly interpolated random lattice values.
+	 * @param sum the image to add to
+	 * @param cell the lattice spacing in pixels
+	 * @param amplitude the maximum value added
+	 * @param random the random source
+	 */
+	private static void addValueNoise(double[][] sum, int cell, double amplitude, Random random) {
+		int size = sum.length;
+		int n = size / cell + 2;
+		double[][] lattice = new double[n][n];
+		for (double[] row : lattice) {
+			for (int i = 0; i < n; i ++) row[i] = (random.nextDouble() * 2 - 1) * amplitude;
+		}
+		for (int y = 0; y < size; y ++) {
+			int ly = y / cell;
+			double fy = (double) (y % cell) / cell;
+			for (int x = 0; x < size; x ++) {
+				int lx = x / cell;
+				double fx = (double) (x % cell) / cell;
+				double top = lattice[ly][lx] * (1 - fx) + lattice[ly][lx + 1] * fx;
+				double bottom = lattice[ly + 1][lx] * (1 - fx) + lattice[ly + 1][lx + 1] * fx;
+				sum[y][x] += top * (1 - fy) + bottom * fy;
+			}
+		}
+	}
+
+}
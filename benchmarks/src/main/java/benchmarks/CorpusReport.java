@@ -0,0 +1,42 @@
+package benchmarks;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import compression_algorithms.CompressionAlgorithm;
+import compression_algorithms.CompressionAlgorithms;
+import compression_algorithms.MatrixRowSource;
+
+/**
+ * Prints the compressed size and ratio of every algorithm on the corpus,
+ * so output size regressions show up without running the full benchmark.
+ * @author JLepere2
+ * @date 06/01/2018
+ */
+public class CorpusReport {
+
+	/**
+	 * Prints the size table.
+	 * @param args the image sizes, default 256 1024
+	 * @throws IOException
+	 */
+	public static void main(String[] args) throws IOException {
+		int[] sizes = args.length == 0 ? new int[]{256, 1024} : new int[args.length];
+		for (int i = 0; i < args.length; i ++) sizes[i] = Integer.parseInt(args[i]);
+		
+		System.out.printf("%-36s %-9s %6s %12s %8s%n", "algorithm", "corpus", "size", "bytes", "ratio");
+		for (CompressionAlgorithm algo : CompressionAlgorithms.getAll()) {
+			for (Corpus corpus : Corpus.values()) {
+				for (int size : sizes) {
+					ByteArrayOutputStream out = new ByteArrayOutputStream();
+					algo.encode(new MatrixRowSource(corpus.generate(size, SEED)), out);
+					System.out.printf("%-36s %-9s %6d %12d %8.3f%n", algo, corpus, size, out.size(),
+							(double) size * size / out.size());
+				}
+			}
+		}
+	}
+	
+	private static final long SEED = 42;
+
+}
@@ -0,0 +1,142 @@
+package compression_algorithms;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+/**
+ * Round trips every algorithm over images of odd sizes: empty images, single
+ * rows and columns, and sizes that are not a multiple of the tile size.
+ * @author JLepere2
+ * @date 06/01/2018
+ */
+@RunWith(Parameterized.class)
+public class RoundTripTest {
+
+	/**
+	 * Gets every algorithm.
+	 * @return the algorithms, one per test run
+	 */
+	@Parameters(name = "{0}")
+	public static Collection<Object[]> algorithms() {
+		List<Object[]> algorithms = new ArrayList<>();
+		for (CompressionAlgorithm algo : CompressionAlgorithms.getAll()) {
+			algorithms.add(new Object[]{algo});
+		}
+		return algorithms;
+	}
+	
+	/**
+	 * Creates the test of an algorithm.
+	 * @param algo the algorithm
+	 */
+	public RoundTripTest(CompressionAlgorithm algo) {
+		this.algo = algo;
+	}
+	
+	@Test
+	public void emptyImage() throws IOException {
+		roundTrip(0, 0);
+		roundTrip(0, 5);
+		roundTrip(5, 0);
+	}
+	
+	@Test
+	public void singlePixel() throws IOException {
+		roundTrip(1, 1);
+	}
+	
+	@Test
+	public void singleRow() throws IOException {
+		roundTrip(1000, 1);
+	}
+	
+	@Test
+	public void singleColumn() throws IOException {
+		roundTrip(1, 1000);
+	}
+	
+	@Test
+	public void partialTiles() throws IOException {
+		roundTrip(257, 300);
+		roundTrip(513, 255);
+	}
+	
+	/**
+	 * Encodes an image and checks that the buffer and the stream decoders restore it.
+	 * @param width the width of the image
+	 * @param height the height of the image
+	 * @throws IOException
+	 */
+	private void roundTrip(int width, int height) throws IOException {
+		PixelBuffer image = generate(width, height);
+		byte[] data = algo.encode(image);
+		
+		// decode from a buffer
+		assertPixels(image, algo.decodePixels(data));
+		
+		// decode from a stream
+		PixelBufferRowSink sink = new PixelBufferRowSink();
+		algo.decode(new ByteArrayInputStream(data), sink);
+		assertPixels(image, sink.getPixels());
+		
+		// encode to a stream
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		algo.encode(new PixelBufferRowSource(image), out);
+		assertPixels(image, algo.decodePixels(out.toByteArray()));
+	}
+	
+	/**
+	 * Generates an image with flat areas, ramps and noise.
+	 * @param width the width of the image
+	 * @param height the height of the image
+	 * @return the image
+	 */
+	private static PixelBuffer generate(int width, int height) {
+		Random random = new Random(width * 31L + height);
+		PixelBuffer image = new PixelBuffer(width, height);
+		for (int y = 0; y < height; y ++) {
+			for (int x = 0; x < width; x ++) {
+				int v;
+				if (x < width / 3) {
+					v = 200;
+				} else if (y < height / 2) {
+					v = x + y;
+				} else {
+					v = random.nextInt(256);
+				}
+				image.set(x, y, v & 0xFF);
+			}
+		}
+		return image;
+	}
+	
+	/**
+	 * Checks that two images have the same size and gray values.
+	 * @param expected the original image
+	 * @param actual the decoded image
+	 */
+	private void assertPixels(PixelBuffer expected, PixelBuffer actual) {
+		assertEquals(algo + " width", expected.getWidth(), actual.getWidth());
+		assertEquals(algo + " height", expected.getHeight(), actual.getHeight());
+		for (int y = 0; y < expected.getHeight(); y ++) {
+			for (int x = 0; x < expected.getWidth(); x ++) {
+				assertEquals(algo + " pixel " + x + "," + y, expected.get(x, y), actual.get(x, y));
+			}
+		}
+	}
+	
+	private final CompressionAlgorithm algo;
+
+}
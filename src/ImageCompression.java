@@ -1,21 +1,35 @@
 import java.awt.BorderLayout;
+import java.awt.FlowLayout;
 import java.awt.GridLayout;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ExecutionException;
 
 import javax.swing.JButton;
+import javax.swing.JComboBox;
 import javax.swing.JFrame;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
+import javax.swing.SwingUtilities;
 
+import cache.CompressionCache;
 import components.DecompressedImageLabel;
+import components.JobPanel;
 import components.OriginalImageLabel;
+import compression_algorithms.CachedCompression;
 import compression_algorithms.CompressionAlgorithm;
-import compression_algorithms.HuffmanCoding;
-import compression_algorithms.RunLengthCoding;
-import compression_algorithms.RunLengthCodingBitPlane;
+import compression_algorithms.CompressionAlgorithms;
+import compression_algorithms.InstrumentedCompression;
+import compression_algorithms.PixelBuffer;
+import compression_algorithms.PixelBufferRowSource;
 import io.Utilities;
+import jobs.CompressionJob;
+import jobs.CompressionJobs;
+import metrics.MetricsExporter;
+import metrics.MetricsRegistry;
 
 /**
  * Main class for Image Compression project.
@@ -38,8 +52,8 @@ public class ImageCompression {
 		mainFrame.setResizable(false);
 		mainFrame.setLayout(new BorderLayout());
 		
-		// get default image matrix
-		final int[][] image;
+		// get default image
+		final PixelBuffer image;
 		try {
 			image = Utilities.getDefaultImage();
 		} catch (IOException e) {
@@ -48,11 +62,24 @@ public class ImageCompression {
 		}
 		
 		// compression/decompression algorithms
-		CompressionAlgorithm[] compressionAlgorithms = new CompressionAlgorithm[]{
-			new RunLengthCoding(),
-			new RunLengthCodingBitPlane(),
-			new HuffmanCoding()
-		};
+		CompressionAlgorithm[] compressionAlgorithms = CompressionAlgorithms.getAll();
+		
+		// answer repeated compressions of the same image from memory
+		CompressionCache cache = new CompressionCache(CACHE_BYTES);
+		for (int i = 0; i < compressionAlgorithms.length; i ++) {
+			compressionAlgorithms[i] = new CachedCompression(compressionAlgorithms[i], cache);
+		}
+		
+		// record the metrics of every algorithm, cache hits included
+		for (int i = 0; i < compressionAlgorithms.length; i ++) {
+			compressionAlgorithms[i] = new InstrumentedCompression(compressionAlgorithms[i]);
+		}
+		startMetricsExporter();
+		
+		// compress and decompress in the background, listing the running jobs
+		CompressionJobs jobs = new CompressionJobs();
+		JobPanel jobPanel = new JobPanel();
+		mainFrame.add(jobPanel, BorderLayout.NORTH);
 		
 		// ---- IMAGE PANEL ---- //
 		JPanel imagePanel = new JPanel(new GridLayout(1, 2));
@@ -67,35 +94,63 @@ public class ImageCompression {
 		
 		
 		// ---- SELECTION PANEL ---- //
-		JPanel selectionPanel = new JPanel(new GridLayout(1, 2));
-		
-		// compression panel
-		JPanel compressionPanel = new JPanel(new GridLayout(compressionAlgorithms.length, 1));
-		for (CompressionAlgorithm algo : compressionAlgorithms) {
-			// button for each compression algo
-			JButton algoButton = new JButton(algo.toString());
-			algoButton.addActionListener(new ActionListener() {
-				public void actionPerformed(ActionEvent e) {
-					algo.compress(image);
-				}
-			});
-			compressionPanel.add(algoButton);
-		}
-		selectionPanel.add(compressionPanel);
-		
-		// decompression panel
-		JPanel decompressionPanel = new JPanel(new GridLayout(compressionAlgorithms.length, 1));
-		for (CompressionAlgorithm algo : compressionAlgorithms) {
-			// button for each decompression algo
-			JButton algoButton = new JButton(algo.toString());
-			algoButton.addActionListener(new ActionListener() {
-				public void actionPerformed(ActionEvent e) {
-					decompressedImageLabel.showImage(algo.decompress());
-				}
-			});
-			decompressionPanel.add(algoButton);
-		}
-		selectionPanel.add(decompressionPanel);
+		JPanel selectionPanel = new JPanel(new FlowLayout());
+		
+		// one list of the algorithms, so the image keeps its room however many there are
+		JComboBox<CompressionAlgorithm> algorithmBox = new JComboBox<>(compressionAlgorithms);
+		selectionPanel.add(algorithmBox);
+		
+		// compression button
+		JButton compressButton = new JButton("Compress");
+		compressButton.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				CompressionAlgorithm algo = (CompressionAlgorithm) algorithmBox.getSelectedItem();
+				
+				// choose the file to save to
+				Path file = Utilities.chooseSaveFile(algo.getExtension());
+				if (file == null) return;
+				
+				// compress in the background and show the statistics once done
+				CompressionJob<Long> job = jobs.compress(algo, new PixelBufferRowSource(image), file);
+				jobPanel.addJob(job);
+				job.whenDone(() -> SwingUtilities.invokeLater(() -> {
+					if (job.isCancelled()) return;
+					try {
+						long rawBytes = (long) image.getWidth() * image.getHeight();
+						Utilities.showStatistics("COMPRESSION", job.getNanos(), rawBytes, job.get());
+					} catch (InterruptedException | ExecutionException ex) {
+						Utilities.showError("There was an error saving the file!", "SAVING ERROR");
+					}
+				}));
+			}
+		});
+		selectionPanel.add(compressButton);
+		
+		// decompression button
+		JButton decompressButton = new JButton("Decompress");
+		decompressButton.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				CompressionAlgorithm algo = (CompressionAlgorithm) algorithmBox.getSelectedItem();
+				
+				// choose the compressed file
+				Path file = Utilities.chooseOpenFile(algo.getExtension());
+				if (file == null) return;
+				
+				// decode in the background straight into the label, which repaints as rows arrive
+				CompressionJob<Void> job = jobs.decompress(algo, file, decompressedImageLabel.newSink());
+				jobPanel.addJob(job);
+				job.whenDone(() -> SwingUtilities.invokeLater(() -> {
+					if (job.isCancelled()) return;
+					try {
+						job.get();
+						Utilities.showStatistics("DECOMPRESSION", job.getNanos(), 0, 0);
+					} catch (InterruptedException | ExecutionException ex) {
+						Utilities.showError("There was an error loading the file!", "LOADING ERROR");
+					}
+				}));
+			}
+		});
+		selectionPanel.add(decompressButton);
 		
 		// add to the main frame
 		mainFrame.add(selectionPanel, BorderLayout.SOUTH);
@@ -103,11 +158,39 @@ public class ImageCompression {
 		
 		// set the frame visible
 		mainFrame.setVisible(true);
-		
+	
+	}
+	
+	/**
+	 * Exports the metrics to the file named by the metrics.file system property
+	 * and serves them on the port named by metrics.port, if set.
+	 */
+	private static void startMetricsExporter() {
+		MetricsRegistry registry = MetricsRegistry.getDefault();
+		try {
+			String file = System.getProperty("metrics.file");
+			if (file != null) {
+				MetricsExporter exporter = MetricsExporter.toFile(registry, Paths.get(file),
+						MetricsExporter.Format.forFile(Paths.get(file)), METRICS_PERIOD_MILLIS);
+				Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+					try {
+						exporter.close();
+					} catch (IOException e) {
+						System.err.println("Failed to export metrics: " + e.getMessage());
+					}
+				}));
+			}
+			String port = System.getProperty("metrics.port");
+			if (port != null) MetricsExporter.serve(registry, Integer.parseInt(port));
+		} catch (IOException | IllegalArgumentException e) {
+			System.err.println("Failed to start the metrics exporter: " + e.getMessage());
+		}
 	}
 	
+	private static final long METRICS_PERIOD_MILLIS = 10000;
+	private static final long CACHE_BYTES = 64L << 20;
 	private static final String FRAME_TITLE = "Image Compression";
 	private static final int FRAME_WIDTH = 1050;
 	private static final int FRAME_HEIGHT = 600;
-	
+
 }
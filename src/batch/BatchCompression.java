@@ -0,0 +1,478 @@
+package batch;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import cache.CompressionCache;
+import compression_algorithms.CachedCompression;
+import compression_algorithms.ChannelCompression;
+import compression_algorithms.ChannelImage;
+import compression_algorithms.CompressionAlgorithm;
+import compression_algorithms.CompressionAlgorithms;
+import compression_algorithms.InstrumentedCompression;
+import compression_algorithms.PixelBuffer;
+import compression_algorithms.PixelBufferRowSink;
+import compression_algorithms.PixelBufferRowSource;
+import io.ImageLoader;
+import io.ImagePrefetcher;
+import io.RawRowSink;
+import io.RawRowSource;
+import io.Utilities;
+import metrics.MetricsExporter;
+import metrics.MetricsRegistry;
+
+/**
+ * Headless batch compression of whole directories.
+ *
+ * Usage: java batch.BatchCompression (compress|decompress) algorithm inputDir outputDir [threads]
+ *        [--raw WIDTHxHEIGHT | --channels] [--metrics file] [--metrics-port port] [--cache MEGABYTES [--cache-dir dir]]
+ *
+ * Compressing reads every image below the input directory and writes the compressed
+ * file to the same relative path below the output directory, the algorithm's extension
+ * appended to the image's file name (a.png becomes a.png.HUF). PGM, PNG, JPEG and the
+ * other ImageIO formats are recognized. The images are loaded ahead on their own
+ * threads while the workers compress. Decompressing reads every file with the
+ * algorithm's extension and writes it back out as a PNG without that extension
+ * (a.png.HUF becomes a.png, a.jpg.HUF becomes a.jpg.png). With --raw, every input is
+ * a raw 8 bit image of the given size, streamed row by row into the compressed file,
+ * and decompressing streams the rows back out to a raw file. The metrics
+ * of the run are exported to a Prometheus (or .json lines) file, or served locally.
+ * With a cache, images with the same content are compressed once, and the
+ * disk tier keeps the results for later runs. With --channels, color, alpha and
+ * 16 bit samples are kept, each 8 bit plane compressed in parallel by the algorithm.
+ * @author JLepere2
+ * @date 06/01/2018
+ */
+public class BatchCompression {
+
+	/**
+	 * Main method for batch compression.
+	 * @param args command line arguments
+	 */
+	public static void main(String[] args) {
+		
+		// separate the options from the positional arguments
+		List<String> positional = new ArrayList<>();
+		String metricsFile = null;
+		String metricsPort = null;
+		String rawSize = null;
+		String cacheSize = null;
+		String cacheDir = null;
+		boolean channels = false;
+		for (int i = 0; i < args.length; i ++) {
+			if (args[i].equals("--metrics") && i + 1 < args.length) {
+				metricsFile = args[++ i];
+			} else if (args[i].equals("--metrics-port") && i + 1 < args.length) {
+				metricsPort = args[++ i];
+			} else if (args[i].equals("--raw") && i + 1 < args.length) {
+				rawSize = args[++ i];
+			} else if (args[i].equals("--cache") && i + 1 < args.length) {
+				cacheSize = args[++ i];
+			} else if (args[i].equals("--cache-dir") && i + 1 < args.length) {
+				cacheDir = args[++ i];
+			} else if (args[i].equals("--channels")) {
+				channels = true;
+			} else if (args[i].startsWith("--")) {
+				System.err.println(USAGE);
+				System.exit(2);
+			} else {
+				positional.add(args[i]);
+			}
+		}
+		
+		// validate the arguments
+		if (positional.size() < 4 || positional.size() > 5) {
+			System.err.println(USAGE);
+			System.exit(2);
+		}
+		
+		// parse the arguments
+		boolean compress;
+		if (positional.get(0).equalsIgnoreCase("compress")) {
+			compress = true;
+		} else if (positional.get(0).equalsIgnoreCase("decompress")) {
+			compress = false;
+		} else {
+			System.err.println(USAGE);
+			System.exit(2);
+			return;
+		}
+		
+		MetricsExporter fileExporter = null;
+		MetricsExporter httpExporter = null;
+		try {
+			int threads = positional.size() == 5 ? Integer.parseInt(positional.get(4)) : Runtime.getRuntime().availableProcessors();
+			CompressionAlgorithm algo = CompressionAlgorithms.forName(positional.get(1));
+			MetricsRegistry registry = MetricsRegistry.getDefault();
+			
+			// compress repeated images once
+			if (cacheSize != null) {
+				long bytes = Long.parseLong(cacheSize) << 20;
+				Path dir = cacheDir == null ? null : Paths.get(cacheDir);
+				algo = new CachedCompression(algo, new CompressionCache(bytes, dir, DISK_CACHE_BYTES, registry));
+			} else if (cacheDir != null) {
+				throw new IllegalArgumentException("--cache-dir needs --cache");
+			}
+			
+			// record the metrics of the algorithm, cache hits included
+			algo = new InstrumentedCompression(algo);
+			
+			// export the metrics while the batch runs
+			if (metricsFile != null) {
+				Path file = Paths.get(metricsFile);
+				fileExporter = MetricsExporter.toFile(registry, file, MetricsExporter.Format.forFile(file), METRICS_PERIOD_MILLIS);
+			}
+			if (metricsPort != null) httpExporter = MetricsExporter.serve(registry, Integer.parseInt(metricsPort));
+			
+			BatchCompression batch = new BatchCompression(algo, Paths.get(positional.get(2)), Paths.get(positional.get(3)), threads);
+			if (rawSize != null) {
+				// every input is a raw 8 bit image of the given size
+				String[] size = rawSize.toLowerCase().split("x");
+				if (size.length != 2) throw new IllegalArgumentException("Raw size must be WIDTHxHEIGHT");
+				int width = Integer.parseInt(size[0]);
+				int height = Integer.parseInt(size[1]);
+				batch.setRaw(width, height);
+			}
+			if (channels) {
+				if (rawSize != null) throw new IllegalArgumentException("--channels cannot be combined with --raw");
+				batch.setChannels(true);
+			}
+			int failures = compress ? batch.compressAll() : batch.decompressAll();
+			
+			// write the final metrics before exiting
+			if (fileExporter != null) fileExporter.close();
+			if (httpExporter != null) httpExporter.close();
+			System.exit(failures == 0 ? 0 : 1);
+		} catch (IllegalArgumentException | IOException | InterruptedException e) {
+			System.err.println(e.getMessage());
+			System.exit(2);
+		}
+	}
+	
+	/**
+	 * Creates a batch job.
+	 * @param algo the compression algorithm to run
+	 * @param inputDir the directory to read from
+	 * @param outputDir the directory to write to
+	 * @param threads the number of worker threads
+	 */
+	public BatchCompression(CompressionAlgorithm algo, Path inputDir, Path outputDir, int threads) {
+		if (threads < 1) throw new IllegalArgumentException("Number of threads must be positive");
+		this.algo = algo;
+		this.inputDir = inputDir;
+		this.outputDir = outputDir;
+		this.threads = threads;
+		this.loader = ImageLoader::load;
+	}
+	
+	/**
+	 * Sets the loader of the input images, by default PGM or any ImageIO format.
+	 * @param loader the loader
+	 */
+	public void setLoader(ImagePrefetcher.Loader loader) {
+		this.loader = loader;
+	}
+	
+	/**
+	 * Streams raw 8 bit images of the given size row by row, instead of loading
+	 * every input as an image. Decompressing then writes raw files as well.
+	 * @param width the width of every image
+	 * @param height the height of every image
+	 */
+	public void setRaw(int width, int height) {
+		if (width < 0 || height < 0) throw new IllegalArgumentException("Raw size must not be negative");
+		this.raw = true;
+		this.rawWidth = width;
+		this.rawHeight = height;
+	}
+	
+	/**
+	 * Sets whether whole color and 16 bit images are compressed plane by plane,
+	 * instead of their 8 bit gray luma.
+	 * @param channels true to keep every channel
+	 */
+	public void setChannels(boolean channels) {
+		this.channels = channels ? new ChannelCompression(algo) : null;
+	}
+	
+	/**
+	 * Compresses every image below the input directory.
+	 * @return the number of files that failed
+	 * @throws IOException if the input directory cannot be listed
+	 * @throws InterruptedException if interrupted while waiting for the workers
+	 */
+	public int compressAll() throws IOException, InterruptedException {
+		return run(listFiles(null), true);
+	}
+	
+	/**
+	 * Decompresses every compressed file below the input directory.
+	 * @return the number of files that failed
+	 * @throws IOException if the input directory cannot be listed
+	 * @throws InterruptedException if interrupted while waiting for the workers
+	 */
+	public int decompressAll() throws IOException, InterruptedException {
+		return run(listFiles(compressedExtension()), false);
+	}
+	
+	/**
+	 * Lists the regular files below the input directory.
+	 * @param extension the extension to filter for, or null for all files
+	 * @return the files
+	 * @throws IOException
+	 */
+	private List<Path> listFiles(String extension) throws IOException {
+		if (!Files.isDirectory(inputDir)) {
+			throw new IllegalArgumentException("Not a directory: " + inputDir);
+		}
+		try (Stream<Path> paths = Files.walk(inputDir)) {
+			return paths
+					.filter(Files::isRegularFile)
+					.filter(p -> extension == null || p.getFileName().toString().endsWith(extension))
+					.sorted()
+					.collect(Collectors.toList());
+		}
+	}
+	
+	/**
+	 * Runs the workers over the files and prints the throughput summary.
+	 * @param files the files to process
+	 * @param compress true to compress, false to decompress
+	 * @return the number of files that failed
+	 * @throws InterruptedException
+	 */
+	private int run(List<Path> files, boolean compress) throws InterruptedException {
+		
+		// counters shared by the workers
+		AtomicInteger images = new AtomicInteger();
+		AtomicInteger skipped = new AtomicInteger();
+		AtomicInteger failures = new AtomicInteger();
+		AtomicLong rawBytes = new AtomicLong();
+		AtomicLong compressedBytes = new AtomicLong();
+		
+		// timer
+		long startTime = System.nanoTime();
+		outputs.clear();
+		
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		ImagePrefetcher prefetcher = null;
+		if (channels != null) {
+			
+			// submit one task per file, the planes of each image are compressed on the common pool
+			for (Path file : files) {
+				pool.execute(() -> {
+					try {
+						if (compress) {
+							// load and compress every channel of the image
+							ChannelImage image = ImageLoader.loadChannels(file);
+							if (image == null) {
+								skipped.incrementAndGet();
+								return;
+							}
+							long size = channels.encode(image, outputPath(file, true));
+							
+							rawBytes.addAndGet(image.getRawBytes());
+							compressedBytes.addAndGet(size);
+						} else {
+							// decompress the memory mapped file and write every channel
+							ChannelImage image = channels.decode(file);
+							Utilities.saveChannels(image, outputPath(file, false).toFile());
+							
+							rawBytes.addAndGet(image.getRawBytes());
+							compressedBytes.addAndGet(Files.size(file));
+						}
+						images.incrementAndGet();
+					} catch (Exception e) {
+						failures.incrementAndGet();
+						System.err.println("FAILED " + file + ": " + e);
+					}
+				});
+			}
+		} else if (raw) {
+			
+			// submit one task per file, streaming its rows
+			for (Path file : files) {
+				pool.execute(() -> {
+					try {
+						if (compress) {
+							// compress the rows of the raw file straight into its compressed file
+							try (RawRowSource source = new RawRowSource(file, rawWidth, rawHeight)) {
+								compressedBytes.addAndGet(algo.encode(source, outputPath(file, true)));
+							}
+							rawBytes.addAndGet((long) rawWidth * rawHeight);
+						} else {
+							// decompress the memory mapped file and write the rows as they are decoded
+							Path out = outputPath(file, false);
+							try (OutputStream stream = new BufferedOutputStream(Files.newOutputStream(out), RAW_BUFFER_SIZE)) {
+								RawRowSink sink = new RawRowSink(stream);
+								algo.decode(file, sink);
+								rawBytes.addAndGet((long) sink.getWidth() * sink.getHeight());
+							}
+							compressedBytes.addAndGet(Files.size(file));
+						}
+						images.incrementAndGet();
+					} catch (Exception e) {
+						failures.incrementAndGet();
+						System.err.println("FAILED " + file + ": " + e);
+					}
+				});
+			}
+		} else if (compress) {
+			
+			// load the images ahead on their own threads, a few images at most
+			prefetcher = new ImagePrefetcher(files, loader, threads, 2 * threads);
+			ImagePrefetcher loaded = prefetcher;
+			
+			// each worker compresses images as they are loaded
+			for (int i = 0; i < threads; i ++) {
+				pool.execute(() -> {
+					try {
+						ImagePrefetcher.Entry entry;
+						while ((entry = loaded.take()) != null) {
+							Path file = entry.getFile();
+							try {
+								// check the loaded image
+								if (entry.getError() != null) throw entry.getError();
+								PixelBuffer pixels = entry.getPixels();
+								if (pixels == null) {
+									skipped.incrementAndGet();
+									continue;
+								}
+								
+								// compress the image straight into its file
+								Path out = outputPath(file, true);
+								long size = algo.encode(new PixelBufferRowSource(pixels), out);
+								
+								rawBytes.addAndGet((long) pixels.getWidth() * pixels.getHeight());
+								compressedBytes.addAndGet(size);
+								images.incrementAndGet();
+							} catch (Exception e) {
+								failures.incrementAndGet();
+								System.err.println("FAILED " + file + ": " + e);
+							}
+						}
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				});
+			}
+		} else {
+			
+			// submit one task per file
+			for (Path file : files) {
+				pool.execute(() -> {
+					try {
+						// decompress the memory mapped file
+						PixelBufferRowSink sink = new PixelBufferRowSink();
+						algo.decode(file, sink);
+						PixelBuffer pixels = sink.getPixels();
+						
+						// write the image
+						Path out = outputPath(file, false);
+						Utilities.savePixels(pixels, out.toFile());
+						
+						rawBytes.addAndGet((long) pixels.getWidth() * pixels.getHeight());
+						compressedBytes.addAndGet(Files.size(file));
+						images.incrementAndGet();
+					} catch (Exception e) {
+						failures.incrementAndGet();
+						System.err.println("FAILED " + file + ": " + e);
+					}
+				});
+			}
+		}
+		pool.shutdown();
+		pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+		if (prefetcher != null) prefetcher.close();
+		
+		// duration
+		double seconds = (System.nanoTime() - startTime) / 1e9;
+		
+		// print the summary
+		System.out.printf("%s %d images with %s in %.3f s using %d threads (%d skipped, %d failed)%n",
+				compress ? "Compressed" : "Decompressed", images.get(), channels != null ? channels : algo, seconds, threads, skipped.get(), failures.get());
+		System.out.printf("Throughput: %.1f images/s, %.2f MB/s%n",
+				images.get() / seconds, rawBytes.get() / 1e6 / seconds);
+		if (compressedBytes.get() > 0) {
+			System.out.printf("Aggregate compression ratio: %.3f (%d -> %d bytes)%n",
+					(double) rawBytes.get() / compressedBytes.get(), rawBytes.get(), compressedBytes.get());
+		}
+		
+		return failures.get();
+	}
+	
+	/**
+	 * Gets the extension of the compressed files.
+	 * @return the extension of the channel container or of the algorithm
+	 */
+	private String compressedExtension() {
+		return channels != null ? channels.getExtension() : algo.getExtension();
+	}
+	
+	/**
+	 * Maps an input file to its output file, mirroring the directory structure.
+	 * Each output file may only be claimed by one input of the run, so inputs
+	 * that would overwrite each other fail instead.
+	 * @param file the input file
+	 * @param compress true to map an image to its compressed file, false to map a compressed file to its PNG or raw image
+	 * @return the output file
+	 * @throws IOException if the output directory cannot be created or another input maps to the same file
+	 */
+	private Path outputPath(Path file, boolean compress) throws IOException {
+		String name = file.getFileName().toString();
+		if (compress) {
+			// keep the extension of the image, so a.png and a.jpg do not map to the same file
+			name += compressedExtension();
+		} else {
+			// drop the compressed extension, restoring the name of a PNG or raw image
+			name = name.substring(0, name.length() - compressedExtension().length());
+			if (!raw && !name.toLowerCase().endsWith(".png")) name += ".png";
+		}
+		
+		// mirror the relative directory
+		Path relative = inputDir.relativize(file);
+		Path dir = relative.getParent() == null ? outputDir : outputDir.resolve(relative.getParent());
+		Files.createDirectories(dir);
+		
+		Path out = dir.resolve(name);
+		if (!outputs.add(out.toAbsolutePath().normalize())) throw new IOException("Another input is also written to " + out);
+		return out;
+	}
+	
+	private final CompressionAlgorithm algo;
+	private final Path inputDir;
+	private final Path outputDir;
+	private final int threads;
+	private ImagePrefetcher.Loader loader;
+	private ChannelCompression channels;
+	private boolean raw;
+	private int rawWidth;
+	private int rawHeight;
+	private final Set<Path> outputs = ConcurrentHashMap.newKeySet();
+	
+	private static final long METRICS_PERIOD_MILLIS = 1000;
+	private static final long DISK_CACHE_BYTES = 1L << 30;
+	private static final int RAW_BUFFER_SIZE = 1 << 16;
+	private static final String USAGE = "Usage: java batch.BatchCompression (compress|decompress) algorithm inputDir outputDir [threads]\n"
+			+ "       [--raw WIDTHxHEIGHT | --channels] [--metrics file] [--metrics-port port] [--cache MEGABYTES [--cache-dir dir]]\n"
+			+ "Algorithms: RunLengthCoding, RunLengthCodingBitPlane, RunLengthCodingGrayBitPlane, HuffmanCoding,\n"
+			+ "            AdaptiveHuffmanCoding, RansCoding, ContextHuffmanCoding, LZCoding, LazyLZCoding, Auto,\n"
+			+ "            or any of them prefixed with Tiled and/or Predictive\n"
+			+ "--raw streams the rows of raw 8 bit images, but LZCoding and LazyLZCoding still hold the whole image";
+
+}
@@ -0,0 +1,291 @@
+package cache;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import metrics.Counter;
+import metrics.MetricsRegistry;
+
+/**
+ * Size bounded LRU cache of compressed images, keyed by content.
+ *
+ * The entries are held on the heap up to a number of bytes. With a disk tier,
+ * the least recently used entries are spilled to files in a directory, also
+ * bounded in bytes, and read back into memory on the next hit. The directory
+ * is indexed when the cache is created, so the disk tier survives restarts.
+ * Hits, misses and evictions of each tier are counted in the metrics registry.
+ * All methods are synchronized.
+ * @author JLepere2
+ * @date 06/01/2018
+ */
+public class CompressionCache {
+
+	/**
+	 * Creates an in memory cache recording its metrics in the default registry.
+	 * @param maxBytes the maximum number of compressed bytes held on the heap
+	 */
+	public CompressionCache(long maxBytes) {
+		this(maxBytes, null, 0, MetricsRegistry.getDefault());
+	}
+	
+	/**
+	 * Creates a cache.
+	 * @param maxBytes the maximum number of compressed bytes held on the heap
+	 * @param directory the directory of the disk tier, or null for none
+	 * @param maxDiskBytes the maximum number of bytes in the disk tier
+	 * @param registry the registry receiving the metrics of the cache
+	 * @throws UncheckedIOException if the directory cannot be created or read
+	 */
+	public CompressionCache(long maxBytes, Path directory, long maxDiskBytes, MetricsRegistry registry) {
+		if (maxBytes < 0 || maxDiskBytes < 0) throw new IllegalArgumentException("Cache size must not be negative");
+		this.maxBytes = maxBytes;
+		this.directory = directory;
+		this.maxDiskBytes = maxDiskBytes;
+		this.memoryHits = registry.counter("cache_hits_total", "Cache lookups found", "tier", "memory");
+		this.diskHits = registry.counter("cache_hits_total", "Cache lookups found", "tier", "disk");
+		this.misses = registry.counter("cache_misses_total", "Cache lookups not found");
+		this.memoryEvictions = registry.counter("cache_evictions_total", "Entries evicted from a cache tier", "tier", "memory");
+		this.diskEvictions = registry.counter("cache_evictions_total", "Entries evicted from a cache tier", "tier", "disk");
+		if (directory != null) {
+			try {
+				indexDirectory();
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+	}
+	
+	/**
+	 * Looks up an entry, making it the most recently used.
+	 * @param key the key
+	 * @return the compressed bytes, or null if not cached
+	 */
+	public synchronized byte[] get(String key) {
+		key = safeKey(key);
+		
+		// memory tier
+		byte[] value = memory.get(key);
+		if (value != null) {
+			memoryHits.increment();
+			return value;
+		}
+		
+		// disk tier, promoted back to memory
+		Long size = disk.remove(key);
+		if (size != null) {
+			diskBytes -= size;
+			Path file = file(key);
+			try {
+				value = Files.readAllBytes(file);
+				Files.deleteIfExists(file);
+				diskHits.increment();
+				putMemory(key, value);
+				return value;
+			} catch (IOException e) {
+				// the file went away, treat it as a miss
+			}
+		}
+		
+		misses.increment();
+		return null;
+	}
+	
+	/**
+	 * Adds an entry as the most recently used, evicting the least recently
+	 * used ones beyond the size bounds. An entry larger than the memory tier
+	 * is not cached.
+	 * @param key the key
+	 * @param value the compressed bytes, which must not be modified afterwards
+	 */
+	public synchronized void put(String key, byte[] value) {
+		key = safeKey(key);
+		if (value.length > maxBytes) return;
+		Long size = disk.remove(key);
+		if (size != null) {
+			diskBytes -= size;
+			try {
+				Files.deleteIfExists(file(key));
+			} catch (IOException e) {
+				// stale file, overwritten when spilled again
+			}
+		}
+		putMemory(key, value);
+	}
+	
+	/**
+	 * Gets the number of entries held on the heap.
+	 * @return the number of entries
+	 */
+	public synchronized int size() {
+		return memory.size();
+	}
+	
+	/**
+	 * Gets the number of compressed bytes held on the heap.
+	 * @return the number of bytes
+	 */
+	public synchronized long getBytes() {
+		return memoryBytes;
+	}
+	
+	/**
+	 * Gets the number of compressed bytes in the disk tier.
+	 * @return the number of bytes
+	 */
+	public synchronized long getDiskBytes() {
+		return diskBytes;
+	}
+	
+	/**
+	 * Gets the number of lookups found in either tier.
+	 * @return the number of hits
+	 */
+	public long getHits() {
+		return memoryHits.get() + diskHits.get();
+	}
+	
+	/**
+	 * Gets the number of lookups not found.
+	 * @return the number of misses
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+	
+	/**
+	 * Gets the number of entries evicted from memory, spilled to disk or dropped.
+	 * @return the number of evictions
+	 */
+	public long getEvictions() {
+		return memoryEvictions.get();
+	}
+	
+	/**
+	 * Adds an entry to the memory tier and evicts beyond its bound.
+	 * @param key the key
+	 * @param value the compressed bytes
+	 */
+	private void putMemory(String key, byte[] value) {
+		byte[] old = memory.put(key, value);
+		if (old != null) memoryBytes -= old.length;
+		memoryBytes += value.length;
+		
+		// evict the least recently used entries, spilling them to disk
+		Iterator<Map.Entry<String, byte[]>> eldest = memory.entrySet().iterator();
+		while (memoryBytes > maxBytes && eldest.hasNext()) {
+			Map.Entry<String, byte[]> entry = eldest.next();
+			eldest.remove();
+			memoryBytes -= entry.getValue().length;
+			memoryEvictions.increment();
+			spill(entry.getKey(), entry.getValue());
+		}
+	}
+	
+	/**
+	 * Writes an evicted entry to the disk tier, if there is one, and evicts beyond its bound.
+	 * @param key the key
+	 * @param value the compressed bytes
+	 */
+	private void spill(String key, byte[] value) {
+		if (directory == null || value.length > maxDiskBytes) return;
+		try {
+			// write a temporary file and move it in place, so a crash never leaves a partial entry
+			Path temp = Files.createTempFile(directory, "spill", ".tmp");
+			Files.write(temp, value);
+			Files.move(temp, file(key), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			disk.put(key, (long) value.length);
+			diskBytes += value.length;
+		} catch (IOException e) {
+			System.err.println("Failed to spill a cache entry: " + e.getMessage());
+			return;
+		}
+		
+		// evict the least recently used files
+		Iterator<Map.Entry<String, Long>> eldest = disk.entrySet().iterator();
+		while (diskBytes > maxDiskBytes && eldest.hasNext()) {
+			Map.Entry<String, Long> entry = eldest.next();
+			eldest.remove();
+			diskBytes -= entry.getValue();
+			diskEvictions.increment();
+			try {
+				Files.deleteIfExists(file(entry.getKey()));
+			} catch (IOException e) {
+				System.err.println("Failed to delete a cache entry: " + e.getMessage());
+			}
+		}
+	}
+	
+	/**
+	 * Indexes the entries already in the directory, oldest first.
+	 * @throws IOException if the directory cannot be created or read
+	 */
+	private void indexDirectory() throws IOException {
+		Files.createDirectories(directory);
+		List<Path> files = new ArrayList<>();
+		Map<Path, FileTime> times = new HashMap<>();
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+			for (Path file : stream) {
+				files.add(file);
+				times.put(file, Files.getLastModifiedTime(file));
+			}
+		}
+		files.sort(Comparator.comparing(times::get));
+		for (Path file : files) {
+			String name = file.getFileName().toString();
+			long size = Files.size(file);
+			disk.put(name.substring(0, name.length() - SUFFIX.length()), size);
+			diskBytes += size;
+		}
+	}
+	
+	/**
+	 * Gets the file of a key in the disk tier.
+	 * @param key the key
+	 * @return the file
+	 */
+	private Path file(String key) {
+		return directory.resolve(key + SUFFIX);
+	}
+	
+	/**
+	 * Makes a key safe to use as a file name.
+	 * @param key the key
+	 * @return the key with every character other than letters, digits, '.', '_' and '-' replaced by '_'
+	 */
+	private static String safeKey(String key) {
+		return key.replaceAll("[^A-Za-z0-9._-]", "_");
+	}
+	
+	/*
+	 * Entries in access order, the least recently used first
+	 */
+	private final LinkedHashMap<String, byte[]> memory = new LinkedHashMap<>(16, 0.75f, true);
+	private final LinkedHashMap<String, Long> disk = new LinkedHashMap<>(16, 0.75f, true);
+	private long memoryBytes;
+	private long diskBytes;
+	
+	private final long maxBytes;
+	private final Path directory;
+	private final long maxDiskBytes;
+	
+	private final Counter memoryHits;
+	private final Counter diskHits;
+	private final Counter misses;
+	private final Counter memoryEvictions;
+	private final Counter diskEvictions;
+	
+	private static final String SUFFIX = ".cache";
+
+}
@@ -0,0 +1,92 @@
+package cache;
+
+/**
+ * Fast 128 bit hash of the gray values of an image, fed one row at a time.
+ *
+ * Eight gray values are packed into a long and mixed into two independent
+ * 64 bit lanes with a multiply and rotate each, and the dimensions are mixed
+ * in at the end. It is not a cryptographic hash, but two images with the same
+ * hash are the same image for any practical cache.
+ * @author JLepere2
+ * @date 06/01/2018
+ */
+public class ContentHash {
+
+	/**
+	 * Starts hashing a new image.
+	 * @param width the width of the image
+	 * @param height the height of the image
+	 * @return this hash
+	 */
+	public ContentHash reset(int width, int height) {
+		this.width = width;
+		this.height = height;
+		h1 = SEED1;
+		h2 = SEED2;
+		return this;
+	}
+	
+	/**
+	 * Adds the next row of the image.
+	 * @param row the gray values, at least the width of the image long
+	 */
+	public void update(int[] row) {
+		long a = h1, b = h2;
+		int x = 0;
+		for (; x + 8 <= width; x += 8) {
+			long word = (long) (row[x] & 0xFF)
+					| (long) (row[x + 1] & 0xFF) << 8
+					| (long) (row[x + 2] & 0xFF) << 16
+					| (long) (row[x + 3] & 0xFF) << 24
+					| (long) (row[x + 4] & 0xFF) << 32
+					| (long) (row[x + 5] & 0xFF) << 40
+					| (long) (row[x + 6] & 0xFF) << 48
+					| (long) (row[x + 7] & 0xFF) << 56;
+			a = Long.rotateLeft(a + word * P2, 31) * P1;
+			b = Long.rotateLeft(b ^ word * P3, 27) * P4 + word;
+		}
+		
+		// the rest of the row, with its length so short rows do not collide
+		long word = width - x;
+		for (; x < width; x ++) word = word << 8 | (row[x] & 0xFF);
+		a = Long.rotateLeft(a + word * P2, 31) * P1;
+		b = Long.rotateLeft(b ^ word * P3, 27) * P4 + word;
+		h1 = a;
+		h2 = b;
+	}
+	
+	/**
+	 * Finishes the hash of the image.
+	 * @return the hash as 32 hex digits
+	 */
+	public String toHex() {
+		long a = mix(h1 ^ ((long) width << 32 | height));
+		long b = mix(h2 + a + ((long) height << 32 | width));
+		return String.format("%016x%016x", a, b);
+	}
+	
+	/**
+	 * Mixes all bits of a lane into each other.
+	 * @param h the lane
+	 * @return the mixed lane
+	 */
+	private static long mix(long h) {
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
+	}
+	
+	private long h1, h2;
+	private int width, height;
+	
+	private static final long SEED1 = 0x243f6a8885a308d3L;
+	private static final long SEED2 = 0x13198a2e03707344L;
+	private static final long P1 = 0x9e3779b185ebca87L;
+	private static final long P2 = 0xc2b2ae3d27d4eb4fL;
+	private static final long P3 = 0x165667b19e3779f9L;
+	private static final long P4 = 0x85ebca77c2b2ae63L;
+
+}
@@ -1,12 +1,21 @@
 package components;
 
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
 
 import javax.swing.ImageIcon;
 import javax.swing.JLabel;
+import javax.swing.SwingUtilities;
+
+import compression_algorithms.RowSink;
 
 /**
  * Decompressed Image Label
+ *
+ * Decoders write straight into the bytes of the displayed image through the
+ * sink of the label, which repaints as rows arrive. Every sink decodes into
+ * its own image, and only the most recently created sink is displayed, so
+ * decompressions running at once never mix their rows.
  * @author JLepere2
  * @date 06/01/2018
  */
@@ -21,31 +30,61 @@ public class DecompressedImageLabel extends JLabel {
 		// set centered
 		this.setHorizontalAlignment(JLabel.CENTER);
 		this.setVerticalAlignment(JLabel.CENTER);
-		
+	
 	}
 	
 	/**
-	 * Displayed the decompressed image
-	 * @param image
+	 * Creates a sink displaying the rows of a decoded image as they are written.
+	 * The sink replaces any earlier sink, whose rows are no longer displayed.
+	 * The sink may be written from any thread.
+	 * @return the sink
+	 */
+	public DisplaySink newSink() {
+		DisplaySink sink = new DisplaySink();
+		current = sink;
+		return sink;
+	}
+	
+	/*
+	 * Sink writing the rows into the bytes of its own image, shown while it is
+	 * the current sink of the label
 	 */
-	public void showImage(int[][] image) {
+	public class DisplaySink implements RowSink {
 		
-		// test if null
-		if (image == null) return;
+		public void begin(int width, int height) {
+			BufferedImage display = new BufferedImage(Math.max(1, width), Math.max(1, height), BufferedImage.TYPE_BYTE_GRAY);
+			this.width = width;
+			this.height = height;
+			this.data = ((DataBufferByte) display.getRaster().getDataBuffer()).getData();
+			this.lastRepaint = System.nanoTime();
+			
+			// swap the image in unless a newer sink replaced this one
+			SwingUtilities.invokeLater(() -> {
+				if (current == this) setIcon(new ImageIcon(display));
+			});
+		}
 		
-		// create and set the buffered image to display
-		BufferedImage buffImage = new BufferedImage(image.length, image[0].length, BufferedImage.TYPE_BYTE_GRAY);
-		for (int y = 0; y < image.length; y ++) {
-			for (int x = 0; x < image[0].length; x ++) {
-				int p = image[y][x];
-				buffImage.setRGB(x, y, (p<<16) + (p<<8) + p);
+		public void writeRow(int y, int[] row) {
+			int start = y * width;
+			for (int x = 0; x < width; x ++) data[start + x] = (byte) row[x];
+			
+			// repaint the rows so far at most every REPAINT_INTERVAL, and at the end
+			long now = System.nanoTime();
+			if (current == this && (y == height - 1 || now - lastRepaint > REPAINT_INTERVAL)) {
+				lastRepaint = now;
+				repaint();
 			}
 		}
 		
-		// show the buffered image
-		this.setIcon(new ImageIcon(buffImage));
+		private int width;
+		private int height;
+		private byte[] data;
+		private long lastRepaint;
 	}
 	
-	private static final long serialVersionUID = 890871L;
+	private volatile DisplaySink current;
 	
+	private static final long REPAINT_INTERVAL = 30000000L;
+	private static final long serialVersionUID = 890871L;
+
 }
@@ -0,0 +1,84 @@
+package components;
+
+import java.awt.BorderLayout;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.swing.BoxLayout;
+import javax.swing.JButton;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JProgressBar;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+
+import jobs.CompressionJob;
+
+/**
+ * Job Panel
+ *
+ * Lists the running jobs with their progress and a button cancelling each.
+ * The progress bars are polled on a Swing timer while any job runs, and a job
+ * is removed from the list once done. Must be used on the event dispatch thread.
+ * @author JLepere2
+ * @date 06/01/2018
+ */
+public class JobPanel extends JPanel {
+
+	/**
+	 * Creates an empty Job Panel
+	 */
+	public JobPanel() {
+		super();
+		this.setLayout(new BoxLayout(this, BoxLayout.Y_AXIS));
+		this.timer = new Timer(REFRESH_INTERVAL, e -> refresh());
+	}
+	
+	/**
+	 * Adds a job to the list until it is done.
+	 * @param job the job
+	 */
+	public void addJob(CompressionJob<?> job) {
+		
+		// progress bar and cancel button of the job
+		JProgressBar progressBar = new JProgressBar(0, PROGRESS_STEPS);
+		progressBar.setStringPainted(true);
+		JButton cancelButton = new JButton("Cancel");
+		cancelButton.addActionListener(e -> job.cancel(true));
+		
+		JPanel row = new JPanel(new BorderLayout(5, 0));
+		row.add(new JLabel(job.getName()), BorderLayout.WEST);
+		row.add(progressBar, BorderLayout.CENTER);
+		row.add(cancelButton, BorderLayout.EAST);
+		
+		// show the job until it is done
+		jobs.put(job, progressBar);
+		add(row);
+		revalidate();
+		timer.start();
+		job.whenDone(() -> SwingUtilities.invokeLater(() -> {
+			jobs.remove(job);
+			remove(row);
+			revalidate();
+			repaint();
+			if (jobs.isEmpty()) timer.stop();
+		}));
+	}
+	
+	/**
+	 * Updates the progress bars of the running jobs.
+	 */
+	private void refresh() {
+		for (Map.Entry<CompressionJob<?>, JProgressBar> entry : jobs.entrySet()) {
+			entry.getValue().setValue((int) (entry.getKey().getProgress() * PROGRESS_STEPS));
+		}
+	}
+	
+	private final Map<CompressionJob<?>, JProgressBar> jobs = new LinkedHashMap<>();
+	private final Timer timer;
+	
+	private static final long serialVersionUID = 5112L;
+	private static final int REFRESH_INTERVAL = 100;
+	private static final int PROGRESS_STEPS = 1000;
+
+}
@@ -1,10 +1,13 @@
 package components;
 
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
 
 import javax.swing.ImageIcon;
 import javax.swing.JLabel;
 
+import compression_algorithms.PixelBuffer;
+
 /**
  * The label for the original image
  * @author JLepere2
@@ -16,27 +19,24 @@ public class OriginalImageLabel extends JLabel {
 	 * Construct the label for storing and displaying the original image.
 	 * @param originalImage the image to display
 	 */
-	public OriginalImageLabel(int[][] originalImage) {
+	public OriginalImageLabel(PixelBuffer originalImage) {
 		super();
 		
 		// set centered
 		this.setHorizontalAlignment(JLabel.CENTER);
 		this.setVerticalAlignment(JLabel.CENTER);
 		
-		// create and set the buffered image to display
-		BufferedImage buffImage = new BufferedImage(originalImage.length, originalImage[0].length, BufferedImage.TYPE_BYTE_GRAY);
-		for (int y = 0; y < originalImage.length; y ++) {
-			for (int x = 0; x < originalImage[0].length; x ++) {
-				int p = originalImage[y][x];
-				buffImage.setRGB(x, y, (p<<16) + (p<<8) + p);
-			}
-		}
+		// create the buffered image to display and copy the rows into its bytes
+		int width = originalImage.getWidth();
+		int height = originalImage.getHeight();
+		BufferedImage buffImage = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+		originalImage.copyTo(((DataBufferByte) buffImage.getRaster().getDataBuffer()).getData(), 0, width);
 		
 		// show the buffered image
 		this.setIcon(new ImageIcon(buffImage));
-		
+	
 	}	
 	
 	private static final long serialVersionUID = 8531L;
-	
+
 }
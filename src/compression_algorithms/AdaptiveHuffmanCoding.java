@@ -0,0 +1,191 @@
+package compression_algorithms;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import io.BitInputStream;
+import io.BitOutputStream;
+
+/**
+ * Single pass Huffman Coding for images arriving as a stream of rows.
+ *
+ * Instead of counting the whole image first, the encoder and the decoder keep
+ * the same histogram of the symbols coded so far, starting with every symbol
+ * counted once. After each block of rows both rebuild the canonical code from
+ * the histogram, so no code lengths are stored and every row is written as
+ * soon as it is read. The blocks start small and double up to MAX_BLOCK symbols,
+ * and the histogram is halved beyond MAX_TOTAL symbols to follow the image.
+ * @author JLepere2
+ * @date 06/01/2018
+ */
+public class AdaptiveHuffmanCoding implements CompressionAlgorithm {
+
+	public void encode(RowSource source, OutputStream out) throws IOException {
+		
+		// reusable encoder context of this thread
+		HuffmanEncoder model = encoders.get();
+		
+		// image dimensions
+		int width = source.getWidth();
+		int height = source.getHeight();
+		int[] row = model.getRowBuffer(width);
+		
+		// write the image dimensions
+		BitOutputStream bits = model.open(out);
+		bits.writeBits(width, 32);
+		bits.writeBits(height, 32);
+		
+		// write each row as it is read, rebuilding the code after each block
+		Block block = new Block(model, false);
+		for (int y = 0; y < height; y ++) {
+			source.readRow(row);
+			model.encode(bits, row, 0, width);
+			block.update(row, width);
+		}
+		
+		bits.flush();
+	
+	}
+	
+	public void decode(InputStream in, RowSink sink) throws IOException {
+		
+		// read the image dimensions
+		DataInputStream header = new DataInputStream(in);
+		int width = header.readInt();
+		int height = header.readInt();
+		
+		decode(width, height, new BitInputStream(in), sink);
+	}
+	
+	/**
+	 * Decodes straight from the buffer without copying it.
+	 */
+	public void decode(ByteBuffer data, RowSink sink) throws IOException {
+		
+		// read the image dimensions
+		if (data.remaining() < 8) throw new EOFException();
+		ByteBuffer header = data.duplicate().order(ByteOrder.BIG_ENDIAN);
+		int width = header.getInt();
+		int height = header.getInt();
+		data.position(data.position() + 8);
+		
+		decode(width, height, new BitInputStream(data), sink);
+	}
+	
+	/**
+	 * Decodes the payload, mirroring the code updates of the encoder.
+	 * @param width the image width
+	 * @param height the image height
+	 * @param bits the bit stream after the image dimensions
+	 * @param sink the sink receiving the decoded rows
+	 * @throws IOException if the data is invalid or writing the sink fails
+	 */
+	private void decode(int width, int height, BitInputStream bits, RowSink sink) throws IOException {
+		if (width < 0 || height < 0) throw new IOException("Invalid image dimensions");
+		sink.begin(width, height);
+		
+		// the same model as the encoder, read by a table driven decoder
+		HuffmanEncoder model = new HuffmanEncoder();
+		Block block = new Block(model, true);
+		
+		// reconstructed row
+		int[] row = new int[width];
+		
+		// set the image
+		for (int y = 0; y < height; y ++) {
+			block.decoder.decode(bits, row, 0, width);
+			sink.writeRow(y, row);
+			block.update(row, width);
+		}
+	}
+	
+	public String getExtension() {
+		return EXTENSION;
+	}
+	
+	public String toString() {
+		return "Adaptive Huffman Coding";
+	}
+	
+	/**
+	 * Model state shared by the encoder and the decoder, which both update it
+	 * after every row so their codes stay the same.
+	 */
+	private static class Block {
+		
+		/**
+		 * Starts the model with every symbol counted once.
+		 * @param model the histogram and code table
+		 * @param decoding whether to build the decoder tables of each code
+		 */
+		Block(HuffmanEncoder model, boolean decoding) {
+			this.model = model;
+			this.decoding = decoding;
+			this.decoder = decoding ? new HuffmanDecoder() : null;
+			model.clear();
+			int[] symbols = new int[NUM_SYMBOLS];
+			for (int s = 0; s < NUM_SYMBOLS; s ++) symbols[s] = s;
+			model.count(symbols, 0, NUM_SYMBOLS);
+			total = NUM_SYMBOLS;
+			size = MIN_BLOCK;
+			rebuild();
+		}
+		
+		/**
+		 * Counts a coded row and rebuilds the code at the end of a block.
+		 * @param row the symbols of the row
+		 * @param width the number of symbols
+		 */
+		void update(int[] row, int width) {
+			model.count(row, 0, width);
+			total += width;
+			pending += width;
+			if (pending < size) return;
+			
+			// forget half of the history beyond MAX_TOTAL symbols
+			while (total > MAX_TOTAL) {
+				model.halve();
+				total >>>= 1;
+			}
+			rebuild();
+			pending = 0;
+			size = Math.min(2 * size, MAX_BLOCK);
+		}
+		
+		/**
+		 * Rebuilds the canonical code from the histogram.
+		 */
+		private void rebuild() {
+			model.buildCodes();
+			if (!decoding) return;
+			for (int s = 0; s < NUM_SYMBOLS; s ++) lengths[s] = model.getLength(s);
+			decoder.rebuild(lengths);
+		}
+		
+		private final HuffmanEncoder model;
+		private final boolean decoding;
+		private final int[] lengths = new int[NUM_SYMBOLS];
+		private final HuffmanDecoder decoder;
+		private long total;
+		private long pending;
+		private long size;
+	
+	}
+	
+	/*
+	 * Encoder context of each thread
+	 */
+	private final ThreadLocal<HuffmanEncoder> encoders = ThreadLocal.withInitial(HuffmanEncoder::new);
+	
+	private static final int NUM_SYMBOLS = CanonicalHuffman.NUM_SYMBOLS;
+	private static final int MIN_BLOCK = 1 << 10;
+	private static final int MAX_BLOCK = 1 << 15;
+	private static final long MAX_TOTAL = 1 << 18;
+	private static final String EXTENSION = ".AHUF";
+
+}
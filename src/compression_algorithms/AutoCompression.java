@@ -0,0 +1,139 @@
+package compression_algorithms;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Automatic choice of compression algorithm
+ *
+ * A first pass over the rows gathers the ImageStatistics, which give the
+ * compressed size of the image under each candidate algorithm. The smallest
+ * one is written as an id byte followed by its stream. Wrapped in a
+ * TiledCompression the choice is made for each tile. At the FINE level the
+ * choice is logged with the entropy and the runs of the image that explain it.
+ * @author JLepere2
+ * @date 06/01/2018
+ */
+public class AutoCompression implements CompressionAlgorithm {
+
+	public void encode(RowSource source, OutputStream out) throws IOException {
+		
+		// reusable statistics of this thread
+		ImageStatistics stats = statistics.get();
+		
+		// gather the statistics in a first pass over the rows
+		int width = source.getWidth();
+		int height = source.getHeight();
+		stats.reset(width, height);
+		int[] row = new int[width];
+		for (int y = 0; y < height; y ++) {
+			source.readRow(row);
+			stats.addRow(row);
+		}
+		stats.finish();
+		
+		// write the id of the smallest algorithm, then the image compressed with it
+		int id = choose(stats);
+		if (LOG.isLoggable(Level.FINE)) log(width, height, id, stats);
+		out.write(id);
+		source.reset();
+		CANDIDATES[id].encode(source, out);
+	}
+	
+	/**
+	 * Chooses the algorithm compressing the image to the fewest bytes.
+	 * @param stats the statistics of the image
+	 * @return the id of the algorithm
+	 */
+	static int choose(ImageStatistics stats) {
+		long[] sizes = {
+			stats.getRunLengthSize(),
+			stats.getBitPlaneSize(false),
+			stats.getBitPlaneSize(true),
+			stats.getHuffmanSize()
+		};
+		int best = 0;
+		for (int id = 1; id < sizes.length; id ++) {
+			if (sizes[id] < sizes[best]) best = id;
+		}
+		return best;
+	}
+	
+	/**
+	 * Logs the chosen algorithm with the statistics behind the choice: a low
+	 * entropy favors Huffman coding, long runs of gray values run length coding,
+	 * and few runs in the high bit planes the bit plane coders.
+	 * @param width the width of the image
+	 * @param height the height of the image
+	 * @param id the id of the chosen algorithm
+	 * @param stats the statistics of the image
+	 */
+	private static void log(int width, int height, int id, ImageStatistics stats) {
+		StringBuilder planes = new StringBuilder();
+		for (int plane = 7; plane >= 0; plane --) {
+			if (plane < 7) planes.append(' ');
+			planes.append(stats.getPlaneRuns(plane, false)).append('/').append(stats.getPlaneRuns(plane, true));
+		}
+		LOG.fine(String.format("%dx%d: %s, entropy %.3f bits/pixel, mean run %.2f pixels, "
+				+ "binary/gray runs of bit planes 7..0: %s, sizes %d %d %d %d bytes",
+				width, height, CANDIDATES[id], stats.getEntropy(), stats.getMeanRunLength(), planes,
+				stats.getRunLengthSize(), stats.getBitPlaneSize(false), stats.getBitPlaneSize(true), stats.getHuffmanSize()));
+	}
+	
+	public void decode(InputStream in, RowSink sink) throws IOException {
+		int id = in.read();
+		if (id < 0) throw new EOFException();
+		algorithm(id).decode(in, sink);
+	}
+	
+	/**
+	 * Decodes straight from the buffer without copying it.
+	 */
+	public void decode(ByteBuffer data, RowSink sink) throws IOException {
+		if (!data.hasRemaining()) throw new EOFException();
+		algorithm(data.get() & 0xFF).decode(data, sink);
+	}
+	
+	/**
+	 * Gets the algorithm of an id byte.
+	 * @param id the id
+	 * @return the algorithm
+	 * @throws IOException if the id is unknown
+	 */
+	private static CompressionAlgorithm algorithm(int id) throws IOException {
+		if (id >= CANDIDATES.length) throw new IOException("Unknown compression algorithm id: " + id);
+		return CANDIDATES[id];
+	}
+	
+	public String getExtension() {
+		return EXTENSION;
+	}
+	
+	public String toString() {
+		return "Auto";
+	}
+	
+	/*
+	 * Reusable statistics of each thread
+	 */
+	private final ThreadLocal<ImageStatistics> statistics = ThreadLocal.withInitial(ImageStatistics::new);
+	
+	/*
+	 * Candidate algorithms, indexed by their id byte
+	 */
+	private static final CompressionAlgorithm[] CANDIDATES = {
+		new RunLengthCoding(),
+		new RunLengthCodingBitPlane(false),
+		new RunLengthCodingBitPlane(true),
+		new HuffmanCoding()
+	};
+	
+	private static final Logger LOG = Logger.getLogger(AutoCompression.class.getName());
+	private static final String EXTENSION = ".AUTO";
+
+}
@@ -0,0 +1,116 @@
+package compression_algorithms;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+import cache.CompressionCache;
+import cache.ContentHash;
+
+/**
+ * Compression algorithm answering repeated images from a cache.
+ *
+ * A first pass over the rows hashes the gray values, and the hash plus the id
+ * of the algorithm is the key of the compressed bytes in the cache. On a hit
+ * the cached bytes are written without encoding, on a miss the image is
+ * encoded and the result cached. Decoding is passed straight through. Wrap
+ * the cached algorithm in an InstrumentedCompression to count the hits in the
+ * metrics of the algorithm as well.
+ * @author JLepere2
+ * @date 06/01/2018
+ */
+public class CachedCompression implements CompressionAlgorithm {
+
+	/**
+	 * Creates a cached algorithm, identified by the id of the algorithm.
+	 * @param algorithm the algorithm
+	 * @param cache the cache of compressed images
+	 */
+	public CachedCompression(CompressionAlgorithm algorithm, CompressionCache cache) {
+		this(algorithm, algorithm.getId(), cache);
+	}
+	
+	/**
+	 * Creates a cached algorithm.
+	 * @param algorithm the algorithm
+	 * @param id the id of the algorithm and its parameters, distinct for every
+	 * configuration that compresses differently
+	 * @param cache the cache of compressed images
+	 */
+	public CachedCompression(CompressionAlgorithm algorithm, String id, CompressionCache cache) {
+		this.algorithm = algorithm;
+		this.id = id;
+		this.cache = cache;
+	}
+	
+	public void encode(RowSource source, OutputStream out) throws IOException {
+		
+		// hash the image in a first pass over the rows
+		int width = source.getWidth();
+		int height = source.getHeight();
+		ContentHash hash = hashes.get().reset(width, height);
+		int[] row = new int[width];
+		for (int y = 0; y < height; y ++) {
+			source.readRow(row);
+			hash.update(row);
+		}
+		String key = hash.toHex() + "-" + id;
+		
+		// compress on a miss
+		byte[] compressed = cache.get(key);
+		if (compressed == null) {
+			source.reset();
+			ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+			algorithm.encode(source, buffer);
+			compressed = buffer.toByteArray();
+			cache.put(key, compressed);
+		}
+		
+		out.write(compressed);
+		out.flush();
+	}
+	
+	public void decode(InputStream in, RowSink sink) throws IOException {
+		algorithm.decode(in, sink);
+	}
+	
+	public void decode(ByteBuffer data, RowSink sink) throws IOException {
+		algorithm.decode(data, sink);
+	}
+	
+	public void decodeRegion(ByteBuffer data, int x, int y, int width, int height, RowSink sink) throws IOException {
+		algorithm.decodeRegion(data, x, y, width, height, sink);
+	}
+	
+	/**
+	 * Gets the cache of the compressed images.
+	 * @return the cache
+	 */
+	public CompressionCache getCache() {
+		return cache;
+	}
+	
+	public String getExtension() {
+		return algorithm.getExtension();
+	}
+	
+	public String getId() {
+		return algorithm.getId();
+	}
+	
+	public String toString() {
+		return algorithm.toString();
+	}
+	
+	/*
+	 * Reusable hash of each thread
+	 */
+	private static final ThreadLocal<ContentHash> hashes = ThreadLocal.withInitial(ContentHash::new);
+	
+	private final CompressionAlgorithm algorithm;
+	private final String id;
+	private final CompressionCache cache;
+
+}
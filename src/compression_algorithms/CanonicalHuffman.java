@@ -0,0 +1,175 @@
+package compression_algorithms;
+
+import java.io.IOException;
+
+import io.BitInputStream;
+import io.BitOutputStream;
+
+/**
+ * Canonical Huffman code helpers. A canonical code is fully described by the
+ * code length of each symbol, so only the lengths are stored in the header.
+ * @author JLepere2
+ * @date 06/01/2018
+ */
+public class CanonicalHuffman {
+
+	/**
+	 * Limits the code lengths to MAX_CODE_LENGTH, keeping the code complete.
+	 * Works on the number of codes of each length, so the caller reassigns the
+	 * lengths, giving the shortest codes to the most frequent symbols.
+	 * @param lengthCounts the number of codes of each length, updated in place
+	 * @param maxLength the longest length with a non-zero count
+	 */
+	public static void limitLengthCounts(int[] lengthCounts, int maxLength) {
+		
+		// move the deepest leaves up, pairing each with a shallower leaf
+		for (int i = maxLength; i > MAX_CODE_LENGTH; i --) {
+			while (lengthCounts[i] > 0) {
+				int j = i - 2;
+				while (lengthCounts[j] == 0) j --;
+				lengthCounts[i] -= 2;
+				lengthCounts[i - 1] ++;
+				lengthCounts[j + 1] += 2;
+				lengthCounts[j] --;
+			}
+		}
+	}
+	
+	/**
+	 * Assigns the canonical codes. Codes of the same length are consecutive
+	 * in symbol order, and shorter codes precede longer ones.
+	 * @param lengths the code length of each symbol, 0 if unused
+	 * @return the code of each symbol, right aligned
+	 */
+	public static int[] assignCodes(int[] lengths) {
+		int[] codes = new int[lengths.length];
+		assignCodes(lengths, codes);
+		return codes;
+	}
+	
+	/**
+	 * Assigns the canonical codes into an existing array.
+	 * @param lengths the code length of each symbol, 0 if unused
+	 * @param codes the array receiving the code of each symbol, right aligned
+	 */
+	public static void assignCodes(int[] lengths, int[] codes) {
+		
+		// count the codes of each length
+		int[] lengthCounts = new int[MAX_CODE_LENGTH + 1];
+		for (int length : lengths) lengthCounts[length] ++;
+		lengthCounts[0] = 0;
+		
+		// first code of each length
+		int[] nextCode = new int[MAX_CODE_LENGTH + 1];
+		int code = 0;
+		for (int length = 1; length <= MAX_CODE_LENGTH; length ++) {
+			code = (code + lengthCounts[length - 1]) << 1;
+			nextCode[length] = code;
+		}
+		
+		// assign the codes in symbol order
+		for (int i = 0; i < lengths.length; i ++) {
+			codes[i] = lengths[i] != 0 ? nextCode[lengths[i]] ++ : 0;
+		}
+	}
+	
+	/**
+	 * Writes the code lengths of all NUM_SYMBOLS symbols. An unused symbol takes
+	 * a single 0 bit, a used one a 1 bit followed by its length minus one in 4 bits.
+	 * @param out the bit stream
+	 * @param lengths the code length of each symbol
+	 * @throws IOException if writing the stream fails
+	 */
+	public static void writeCodeLengths(BitOutputStream out, byte[] lengths) throws IOException {
+		for (int i = 0; i < NUM_SYMBOLS; i ++) {
+			if (lengths[i] == 0) {
+				out.writeBits(0, 1);
+			} else {
+				out.writeBits(0x10 | (lengths[i] - 1), 5);
+			}
+		}
+	}
+	
+	/**
+	 * Reads the code lengths written by writeCodeLengths.
+	 * @param in the bit stream
+	 * @return the code length of each symbol
+	 * @throws IOException if reading the stream fails or the lengths do not form a valid code
+	 */
+	public static int[] readCodeLengths(BitInputStream in) throws IOException {
+		
+		// read the lengths
+		int[] lengths = new int[NUM_SYMBOLS];
+		for (int i = 0; i < NUM_SYMBOLS; i ++) {
+			if (in.readBits(1) == 1) {
+				lengths[i] = in.readBits(4) + 1;
+			}
+		}
+		
+		checkCodeLengths(lengths);
+		return lengths;
+	}
+	
+	/**
+	 * Writes the code lengths of all NUM_SYMBOLS symbols compactly, for tables
+	 * whose used symbols are clustered. An empty table takes a single 0 bit,
+	 * otherwise a 1 bit is followed by each length as a 0 bit if it equals the
+	 * previous one, or a 1 bit and the length in 5 bits.
+	 * @param out the bit stream
+	 * @param lengths the code length of each symbol
+	 * @throws IOException if writing the stream fails
+	 */
+	public static void writeCompactCodeLengths(BitOutputStream out, byte[] lengths) throws IOException {
+		boolean empty = true;
+		for (int i = 0; i < NUM_SYMBOLS; i ++) empty &= lengths[i] == 0;
+		out.writeBits(empty ? 0 : 1, 1);
+		if (empty) return;
+		int previous = 0;
+		for (int i = 0; i < NUM_SYMBOLS; i ++) {
+			if (lengths[i] == previous) {
+				out.writeBits(0, 1);
+			} else {
+				out.writeBits(0x20 | lengths[i], 6);
+				previous = lengths[i];
+			}
+		}
+	}
+	
+	/**
+	 * Reads the code lengths written by writeCompactCodeLengths.
+	 * @param in the bit stream
+	 * @return the code length of each symbol, all 0 for an empty table
+	 * @throws IOException if reading the stream fails or the lengths do not form a valid code
+	 */
+	public static int[] readCompactCodeLengths(BitInputStream in) throws IOException {
+		int[] lengths = new int[NUM_SYMBOLS];
+		if (in.readBits(1) == 0) return lengths;
+		int previous = 0;
+		for (int i = 0; i < NUM_SYMBOLS; i ++) {
+			if (in.readBits(1) == 1) {
+				previous = in.readBits(5);
+				if (previous > MAX_CODE_LENGTH) throw new IOException("Invalid Huffman code lengths");
+			}
+			lengths[i] = previous;
+		}
+		checkCodeLengths(lengths);
+		return lengths;
+	}
+	
+	/**
+	 * Validates the code space is not over subscribed.
+	 * @param lengths the code length of each symbol
+	 * @throws IOException if the lengths do not form a valid code
+	 */
+	private static void checkCodeLengths(int[] lengths) throws IOException {
+		long kraft = 0;
+		for (int length : lengths) {
+			if (length != 0) kraft += 1L << (MAX_CODE_LENGTH - length);
+		}
+		if (kraft > 1L << MAX_CODE_LENGTH) throw new IOException("Invalid Huffman code lengths");
+	}
+	
+	public static final int NUM_SYMBOLS = 256;
+	public static final int MAX_CODE_LENGTH = 16;
+
+}
@@ -0,0 +1,220 @@
+package compression_algorithms;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import io.ByteBufferInputStream;
+import io.Utilities;
+
+/**
+ * Container for color and 16 bit images that compresses every 8 bit plane of
+ * a channel image as an independent stream of another compression algorithm,
+ * all planes in parallel on a fork join pool. RGB channels are optionally
+ * decorrelated first with the reversible YCoCg-R transform.
+ *
+ * Format: width and height as ints, the number of channels, the bit depth and
+ * the flags as bytes, the maximum sample value as an unsigned short, the length
+ * of each compressed plane as an int, then the planes, most significant byte of
+ * the first channel first.
+ * @author JLepere2
+ * @date 06/01/2018
+ */
+public class ChannelCompression {
+
+	/**
+	 * Creates a channel container with the color transform on the common pool.
+	 * @param algorithm the algorithm compressing each plane
+	 */
+	public ChannelCompression(CompressionAlgorithm algorithm) {
+		this(algorithm, true, ForkJoinPool.commonPool());
+	}
+	
+	/**
+	 * Creates a channel container.
+	 * @param algorithm the algorithm compressing each plane
+	 * @param colorTransform true to code RGB channels as YCoCg-R
+	 * @param pool the pool compressing the planes
+	 */
+	public ChannelCompression(CompressionAlgorithm algorithm, boolean colorTransform, ForkJoinPool pool) {
+		this.algorithm = algorithm;
+		this.colorTransform = colorTransform;
+		this.pool = pool;
+	}
+	
+	/**
+	 * Encodes the planes in parallel and writes the container to the stream.
+	 * @param image the image to encode, left unchanged
+	 * @param out the stream
+	 * @throws IOException if compressing a plane or writing the stream fails
+	 */
+	public void encode(ChannelImage image, OutputStream out) throws IOException {
+		boolean transform = colorTransform && image.getChannels() >= 3;
+		if (transform) {
+			image = image.copy();
+			image.toYCoCg();
+		}
+		
+		// compress every plane on the pool
+		List<ForkJoinTask<byte[]>> tasks = new ArrayList<>();
+		for (PixelBuffer plane : image.getPlanes()) {
+			tasks.add(pool.submit(() -> algorithm.encode(plane)));
+		}
+		List<byte[]> planes = new ArrayList<>(tasks.size());
+		for (ForkJoinTask<byte[]> task : tasks) planes.add(TiledCompression.join(task));
+		
+		// header and plane lengths
+		ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES + 4 * planes.size());
+		header.putInt(image.getWidth());
+		header.putInt(image.getHeight());
+		header.put((byte) image.getChannels());
+		header.put((byte) image.getBitDepth());
+		header.put((byte) (transform ? YCOCG : 0));
+		header.putShort((short) image.getMaxValue());
+		for (byte[] plane : planes) header.putInt(plane.length);
+		out.write(header.array());
+		for (byte[] plane : planes) out.write(plane);
+		out.flush();
+	}
+	
+	/**
+	 * Encodes an image into a file.
+	 * @param image the image to encode
+	 * @param file the file to write
+	 * @return the size of the file in bytes
+	 * @throws IOException if compressing a plane or writing the file fails
+	 */
+	public long encode(ChannelImage image, Path file) throws IOException {
+		try (OutputStream out = Files.newOutputStream(file)) {
+			encode(image, out);
+		}
+		return Files.size(file);
+	}
+	
+	/**
+	 * Reads the planes from the stream and decodes them in parallel.
+	 * @param in the stream
+	 * @return the decoded image
+	 * @throws IOException if the data is invalid or reading the stream fails
+	 */
+	public ChannelImage decode(InputStream in) throws IOException {
+		DataInputStream data = new DataInputStream(new BufferedInputStream(in));
+		Header header = new Header(data);
+		ByteBuffer[] planes = new ByteBuffer[header.lengths.length];
+		for (int i = 0; i < planes.length; i ++) {
+			byte[] bytes = new byte[header.lengths[i]];
+			data.readFully(bytes);
+			planes[i] = ByteBuffer.wrap(bytes);
+		}
+		return decodePlanes(header, planes);
+	}
+	
+	/**
+	 * Decodes the planes in parallel from slices of the buffer, so a mapped
+	 * file is never copied.
+	 * @param data the compressed image, advanced past it
+	 * @return the decoded image
+	 * @throws IOException if the data is invalid
+	 */
+	public ChannelImage decode(ByteBuffer data) throws IOException {
+		ByteBuffer buffer = data.duplicate().order(ByteOrder.BIG_ENDIAN);
+		Header header = new Header(new DataInputStream(new ByteBufferInputStream(buffer)));
+		
+		// slice each plane out of the buffer
+		ByteBuffer[] planes = new ByteBuffer[header.lengths.length];
+		for (int i = 0; i < planes.length; i ++) {
+			if (buffer.remaining() < header.lengths[i]) throw new EOFException("Channel image is truncated");
+			planes[i] = buffer.slice();
+			planes[i].limit(header.lengths[i]);
+			buffer.position(buffer.position() + header.lengths[i]);
+		}
+		data.position(buffer.position());
+		return decodePlanes(header, planes);
+	}
+	
+	/**
+	 * Decodes the planes on the pool and undoes the color transform.
+	 * @param header the header
+	 * @param data the compressed planes
+	 * @return the decoded image
+	 * @throws IOException if the data of a plane is invalid
+	 */
+	private ChannelImage decodePlanes(Header header, ByteBuffer[] data) throws IOException {
+		ChannelImage image = new ChannelImage(header.width, header.height, header.channels, header.bitDepth);
+		image.setMaxValue(header.maxValue);
+		PixelBuffer[] planes = image.getPlanes();
+		List<ForkJoinTask<?>> tasks = new ArrayList<>(planes.length);
+		for (int i = 0; i < planes.length; i ++) {
+			tasks.add(pool.submit(new TiledCompression.DecodeTile(algorithm, data[i], new PixelBufferRowSink(planes[i]))));
+		}
+		for (ForkJoinTask<?> task : tasks) TiledCompression.join(task);
+		if ((header.flags & YCOCG) != 0) image.fromYCoCg();
+		return image;
+	}
+	
+	/**
+	 * Decodes a compressed file by memory mapping it.
+	 * @param file the compressed file
+	 * @return the decoded image
+	 * @throws IOException if reading the file fails or its data is invalid
+	 */
+	public ChannelImage decode(Path file) throws IOException {
+		return decode(Utilities.mapFile(file));
+	}
+	
+	/**
+	 * Gets the filename extension of the compressed files.
+	 * @return the extension of the plane algorithm prefixed with MC
+	 */
+	public String getExtension() {
+		return ".MC" + algorithm.getExtension().substring(1);
+	}
+	
+	public String toString() {
+		return "Channel " + algorithm.toString();
+	}
+	
+	/*
+	 * Header with the plane lengths
+	 */
+	static class Header {
+		Header(DataInputStream in) throws IOException {
+			width = in.readInt();
+			height = in.readInt();
+			channels = in.readUnsignedByte();
+			bitDepth = in.readUnsignedByte();
+			flags = in.readUnsignedByte();
+			maxValue = in.readUnsignedShort();
+			if (width < 0 || height < 0 || channels < 1 || channels > ChannelImage.MAX_CHANNELS || (bitDepth != 8 && bitDepth != 16)
+					|| maxValue < 1 || maxValue > (1 << bitDepth) - 1) {
+				throw new IOException("Invalid channel image header");
+			}
+			lengths = new int[channels * bitDepth / 8];
+			for (int i = 0; i < lengths.length; i ++) {
+				lengths[i] = in.readInt();
+				if (lengths[i] < 0) throw new IOException("Invalid plane length");
+			}
+		}
+		final int width, height, channels, bitDepth, flags, maxValue;
+		final int[] lengths;
+	}
+	
+	private final CompressionAlgorithm algorithm;
+	private final boolean colorTransform;
+	private final ForkJoinPool pool;
+	
+	private static final int YCOCG = 0x01;
+	private static final int HEADER_BYTES = 13;
+
+}
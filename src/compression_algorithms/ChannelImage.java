@@ -0,0 +1,232 @@
+package compression_algorithms;
+
+/**
+ * Planar image of 1 to 4 channels of 8 or 16 bit samples: gray, gray with
+ * alpha, RGB or RGBA. Each channel is held as one 8 bit plane per byte of its
+ * samples, most significant byte first, so every plane can be compressed by
+ * any of the gray compression algorithms. The maximum value records the range
+ * of the samples, lower than the bit depth allows for 10 or 12 bit sources.
+ * @author JLepere2
+ * @date 06/01/2018
+ */
+public class ChannelImage {
+
+	/**
+	 * Creates a blank image.
+	 * @param width the width of the image
+	 * @param height the height of the image
+	 * @param channels the number of channels, 1 to 4
+	 * @param bitDepth the bits of each sample, 8 or 16
+	 */
+	public ChannelImage(int width, int height, int channels, int bitDepth) {
+		this(width, height, channels, bitDepth, null);
+	}
+	
+	/**
+	 * Creates an image from its planes.
+	 * @param width the width of the image
+	 * @param height the height of the image
+	 * @param channels the number of channels, 1 to 4
+	 * @param bitDepth the bits of each sample, 8 or 16
+	 * @param planes the planes of each channel, most significant byte first, or null to allocate them
+	 */
+	public ChannelImage(int width, int height, int channels, int bitDepth, PixelBuffer[] planes) {
+		if (channels < 1 || channels > MAX_CHANNELS) throw new IllegalArgumentException("Invalid number of channels: " + channels);
+		if (bitDepth != 8 && bitDepth != 16) throw new IllegalArgumentException("Invalid bit depth: " + bitDepth);
+		this.width = width;
+		this.height = height;
+		this.channels = channels;
+		this.bitDepth = bitDepth;
+		int count = channels * (bitDepth / 8);
+		if (planes == null) {
+			planes = new PixelBuffer[count];
+			for (int i = 0; i < count; i ++) planes[i] = new PixelBuffer(width, height);
+		} else if (planes.length != count) {
+			throw new IllegalArgumentException("Expected " + count + " planes, got " + planes.length);
+		}
+		this.planes = planes;
+		this.maxValue = (1 << bitDepth) - 1;
+	}
+	
+	/**
+	 * Creates an 8 bit gray image sharing the pixels of a gray image.
+	 * @param pixels the gray image
+	 * @return the image
+	 */
+	public static ChannelImage fromGray(PixelBuffer pixels) {
+		return new ChannelImage(pixels.getWidth(), pixels.getHeight(), 1, 8, new PixelBuffer[]{pixels});
+	}
+	
+	/**
+	 * Gets the width.
+	 * @return the width
+	 */
+	public int getWidth() {
+		return width;
+	}
+	
+	/**
+	 * Gets the height.
+	 * @return the height
+	 */
+	public int getHeight() {
+		return height;
+	}
+	
+	/**
+	 * Gets the number of channels.
+	 * @return 1 for gray, 2 for gray with alpha, 3 for RGB or 4 for RGBA
+	 */
+	public int getChannels() {
+		return channels;
+	}
+	
+	/**
+	 * Gets the bits of each sample.
+	 * @return 8 or 16
+	 */
+	public int getBitDepth() {
+		return bitDepth;
+	}
+	
+	/**
+	 * Gets the largest value a sample may have.
+	 * @return the maximum value, (1 << bit depth) - 1 unless set lower
+	 */
+	public int getMaxValue() {
+		return maxValue;
+	}
+	
+	/**
+	 * Sets the largest value a sample may have, such as 4095 for 12 bit samples
+	 * stored in 16 bits.
+	 * @param maxValue the maximum value, 1 to (1 << bit depth) - 1
+	 */
+	public void setMaxValue(int maxValue) {
+		if (maxValue < 1 || maxValue > (1 << bitDepth) - 1) throw new IllegalArgumentException("Invalid maximum value: " + maxValue);
+		this.maxValue = maxValue;
+	}
+	
+	/**
+	 * Gets the number of bytes of the samples of all channels.
+	 * @return the number of bytes
+	 */
+	public long getRawBytes() {
+		return (long) width * height * planes.length;
+	}
+	
+	/**
+	 * Gets the 8 bit planes of the channels, most significant byte first.
+	 * @return the planes, shared with the image
+	 */
+	public PixelBuffer[] getPlanes() {
+		return planes;
+	}
+	
+	/**
+	 * Gets a sample.
+	 * @param x the column
+	 * @param y the row
+	 * @param channel the channel
+	 * @return the sample
+	 */
+	public int get(int x, int y, int channel) {
+		if (bitDepth == 8) return planes[channel].get(x, y);
+		return planes[2 * channel].get(x, y) << 8 | planes[2 * channel + 1].get(x, y);
+	}
+	
+	/**
+	 * Sets a sample.
+	 * @param x the column
+	 * @param y the row
+	 * @param channel the channel
+	 * @param sample the sample, its bits beyond the bit depth ignored
+	 */
+	public void set(int x, int y, int channel, int sample) {
+		if (bitDepth == 8) {
+			planes[channel].set(x, y, sample & 0xFF);
+		} else {
+			planes[2 * channel].set(x, y, (sample >>> 8) & 0xFF);
+			planes[2 * channel + 1].set(x, y, sample & 0xFF);
+		}
+	}
+	
+	/**
+	 * Copies the image.
+	 * @return a copy with its own planes
+	 */
+	public ChannelImage copy() {
+		PixelBuffer[] copies = new PixelBuffer[planes.length];
+		for (int i = 0; i < planes.length; i ++) {
+			copies[i] = new PixelBuffer(width, height);
+			planes[i].copyTo(copies[i].array(), 0, width);
+		}
+		ChannelImage copy = new ChannelImage(width, height, channels, bitDepth, copies);
+		copy.maxValue = maxValue;
+		return copy;
+	}
+	
+	/**
+	 * Applies the reversible YCoCg-R color transform to the RGB channels in
+	 * place, modulo the sample range so the results keep the bit depth. The
+	 * lifting steps use the signed differences, so small differences stay
+	 * small in magnitude. Alpha is left alone.
+	 */
+	public void toYCoCg() {
+		if (channels < 3) return;
+		int mask = (1 << bitDepth) - 1;
+		for (int y = 0; y < height; y ++) {
+			for (int x = 0; x < width; x ++) {
+				int r = get(x, y, 0);
+				int g = get(x, y, 1);
+				int b = get(x, y, 2);
+				int co = (r - b) & mask;
+				int t = (b + (signed(co) >> 1)) & mask;
+				int cg = (g - t) & mask;
+				set(x, y, 0, (t + (signed(cg) >> 1)) & mask);
+				set(x, y, 1, co);
+				set(x, y, 2, cg);
+			}
+		}
+	}
+	
+	/**
+	 * Inverts toYCoCg in place, restoring the exact RGB samples.
+	 */
+	public void fromYCoCg() {
+		if (channels < 3) return;
+		int mask = (1 << bitDepth) - 1;
+		for (int y = 0; y < height; y ++) {
+			for (int x = 0; x < width; x ++) {
+				int luma = get(x, y, 0);
+				int co = get(x, y, 1);
+				int cg = get(x, y, 2);
+				int t = (luma - (signed(cg) >> 1)) & mask;
+				int g = (cg + t) & mask;
+				int b = (t - (signed(co) >> 1)) & mask;
+				set(x, y, 0, (b + co) & mask);
+				set(x, y, 1, g);
+				set(x, y, 2, b);
+			}
+		}
+	}
+	
+	/**
+	 * Interprets a sample as a two's complement difference of the bit depth.
+	 * @param v the sample
+	 * @return the signed difference
+	 */
+	private int signed(int v) {
+		return v << (32 - bitDepth) >> (32 - bitDepth);
+	}
+	
+	private final int width;
+	private final int height;
+	private final int channels;
+	private final int bitDepth;
+	private final PixelBuffer[] planes;
+	private int maxValue;
+	
+	public static final int MAX_CHANNELS = 4;
+
+}
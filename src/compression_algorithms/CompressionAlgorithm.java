@@ -1,5 +1,21 @@
 package compression_algorithms;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import io.ByteBufferInputStream;
+import io.Utilities;
+
 /**
  * Interface for compression algorithms.
  * @author JLepere2
@@ -7,16 +23,257 @@ package compression_algorithms;
  */
 public interface CompressionAlgorithm {
 
+	/**
+	 * Encodes the rows of the source into the stream. The image dimensions
+	 * are stored in the stream, and only a few rows are held in memory at a time.
+	 * The stream is flushed but not closed.
+	 * @param source the rows to encode.
+	 * @param out the stream to write the compressed image to.
+	 * @throws IOException if reading the source or writing the stream fails.
+	 */
+	public void encode(RowSource source, OutputStream out) throws IOException;
+	
+	/**
+	 * Decodes a compressed stream, passing each row to the sink as soon as it is complete.
+	 * @param in the stream to read the compressed image from.
+	 * @param sink the sink receiving the decoded rows.
+	 * @throws IOException if reading the stream or writing the sink fails.
+	 */
+	public void decode(InputStream in, RowSink sink) throws IOException;
+	
+	/**
+	 * Encodes the rows of the source into the channel.
+	 * @param source the rows to encode.
+	 * @param channel the channel to write the compressed image to.
+	 * @throws IOException if reading the source or writing the channel fails.
+	 */
+	public default void encode(RowSource source, WritableByteChannel channel) throws IOException {
+		encode(source, Channels.newOutputStream(channel));
+	}
+	
+	/**
+	 * Decodes a compressed image from the channel.
+	 * @param channel the channel to read the compressed image from.
+	 * @param sink the sink receiving the decoded rows.
+	 * @throws IOException if reading the channel or writing the sink fails.
+	 */
+	public default void decode(ReadableByteChannel channel, RowSink sink) throws IOException {
+		decode(Channels.newInputStream(channel), sink);
+	}
+	
+	/**
+	 * Decodes a compressed image from the remaining bytes of a buffer, such
+	 * as a mapped file. The bytes are read in place, and the position of the
+	 * buffer is advanced past the bytes consumed.
+	 * @param data the compressed image.
+	 * @param sink the sink receiving the decoded rows.
+	 * @throws IOException if the data is invalid or writing the sink fails.
+	 */
+	public default void decode(ByteBuffer data, RowSink sink) throws IOException {
+		decode(new ByteBufferInputStream(data), sink);
+	}
+	
+	/**
+	 * Encodes the rows of the source into a file through a file channel, so
+	 * the compressed image is never held on the heap as a whole.
+	 * @param source the rows to encode.
+	 * @param file the file to write, replaced if it exists.
+	 * @return the size of the compressed file in bytes.
+	 * @throws IOException if reading the source or writing the file fails.
+	 */
+	public default long encode(RowSource source, Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			encode(source, channel);
+			return channel.position();
+		}
+	}
+	
+	/**
+	 * Decodes a compressed file by memory mapping it.
+	 * @param file the compressed file.
+	 * @param sink the sink receiving the decoded rows.
+	 * @throws IOException if reading the file fails or its data is invalid.
+	 */
+	public default void decode(Path file, RowSink sink) throws IOException {
+		decode(Utilities.mapFile(file), sink);
+	}
+	
+	/**
+	 * Decodes a rectangular region of a compressed image from the remaining
+	 * bytes of a buffer. The sink receives only the rows of the region, with
+	 * row 0 at the top of the region. This decodes the whole image and drops
+	 * the rest, containers with a tile index decode only the tiles overlapping it.
+	 * @param data the compressed image.
+	 * @param x the left of the region.
+	 * @param y the top of the region.
+	 * @param width the width of the region.
+	 * @param height the height of the region.
+	 * @param sink the sink receiving the decoded rows of the region.
+	 * @throws IOException if the data is invalid or writing the sink fails.
+	 * @throws IllegalArgumentException if the region is not inside the image.
+	 */
+	public default void decodeRegion(ByteBuffer data, int x, int y, int width, int height, RowSink sink) throws IOException {
+		decode(data, new RegionRowSink(x, y, width, height, sink));
+	}
+	
+	/**
+	 * Decodes a rectangular region of a compressed file by memory mapping it.
+	 * @param file the compressed file.
+	 * @param x the left of the region.
+	 * @param y the top of the region.
+	 * @param width the width of the region.
+	 * @param height the height of the region.
+	 * @param sink the sink receiving the decoded rows of the region.
+	 * @throws IOException if reading the file fails or its data is invalid.
+	 * @throws IllegalArgumentException if the region is not inside the image.
+	 */
+	public default void decodeRegion(Path file, int x, int y, int width, int height, RowSink sink) throws IOException {
+		decodeRegion(Utilities.mapFile(file), x, y, width, height, sink);
+	}
+	
+	/**
+	 * Encodes the image into its compressed representation.
+	 * @param image the image to encode.
+	 * @return the compressed bytes.
+	 */
+	public default byte[] encode(int[][] image) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try {
+			encode(new MatrixRowSource(image), out);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return out.toByteArray();
+	}
+	
+	/**
+	 * Decodes a compressed representation back into an image.
+	 * @param data the compressed bytes.
+	 * @return the decoded image.
+	 */
+	public default int[][] decode(byte[] data) {
+		MatrixRowSink sink = new MatrixRowSink();
+		try {
+			decode(ByteBuffer.wrap(data), sink);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return sink.getImage();
+	}
+	
+	/**
+	 * Encodes a pixel buffer into its compressed representation.
+	 * @param pixels the image to encode.
+	 * @return the compressed bytes.
+	 */
+	public default byte[] encode(PixelBuffer pixels) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try {
+			encode(new PixelBufferRowSource(pixels), out);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return out.toByteArray();
+	}
+	
+	/**
+	 * Decodes a compressed representation into a pixel buffer.
+	 * @param data the compressed bytes.
+	 * @return the decoded image.
+	 */
+	public default PixelBuffer decodePixels(byte[] data) {
+		PixelBufferRowSink sink = new PixelBufferRowSink();
+		try {
+			decode(ByteBuffer.wrap(data), sink);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return sink.getPixels();
+	}
+	
+	/**
+	 * Gets the filename extension of the compressed files.
+	 * @return the extension, including the leading dot.
+	 */
+	public String getExtension();
+	
+	/**
+	 * Gets the id of the algorithm and its parameters, distinct for every
+	 * configuration that compresses differently.
+	 * @return the name and extension, followed by any parameters.
+	 */
+	public default String getId() {
+		return toString() + getExtension();
+	}
+	
 	/**
 	 * Compress and save the image.
 	 * @param image the image to compress.
 	 */
-	public void compress(int[][] image);
+	public default void compress(int[][] image) {
+		compress(PixelBuffer.fromMatrix(image));
+	}
+	
+	/**
+	 * Compress and save the image.
+	 * @param image the image to compress.
+	 */
+	public default void compress(PixelBuffer image) {
+		
+		// choose the file to save to
+		Path file = Utilities.chooseSaveFile(getExtension());
+		if (file == null) { return; }
+		
+		try {
+			// timer
+			long startTime = System.nanoTime();
+			
+			// encode the image straight into the file
+			long numBytes = encode(new PixelBufferRowSource(image), file);
+			
+			// compression duration
+			long endTime = System.nanoTime();
+			
+			// show compression statistics
+			long rawBytes = (long) image.getWidth() * image.getHeight();
+			Utilities.showStatistics("COMPRESSION", endTime - startTime, rawBytes, numBytes);
+		} catch (IOException e) {
+			Utilities.showError("There was an error saving the file!", "SAVING ERROR");
+		}
+	}
 	
 	/**
 	 * Decompress the image.
 	 * @return the decompressed image.
 	 */
-	public int[][] decompress();
-	
+	public default int[][] decompress() {
+		
+		// choose the compressed file
+		Path file = Utilities.chooseOpenFile(getExtension());
+		
+		// check if null
+		if (file == null) { return null; }
+		
+		try {
+			// timer
+			long startTime = System.nanoTime();
+			
+			// decode the mapped file
+			MatrixRowSink sink = new MatrixRowSink();
+			decode(file, sink);
+			
+			// decompression duration
+			long endTime = System.nanoTime();
+			
+			// show decompression statistics
+			Utilities.showStatistics("DECOMPRESSION", endTime - startTime, 0, 0);
+			
+			return sink.getImage();
+		} catch (IOException e) {
+			Utilities.showError("There was an error loading the file!", "LOADING ERROR");
+			return null;
+		}
+	}
+
 }
@@ -0,0 +1,83 @@
+package compression_algorithms;
+
+/**
+ * Registry of the available compression algorithms.
+ * @author JLepere2
+ * @date 06/01/2018
+ */
+public class CompressionAlgorithms {
+
+	/**
+	 * Creates one instance of every available compression algorithm.
+	 * @return the compression algorithms
+	 */
+	public static CompressionAlgorithm[] getAll() {
+		return new CompressionAlgorithm[]{
+			new RunLengthCoding(),
+			new RunLengthCodingBitPlane(),
+			new RunLengthCodingBitPlane(true),
+			new HuffmanCoding(),
+			new AdaptiveHuffmanCoding(),
+			new RansCoding(),
+			new ContextHuffmanCoding(),
+			new LzCoding(),
+			new LzCoding(true),
+			new TiledCompression(new HuffmanCoding()),
+			new AutoCompression(),
+			new TiledCompression(new AutoCompression()),
+			new PredictiveCompression(new HuffmanCoding()),
+			new PredictiveCompression(new RansCoding()),
+			new TiledCompression(new PredictiveCompression(new AutoCompression()))
+		};
+	}
+	
+	/**
+	 * Looks up a compression algorithm by name. The name may be the class name,
+	 * the display name or the file extension, ignoring case. Any algorithm name
+	 * prefixed with "Tiled" selects the tiled container around that algorithm,
+	 * and with "Predictive" the predictive pre-transform ahead of it. Each prefix
+	 * is accepted once, so the names form a small fixed set.
+	 * @param name the name of the algorithm
+	 * @return the compression algorithm
+	 * @throws IllegalArgumentException if no algorithm matches the name
+	 */
+	public static CompressionAlgorithm forName(String name) {
+		CompressionAlgorithm algo = lookup(name.replace(" ", ""), true, true);
+		if (algo == null) throw new IllegalArgumentException("Unknown compression algorithm: " + name);
+		return algo;
+	}
+	
+	/**
+	 * Looks up a registered algorithm, optionally behind a Tiled and a Predictive
+	 * prefix. Behind a prefix only the algorithms that are not themselves tiled
+	 * or predictive match, so no wrapper is nested in another of its kind.
+	 * @param key the name without spaces
+	 * @param tiled true if the name may still start with the Tiled prefix
+	 * @param predictive true if the name may still start with the Predictive prefix
+	 * @return the compression algorithm, or null if no algorithm matches the name
+	 */
+	private static CompressionAlgorithm lookup(String key, boolean tiled, boolean predictive) {
+		boolean prefixed = !tiled || !predictive;
+		for (CompressionAlgorithm algo : getAll()) {
+			if (prefixed && (algo instanceof TiledCompression || algo instanceof PredictiveCompression)) continue;
+			if (key.equalsIgnoreCase(algo.getClass().getSimpleName())
+					|| key.equalsIgnoreCase(algo.toString().replace(" ", ""))
+					|| key.equalsIgnoreCase(algo.getExtension().substring(1))) {
+				return algo;
+			}
+		}
+		if (tiled && key.length() > TILED.length() && key.regionMatches(true, 0, TILED, 0, TILED.length())) {
+			CompressionAlgorithm inner = lookup(key.substring(TILED.length()), false, predictive);
+			if (inner != null) return new TiledCompression(inner);
+		}
+		if (predictive && key.length() > PREDICTIVE.length() && key.regionMatches(true, 0, PREDICTIVE, 0, PREDICTIVE.length())) {
+			CompressionAlgorithm inner = lookup(key.substring(PREDICTIVE.length()), tiled, false);
+			if (inner != null) return new PredictiveCompression(inner);
+		}
+		return null;
+	}
+	
+	private static final String TILED = "Tiled";
+	private static final String PREDICTIVE = "Predictive";
+
+}
@@ -0,0 +1,203 @@
+package compression_algorithms;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+import io.BitInputStream;
+import io.BitOutputStream;
+
+/**
+ * Huffman Coding with a code table per neighbour context.
+ *
+ * The average of the left and upper neighbours of a pixel, quantized to
+ * NUM_CONTEXTS levels, selects one of the code tables, so each table only
+ * has to code the gray values likely next to that level. Missing neighbours
+ * on the first row and column take the other neighbour, and the first pixel
+ * takes 0. The code lengths of all tables are stored compactly in the header,
+ * and each table is decoded with its own table driven decoder.
+ * @author JLepere2
+ * @date 06/01/2018
+ */
+public class ContextHuffmanCoding implements CompressionAlgorithm {
+
+	public void encode(RowSource source, OutputStream out) throws IOException {
+		
+		// reusable encoder contexts of this thread
+		Context context = contexts.get();
+		HuffmanEncoder[] encoders = context.encoders;
+		
+		// image dimensions
+		int width = source.getWidth();
+		int height = source.getHeight();
+		int[] row = context.getRow(width);
+		int[] up = context.getUp(width);
+		
+		// calculate the frequencies of each context in a first pass over the rows
+		for (HuffmanEncoder encoder : encoders) encoder.clear();
+		for (int y = 0; y < height; y ++) {
+			source.readRow(row);
+			for (int x = 0; x < width; x ++) {
+				encoders[context(row, up, x, y)].count(row[x]);
+			}
+			System.arraycopy(row, 0, up, 0, width);
+		}
+		
+		// canonical codes of each context
+		for (HuffmanEncoder encoder : encoders) encoder.buildCodes();
+		
+		// write the image dimensions and the code lengths
+		BitOutputStream bits = encoders[0].open(out);
+		bits.writeBits(width, 32);
+		bits.writeBits(height, 32);
+		for (HuffmanEncoder encoder : encoders) encoder.writeCompactCodeLengths(bits);
+		
+		// write the image in a second pass over the rows
+		source.reset();
+		Arrays.fill(up, 0, width, 0);
+		for (int y = 0; y < height; y ++) {
+			source.readRow(row);
+			for (int x = 0; x < width; x ++) {
+				encoders[context(row, up, x, y)].encode(bits, row[x]);
+			}
+			System.arraycopy(row, 0, up, 0, width);
+		}
+		
+		bits.flush();
+	
+	}
+	
+	public void decode(InputStream in, RowSink sink) throws IOException {
+		
+		// read the image dimensions
+		DataInputStream header = new DataInputStream(in);
+		int width = header.readInt();
+		int height = header.readInt();
+		
+		decode(width, height, new BitInputStream(in), sink);
+	}
+	
+	/**
+	 * Decodes straight from the buffer without copying it.
+	 */
+	public void decode(ByteBuffer data, RowSink sink) throws IOException {
+		
+		// read the image dimensions
+		if (data.remaining() < 8) throw new EOFException();
+		ByteBuffer header = data.duplicate().order(ByteOrder.BIG_ENDIAN);
+		int width = header.getInt();
+		int height = header.getInt();
+		data.position(data.position() + 8);
+		
+		decode(width, height, new BitInputStream(data), sink);
+	}
+	
+	/**
+	 * Decodes the code lengths of each context and the payload.
+	 * @param width the image width
+	 * @param height the image height
+	 * @param bits the bit stream after the image dimensions
+	 * @param sink the sink receiving the decoded rows
+	 * @throws IOException if the data is invalid or writing the sink fails
+	 */
+	private void decode(int width, int height, BitInputStream bits, RowSink sink) throws IOException {
+		if (width < 0 || height < 0) throw new IOException("Invalid image dimensions");
+		sink.begin(width, height);
+		
+		// table driven decoder of each context
+		HuffmanDecoder[] decoders = new HuffmanDecoder[NUM_CONTEXTS];
+		for (int c = 0; c < NUM_CONTEXTS; c ++) {
+			decoders[c] = new HuffmanDecoder(CanonicalHuffman.readCompactCodeLengths(bits));
+		}
+		
+		// reconstructed row and the row above it
+		int[] row = new int[width];
+		int[] up = new int[width];
+		
+		// set the image
+		for (int y = 0; y < height; y ++) {
+			for (int x = 0; x < width; x ++) {
+				row[x] = decoders[context(row, up, x, y)].decode(bits);
+			}
+			sink.writeRow(y, row);
+			int[] swap = up;
+			up = row;
+			row = swap;
+		}
+	}
+	
+	/**
+	 * Gets the context of a pixel from its left and upper neighbours.
+	 * @param row the current row, set up to the pixel
+	 * @param up the row above, all 0 on the first row
+	 * @param x the column of the pixel
+	 * @param y the row of the pixel
+	 * @return the context, from 0 to NUM_CONTEXTS - 1
+	 */
+	private static int context(int[] row, int[] up, int x, int y) {
+		int left = x > 0 ? row[x - 1] : up[x];
+		int above = y > 0 ? up[x] : left;
+		return (left + above + 1) >>> (1 + CONTEXT_SHIFT);
+	}
+	
+	public String getExtension() {
+		return EXTENSION;
+	}
+	
+	public String toString() {
+		return "Context Huffman Coding";
+	}
+	
+	/**
+	 * Reusable encoder contexts and row buffers. Not thread safe, use one per thread.
+	 */
+	private static class Context {
+		
+		/**
+		 * Creates the encoder of each neighbour context.
+		 */
+		Context() {
+			encoders = new HuffmanEncoder[NUM_CONTEXTS];
+			for (int c = 0; c < NUM_CONTEXTS; c ++) encoders[c] = new HuffmanEncoder();
+		}
+		
+		/**
+		 * Gets the reusable row buffer.
+		 * @param width the minimum length of the buffer
+		 * @return the row buffer
+		 */
+		int[] getRow(int width) {
+			return encoders[0].getRowBuffer(width);
+		}
+		
+		/**
+		 * Gets the reusable buffer of the row above, cleared for the first row.
+		 * @param width the minimum length of the buffer
+		 * @return the row buffer
+		 */
+		int[] getUp(int width) {
+			if (up.length < width) up = new int[width];
+			Arrays.fill(up, 0, width, 0);
+			return up;
+		}
+		
+		private final HuffmanEncoder[] encoders;
+		private int[] up = new int[0];
+	
+	}
+	
+	/*
+	 * Encoder contexts of each thread
+	 */
+	private final ThreadLocal<Context> contexts = ThreadLocal.withInitial(Context::new);
+	
+	private static final int CONTEXT_SHIFT = 3;
+	private static final int NUM_CONTEXTS = CanonicalHuffman.NUM_SYMBOLS >>> CONTEXT_SHIFT;
+	private static final String EXTENSION = ".CHUF";
+
+}
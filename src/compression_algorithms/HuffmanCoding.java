@@ -1,12 +1,15 @@
 package compression_algorithms;
 
-import java.util.Comparator;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.PriorityQueue;
-import java.util.Scanner;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 
-import io.Utilities;
+import io.BitInputStream;
+import io.BitOutputStream;
 
 /**
  * Huffman Coding
@@ -15,163 +18,109 @@ import io.Utilities;
  */
 public class HuffmanCoding implements CompressionAlgorithm {
 
-	public void compress(int[][] image) {
+	public void encode(RowSource source, OutputStream out) throws IOException {
 		
-		// timer
-		long startTime = System.currentTimeMillis();
+		// reusable encoder context of this thread
+		HuffmanEncoder encoder = encoders.get();
 		
-		// calculate frequencies
-		int[] frequencies = new int[256];
-		for (int y = 0; y < image.length; y ++) {
-			for (int x = 0; x < image.length; x ++) {
-				frequencies[image[y][x]] ++;
-			}
-		}
-		
-		// priority queue for huffman coding
-		PriorityQueue<Node> pq = new PriorityQueue<>(new Comparator<Node>() {
-			public int compare(Node o1, Node o2) {
-				return o1.frequency - o2.frequency;
-			}
-		});
+		// image dimensions
+		int width = source.getWidth();
+		int height = source.getHeight();
+		int[] row = encoder.getRowBuffer(width);
 		
-		// add initial nodes to pq
-		for (int i = 0; i < frequencies.length; i ++) {
-			int freq = frequencies[i];
-			if (freq != 0) {
-				// create new node to be inserted into pq
-				Node n = new Node(null, null);
-				n.setFrequency(freq);     // set the frequency
-				n.setValue(i);            // set the gv
-				pq.add(n);
-			}
+		// calculate frequencies in a first pass over the rows
+		encoder.clear();
+		for (int y = 0; y < height; y ++) {
+			source.readRow(row);
+			encoder.count(row, 0, width);
 		}
 		
-		// huffman coding
-		while (pq.size() > 1) {
-			// pop and combine the smallest two nodes and add back to pq
-			pq.add(new Node(pq.remove(), pq.remove()));
-		}
-		
-		// list for the final codings
-		//List<CodeNode> codings = new LinkedList<>();
-		Map<Integer, String> codings = new HashMap<>();
-		
-		// set the codings from the root node
-		generateCodings(codings, pq.remove(), "");
+		// canonical codes of at most MAX_CODE_LENGTH bits
+		encoder.buildCodes();
 		
-		// compression duration
-		long endTime = System.currentTimeMillis();
+		// write the image dimensions and the code lengths
+		BitOutputStream bits = encoder.open(out);
+		bits.writeBits(width, 32);
+		bits.writeBits(height, 32);
+		encoder.writeCodeLengths(bits);
 		
-		// num bytes
-		int numBytes = 0;
-		for (Integer key : codings.keySet()) {
-			// byte length to encode * frequency + num bytes to store key
-			numBytes += (((codings.get(key).length()) / 8) + 1) * frequencies[key] + 4;
+		// write the image in a second pass over the rows
+		source.reset();
+		for (int y = 0; y < height; y ++) {
+			source.readRow(row);
+			encoder.encode(bits, row, 0, width);
 		}
 		
-		// show compression statistics
-		Utilities.showStatistics("COMPRESSION", endTime - startTime, numBytes);
+		bits.flush();
+	
+	}
+	
+	public void decode(InputStream in, RowSink sink) throws IOException {
 		
-		// save the file
-		Utilities.saveHuffmanCSV(codings, image, EXTENSION);
+		// read the image dimensions
+		DataInputStream header = new DataInputStream(in);
+		int width = header.readInt();
+		int height = header.readInt();
 		
+		decode(width, height, new BitInputStream(in), sink);
 	}
 	
 	/**
-	 * Generates the codings.
-	 * @param codings the codings map
-	 * @param n the current node
-	 * @param code the current code
+	 * Decodes straight from the buffer without copying it.
 	 */
-	public void generateCodings(Map<Integer, String> codings, Node n, String code) {
-		if (n.leftChild == null && n.rightChild == null) {
-			codings.put(n.value, code);
-			return;
-		}
-		generateCodings(codings, n.leftChild, code = "0" + code);
-		generateCodings(codings, n.rightChild, code = "1" + code);
-	}
-
-	
-	public int[][] decompress() {
-		
-		// get scanner for huffman encoded image
-		Scanner s = Utilities.loadHuffmanCSV(EXTENSION);
+	public void decode(ByteBuffer data, RowSink sink) throws IOException {
 		
-		// validate
-		if (s == null) return null;
+		// read the image dimensions
+		if (data.remaining() < 8) throw new EOFException();
+		ByteBuffer header = data.duplicate().order(ByteOrder.BIG_ENDIAN);
+		int width = header.getInt();
+		int height = header.getInt();
+		data.position(data.position() + 8);
 		
-		// timer
-		long startTime = System.currentTimeMillis();
-		
-		// get the number of coded gray values
-		int numCodings = Integer.parseInt(s.nextLine().trim());
+		decode(width, height, new BitInputStream(data), sink);
+	}
+	
+	/**
+	 * Decodes the code lengths and the payload.
+	 * @param width the image width
+	 * @param height the image height
+	 * @param bits the bit stream after the image dimensions
+	 * @param sink the sink receiving the decoded rows
+	 * @throws IOException if the data is invalid or writing the sink fails
+	 */
+	private void decode(int width, int height, BitInputStream bits, RowSink sink) throws IOException {
+		if (width < 0 || height < 0) throw new IOException("Invalid image dimensions");
+		sink.begin(width, height);
 		
-		// hashmap for encodings
-		Map<String, Integer> codes = new HashMap<>();
+		// read the code lengths
+		int[] lengths = CanonicalHuffman.readCodeLengths(bits);
 		
-		// set code map
-		for (int i = 0; i < numCodings; i ++) {
-			// get and split the line
-			String[] splitLine = s.nextLine().trim().split(",");
-			// get the code and gv, and add to hashmap
-			codes.put(splitLine[0], Integer.parseInt(splitLine[1]));
-		}
+		// table driven decoder for the canonical code
+		HuffmanDecoder decoder = new HuffmanDecoder(lengths);
 		
-		// reconstructed image
-		int[][] image = new int[IMAGE_SIZE][IMAGE_SIZE];
+		// reconstructed row
+		int[] row = new int[width];
 		
 		// set the image
-		for (int y = 0; y < IMAGE_SIZE; y ++) {
-			// get and split the line
-			String[] splitLine = s.nextLine().trim().split(",");
-			for (int x = 0; x < IMAGE_SIZE; x ++) {
-				image[y][x] = codes.get(splitLine[x]);
-			}
+		for (int y = 0; y < height; y ++) {
+			decoder.decode(bits, row, 0, width);
+			sink.writeRow(y, row);
 		}
-		
-		// decompression duration
-		long endTime = System.currentTimeMillis();
-		
-		// show decompression statistics
-		Utilities.showStatistics("DECOMPRESSION", endTime - startTime, 0);
-		
-		// return the image
-		return image;
+	}
+	
+	public String getExtension() {
+		return EXTENSION;
 	}
 	
 	public String toString() {
 		return "Huffman Coding";
 	}
-
+	
 	/*
-	 * Node for encoding
+	 * Encoder context of each thread
 	 */
-	class Node {
-		public Node(Node leftChild, Node rightChild) {
-			this.leftChild = leftChild;
-			this.rightChild = rightChild;
-			if (leftChild != null && rightChild != null)
-				this.frequency = leftChild.frequency + rightChild.frequency;
-		}
-		public void setValue(int val) { this.value = val; }
-		public void setFrequency(int freq) { this.frequency = freq; }
-		Node leftChild, rightChild;
-		int value;
-		int frequency;
-	}
-	
-	public class CodeNode {
-		public CodeNode(String code, int val) {
-			this.code = code;
-			this.val = val;
-		}
-		public String code;
-		public int val;
-	}
-	
-	private static final String EXTENSION = ".HCSV";
-	private static final int IMAGE_SIZE = 512;
+	private final ThreadLocal<HuffmanEncoder> encoders = ThreadLocal.withInitial(HuffmanEncoder::new);
 	
+	private static final String EXTENSION = ".HUF";
+
 }
@@ -0,0 +1,125 @@
+package compression_algorithms;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import io.BitInputStream;
+
+/**
+ * Table driven decoder for canonical Huffman codes. The next PRIMARY_BITS bits
+ * index a primary table that resolves every code of up to PRIMARY_BITS bits
+ * in one lookup. Longer codes point to an overflow table indexed by the
+ * remaining bits. Decoding a symbol does not allocate, and rebuilding the
+ * tables for a new code reuses them.
+ * @author JLepere2
+ * @date 06/01/2018
+ */
+public class HuffmanDecoder {
+
+	/**
+	 * Creates a decoder without a code, rejecting every symbol until it is rebuilt.
+	 */
+	public HuffmanDecoder() {
+	}
+	
+	/**
+	 * Builds the lookup tables for a canonical code.
+	 * @param lengths the code length of each symbol, 0 if unused
+	 */
+	public HuffmanDecoder(int[] lengths) {
+		rebuild(lengths);
+	}
+	
+	/**
+	 * Rebuilds the lookup tables in place for another canonical code.
+	 * @param lengths the code length of each symbol, 0 if unused
+	 */
+	public void rebuild(int[] lengths) {
+		
+		// canonical codes
+		if (codes.length != lengths.length) codes = new int[lengths.length];
+		CanonicalHuffman.assignCodes(lengths, codes);
+		
+		// number of extra bits needed by the overflow table of each primary entry
+		Arrays.fill(primary, 0);
+		Arrays.fill(overflowBits, 0);
+		for (int s = 0; s < lengths.length; s ++) {
+			int length = lengths[s];
+			if (length > PRIMARY_BITS) {
+				int prefix = codes[s] >>> (length - PRIMARY_BITS);
+				overflowBits[prefix] = Math.max(overflowBits[prefix], length - PRIMARY_BITS);
+			}
+		}
+		
+		// lay out the overflow tables one after another
+		int overflowSize = 0;
+		for (int prefix = 0; prefix < primary.length; prefix ++) {
+			if (overflowBits[prefix] != 0) {
+				primary[prefix] = (overflowSize << 8) | OVERFLOW | overflowBits[prefix];
+				overflowSize += 1 << overflowBits[prefix];
+			}
+		}
+		if (overflow.length < overflowSize) overflow = new int[overflowSize];
+		Arrays.fill(overflow, 0, overflowSize, 0);
+		
+		// fill every entry whose leading bits match a code
+		for (int s = 0; s < lengths.length; s ++) {
+			int length = lengths[s];
+			if (length == 0) continue;
+			int entry = (s << 8) | length;
+			if (length <= PRIMARY_BITS) {
+				int first = codes[s] << (PRIMARY_BITS - length);
+				int count = 1 << (PRIMARY_BITS - length);
+				for (int i = 0; i < count; i ++) primary[first + i] = entry;
+			} else {
+				int pointer = primary[codes[s] >>> (length - PRIMARY_BITS)];
+				int bits = pointer & 0x7F;
+				int extra = length - PRIMARY_BITS;
+				int low = codes[s] & ((1 << extra) - 1);
+				int first = (pointer >>> 8) + (low << (bits - extra));
+				int count = 1 << (bits - extra);
+				for (int i = 0; i < count; i ++) overflow[first + i] = entry;
+			}
+		}
+	}
+	
+	/**
+	 * Decodes the next symbol.
+	 * @param in the bit stream
+	 * @return the symbol
+	 * @throws IOException if the bits are not a valid code or the stream ended
+	 */
+	public int decode(BitInputStream in) throws IOException {
+		int entry = primary[in.peekBits(PRIMARY_BITS)];
+		if ((entry & OVERFLOW) != 0) {
+			int bits = entry & 0x7F;
+			entry = overflow[(entry >>> 8) + (in.peekBits(PRIMARY_BITS + bits) & ((1 << bits) - 1))];
+		}
+		if (entry == 0) throw new IOException("Invalid Huffman code");
+		in.skipBits(entry & 0xFF);
+		return entry >>> 8;
+	}
+	
+	/**
+	 * Decodes a run of symbols into an array.
+	 * @param in the bit stream
+	 * @param symbols the array to fill
+	 * @param offset the index of the first symbol
+	 * @param length the number of symbols
+	 * @throws IOException if the bits are not a valid code or the stream ended
+	 */
+	public void decode(BitInputStream in, int[] symbols, int offset, int length) throws IOException {
+		for (int i = offset; i < offset + length; i ++) {
+			symbols[i] = decode(in);
+		}
+	}
+	
+	private final int[] primary = new int[1 << PRIMARY_BITS];
+	private final int[] overflowBits = new int[1 << PRIMARY_BITS];
+	private int[] overflow = new int[0];
+	private int[] codes = new int[0];
+	
+	public static final int PRIMARY_BITS = 11;
+	private static final int OVERFLOW = 0x80;
+
+}
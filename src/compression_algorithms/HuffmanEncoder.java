@@ -0,0 +1,298 @@
+package compression_algorithms;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+import io.BitOutputStream;
+
+/**
+ * Reusable Huffman encoder context. Holds the histogram, the canonical code
+ * table as primitive arrays and all scratch space for building it, so after
+ * the first image of a given width encoding allocates nothing. Not thread safe,
+ * use one context per thread.
+ * @author JLepere2
+ * @date 06/01/2018
+ */
+public class HuffmanEncoder {
+
+	/**
+	 * Creates an encoder context.
+	 */
+	public HuffmanEncoder() {
+		frequencies = new long[NUM_SYMBOLS];
+		code = new int[NUM_SYMBOLS];
+		length = new byte[NUM_SYMBOLS];
+		sorted = new long[NUM_SYMBOLS];
+		tree = new long[NUM_SYMBOLS];
+		lengthCounts = new int[NUM_SYMBOLS + 1];
+		nextCode = new int[CanonicalHuffman.MAX_CODE_LENGTH + 1];
+		bits = new BitOutputStream(null);
+		row = new int[0];
+	}
+	
+	/**
+	 * Clears the histogram before counting a new image.
+	 */
+	public void clear() {
+		Arrays.fill(frequencies, 0);
+	}
+	
+	/**
+	 * Adds symbols to the histogram.
+	 * @param symbols the symbols to count
+	 * @param offset the index of the first symbol
+	 * @param count the number of symbols
+	 */
+	public void count(int[] symbols, int offset, int count) {
+		for (int i = offset; i < offset + count; i ++) {
+			frequencies[symbols[i]] ++;
+		}
+	}
+	
+	/**
+	 * Adds a symbol to the histogram.
+	 * @param symbol the symbol to count
+	 */
+	public void count(int symbol) {
+		frequencies[symbol] ++;
+	}
+	
+	/**
+	 * Halves the histogram, so older symbols weigh less than the ones counted
+	 * next. A counted symbol keeps a frequency of at least 1.
+	 */
+	public void halve() {
+		for (int s = 0; s < NUM_SYMBOLS; s ++) {
+			frequencies[s] = (frequencies[s] + 1) >>> 1;
+		}
+	}
+	
+	/**
+	 * Builds the canonical code table from the histogram.
+	 */
+	public void buildCodes() {
+		
+		// sort the used symbols by increasing frequency, packed as frequency << 8 | symbol
+		int n = 0;
+		for (int s = 0; s < NUM_SYMBOLS; s ++) {
+			if (frequencies[s] != 0) sorted[n ++] = (frequencies[s] << 8) | s;
+		}
+		Arrays.sort(sorted, 0, n);
+		Arrays.fill(length, (byte) 0);
+		Arrays.fill(code, 0);
+		if (n == 0) return;
+		if (n == 1) {
+			// a single symbol still needs a non-empty code
+			length[(int) (sorted[0] & 0xFF)] = 1;
+			return;
+		}
+		
+		// code lengths of the sorted symbols
+		for (int i = 0; i < n; i ++) tree[i] = sorted[i] >>> 8;
+		computeCodeLengths(tree, n);
+		
+		// count the codes of each length and limit them to MAX_CODE_LENGTH
+		Arrays.fill(lengthCounts, 0);
+		int maxLength = 0;
+		for (int i = 0; i < n; i ++) {
+			lengthCounts[(int) tree[i]] ++;
+			maxLength = Math.max(maxLength, (int) tree[i]);
+		}
+		CanonicalHuffman.limitLengthCounts(lengthCounts, maxLength);
+		
+		// give the shortest lengths to the most frequent symbols
+		int l = 1;
+		for (int i = n - 1; i >= 0; i --) {
+			while (lengthCounts[l] == 0) l ++;
+			length[(int) (sorted[i] & 0xFF)] = (byte) l;
+			lengthCounts[l] --;
+		}
+		
+		// first canonical code of each length
+		Arrays.fill(lengthCounts, 0);
+		for (int s = 0; s < NUM_SYMBOLS; s ++) lengthCounts[length[s]] ++;
+		lengthCounts[0] = 0;
+		int c = 0;
+		for (l = 1; l <= CanonicalHuffman.MAX_CODE_LENGTH; l ++) {
+			c = (c + lengthCounts[l - 1]) << 1;
+			nextCode[l] = c;
+		}
+		
+		// assign the codes in symbol order
+		for (int s = 0; s < NUM_SYMBOLS; s ++) {
+			if (length[s] != 0) code[s] = nextCode[length[s]] ++;
+		}
+	}
+	
+	/**
+	 * Computes the code lengths in place from frequencies sorted in increasing
+	 * order, using the array based method of Moffat and Katajainen. The array
+	 * holds the weights of the internal nodes, then their parent pointers,
+	 * then their depths, and finally the leaf depths.
+	 * @param a the sorted frequencies, replaced by the code lengths
+	 * @param n the number of symbols, at least 2
+	 */
+	private static void computeCodeLengths(long[] a, int n) {
+		
+		// combine the two smallest weights into internal nodes, leaving parent pointers
+		a[0] += a[1];
+		int root = 0;
+		int leaf = 2;
+		for (int next = 1; next < n - 1; next ++) {
+			if (leaf >= n || a[root] < a[leaf]) {
+				a[next] = a[root];
+				a[root ++] = next;
+			} else {
+				a[next] = a[leaf ++];
+			}
+			if (leaf >= n || (root < next && a[root] < a[leaf])) {
+				a[next] += a[root];
+				a[root ++] = next;
+			} else {
+				a[next] += a[leaf ++];
+			}
+		}
+		
+		// depths of the internal nodes
+		a[n - 2] = 0;
+		for (int next = n - 3; next >= 0; next --) {
+			a[next] = a[(int) a[next]] + 1;
+		}
+		
+		// depths of the leaves
+		int available = 1;
+		int used = 0;
+		int depth = 0;
+		root = n - 2;
+		int next = n - 1;
+		while (available > 0) {
+			while (root >= 0 && a[root] == depth) {
+				used ++;
+				root --;
+			}
+			while (available > used) {
+				a[next --] = depth;
+				available --;
+			}
+			available = 2 * used;
+			depth ++;
+			used = 0;
+		}
+	}
+	
+	/**
+	 * Writes the code lengths for the decoder.
+	 * @param out the bit stream
+	 * @throws IOException if writing the stream fails
+	 */
+	public void writeCodeLengths(BitOutputStream out) throws IOException {
+		CanonicalHuffman.writeCodeLengths(out, length);
+	}
+	
+	/**
+	 * Writes the code lengths compactly, for tables whose used symbols are clustered.
+	 * @param out the bit stream
+	 * @throws IOException if writing the stream fails
+	 */
+	public void writeCompactCodeLengths(BitOutputStream out) throws IOException {
+		CanonicalHuffman.writeCompactCodeLengths(out, length);
+	}
+	
+	/**
+	 * Writes the codes of the symbols.
+	 * @param out the bit stream
+	 * @param symbols the symbols to encode
+	 * @param offset the index of the first symbol
+	 * @param count the number of symbols
+	 * @throws IOException if writing the stream fails
+	 */
+	public void encode(BitOutputStream out, int[] symbols, int offset, int count) throws IOException {
+		for (int i = offset; i < offset + count; i ++) {
+			int s = symbols[i];
+			out.writeBits(code[s], length[s]);
+		}
+	}
+	
+	/**
+	 * Writes the code of a symbol.
+	 * @param out the bit stream
+	 * @param symbol the symbol to encode
+	 * @throws IOException if writing the stream fails
+	 */
+	public void encode(BitOutputStream out, int symbol) throws IOException {
+		out.writeBits(code[symbol], length[symbol]);
+	}
+	
+	/**
+	 * Gets the size of the payload for the counted symbols.
+	 * @return the number of bits the symbols encode to
+	 */
+	public long getEncodedBits() {
+		long total = 0;
+		for (int s = 0; s < NUM_SYMBOLS; s ++) {
+			total += frequencies[s] * length[s];
+		}
+		return total;
+	}
+	
+	/**
+	 * Gets the number of times a symbol was counted.
+	 * @param symbol the symbol
+	 * @return the frequency of the symbol
+	 */
+	public long getFrequency(int symbol) {
+		return frequencies[symbol];
+	}
+	
+	/**
+	 * Gets the code of a symbol.
+	 * @param symbol the symbol
+	 * @return the right aligned code
+	 */
+	public int getCode(int symbol) {
+		return code[symbol];
+	}
+	
+	/**
+	 * Gets the code length of a symbol.
+	 * @param symbol the symbol
+	 * @return the code length, 0 if the symbol was not counted
+	 */
+	public int getLength(int symbol) {
+		return length[symbol];
+	}
+	
+	/**
+	 * Gets the reusable bit writer, pointed at the stream.
+	 * @param out the stream to write to
+	 * @return the bit writer
+	 */
+	public BitOutputStream open(OutputStream out) {
+		bits.reset(out);
+		return bits;
+	}
+	
+	/**
+	 * Gets the reusable row buffer.
+	 * @param width the minimum length of the buffer
+	 * @return the row buffer
+	 */
+	public int[] getRowBuffer(int width) {
+		if (row.length < width) row = new int[width];
+		return row;
+	}
+	
+	private final long[] frequencies;
+	private final int[] code;
+	private final byte[] length;
+	private final long[] sorted;
+	private final long[] tree;
+	private final int[] lengthCounts;
+	private final int[] nextCode;
+	private final BitOutputStream bits;
+	private int[] row;
+	
+	private static final int NUM_SYMBOLS = CanonicalHuffman.NUM_SYMBOLS;
+
+}
@@ -0,0 +1,209 @@
+package compression_algorithms;
+
+import java.util.Arrays;
+
+/**
+ * Statistics of an image gathered in one pass over its rows: the gray value
+ * histogram, the runs of equal gray values and the runs of each binary and
+ * Gray coded bit plane.
+ *
+ * The run length and bit plane coders store nothing but the dimensions and
+ * varint run lengths, and the Huffman coder's payload follows from the code
+ * lengths built from the histogram, so the statistics give the compressed
+ * size of each of them without trial compressing the image.
+ * @author JLepere2
+ * @date 06/01/2018
+ */
+public class ImageStatistics {
+
+	/**
+	 * Creates an empty statistics context.
+	 */
+	public ImageStatistics() {
+		histogram = new HuffmanEncoder();
+		planeRuns = new long[2][8];
+		planeBytes = new long[2];
+		runStart = new int[2][8];
+	}
+	
+	/**
+	 * Clears the statistics before gathering a new image.
+	 * @param width the width of the image
+	 * @param height the height of the image
+	 */
+	public void reset(int width, int height) {
+		this.width = width;
+		this.height = height;
+		histogram.clear();
+		runGv = -1;
+		runLength = 0;
+		runs = 0;
+		runBytes = 0;
+		for (int g = 0; g < 2; g ++) {
+			Arrays.fill(planeRuns[g], 0);
+			planeBytes[g] = 0;
+		}
+	}
+	
+	/**
+	 * Adds the next row of the image.
+	 * @param row the gray values of the row
+	 */
+	public void addRow(int[] row) {
+		histogram.count(row, 0, width);
+		
+		// runs of equal gray values, which may span rows
+		for (int x = 0; x < width; x ++) {
+			int gv = row[x];
+			if (gv != runGv) {
+				endRun();
+				runGv = gv;
+			}
+			runLength ++;
+		}
+		
+		// bit plane runs alternate starting with 0 in every row, a boundary is a changed bit
+		if (width == 0) return;
+		for (int g = 0; g < 2; g ++) {
+			int[] start = runStart[g];
+			long[] counts = planeRuns[g];
+			Arrays.fill(start, 0);
+			long bytes = 0;
+			int previous = 0;
+			for (int x = 0; x < width; x ++) {
+				int gv = row[x];
+				if (g == GRAY) gv ^= gv >>> 1;
+				int boundaries = (gv ^ previous) & 0xFF;
+				previous = gv;
+				while (boundaries != 0) {
+					int p = Integer.numberOfTrailingZeros(boundaries);
+					bytes += varIntSize(x - start[p]);
+					counts[p] ++;
+					start[p] = x;
+					boundaries &= boundaries - 1;
+				}
+			}
+			for (int p = 0; p < 8; p ++) {
+				bytes += varIntSize(width - start[p]);
+				counts[p] ++;
+			}
+			planeBytes[g] += bytes;
+		}
+	}
+	
+	/**
+	 * Finishes the image after its last row, building the Huffman code lengths.
+	 */
+	public void finish() {
+		endRun();
+		histogram.buildCodes();
+	}
+	
+	/**
+	 * Gets the entropy of the gray value histogram.
+	 * @return the entropy in bits per pixel
+	 */
+	public double getEntropy() {
+		double pixels = (double) width * height;
+		double entropy = 0;
+		for (int s = 0; s < CanonicalHuffman.NUM_SYMBOLS; s ++) {
+			long frequency = histogram.getFrequency(s);
+			if (frequency != 0) {
+				double p = frequency / pixels;
+				entropy -= p * Math.log(p);
+			}
+		}
+		return entropy / Math.log(2);
+	}
+	
+	/**
+	 * Gets the mean length of the runs of equal gray values.
+	 * @return the mean run length in pixels, 0 for an empty image
+	 */
+	public double getMeanRunLength() {
+		return runs == 0 ? 0 : (double) width * height / runs;
+	}
+	
+	/**
+	 * Gets the number of runs of a bit plane, counting the leading 0 run of every row.
+	 * @param plane the bit plane, 0 for the least significant bit
+	 * @param grayCode true for the planes of the Gray code
+	 * @return the number of runs
+	 */
+	public long getPlaneRuns(int plane, boolean grayCode) {
+		return planeRuns[grayCode ? GRAY : BINARY][plane];
+	}
+	
+	/**
+	 * Gets the size of the image compressed with RunLengthCoding.
+	 * @return the number of bytes
+	 */
+	public long getRunLengthSize() {
+		return 8 + runBytes;
+	}
+	
+	/**
+	 * Gets the size of the image compressed with RunLengthCodingBitPlane.
+	 * @param grayCode true for the Gray coded planes
+	 * @return the number of bytes
+	 */
+	public long getBitPlaneSize(boolean grayCode) {
+		return 9 + planeBytes[grayCode ? GRAY : BINARY];
+	}
+	
+	/**
+	 * Gets the size of the image compressed with HuffmanCoding.
+	 * @return the number of bytes
+	 */
+	public long getHuffmanSize() {
+		
+		// dimensions and code lengths, a bit for each unused symbol and 5 for each used one
+		long bits = 64;
+		for (int s = 0; s < CanonicalHuffman.NUM_SYMBOLS; s ++) {
+			bits += histogram.getLength(s) == 0 ? 1 : 5;
+		}
+		
+		// payload, padded to a byte
+		bits += histogram.getEncodedBits();
+		return (bits + 7) >>> 3;
+	}
+	
+	/**
+	 * Ends the current run of equal gray values, split as RunLengthCoding splits it.
+	 */
+	private void endRun() {
+		while (runLength > 0) {
+			int n = (int) Math.min(runLength, Integer.MAX_VALUE);
+			runBytes += 1 + varIntSize(n);
+			runs ++;
+			runLength -= n;
+		}
+	}
+	
+	/**
+	 * Gets the size of a varint.
+	 * @param v the value
+	 * @return the number of bytes
+	 */
+	private static int varIntSize(int v) {
+		return (31 - Integer.numberOfLeadingZeros(v | 1)) / 7 + 1;
+	}
+	
+	private int width;
+	private int height;
+	
+	private final HuffmanEncoder histogram;
+	
+	private int runGv;
+	private long runLength;
+	private long runs;
+	private long runBytes;
+	
+	private final long[][] planeRuns;
+	private final long[] planeBytes;
+	private final int[][] runStart;
+	
+	private static final int BINARY = 0;
+	private static final int GRAY = 1;
+
+}
@@ -0,0 +1,260 @@
+package compression_algorithms;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.function.LongSupplier;
+
+import metrics.CompressionMetrics;
+import metrics.MetricsRegistry;
+
+/**
+ * Wrapper recording the metrics of another compression algorithm. Compression
+ * time is split into three phases without touching the wrapped coder:
+ * analysis is the time until the source is last reset, which covers the
+ * statistics pass of two pass coders, write is the time spent inside the
+ * output stream, and encode is the rest.
+ * @author JLepere2
+ * @date 06/01/2018
+ */
+public class InstrumentedCompression implements CompressionAlgorithm {
+
+	/**
+	 * Records the metrics of an algorithm in the default registry.
+	 * @param algorithm the algorithm to instrument
+	 */
+	public InstrumentedCompression(CompressionAlgorithm algorithm) {
+		this(algorithm, MetricsRegistry.getDefault());
+	}
+	
+	/**
+	 * Records the metrics of an algorithm.
+	 * @param algorithm the algorithm to instrument
+	 * @param registry the registry holding the metrics
+	 */
+	public InstrumentedCompression(CompressionAlgorithm algorithm, MetricsRegistry registry) {
+		this.algorithm = algorithm;
+		this.metrics = registry.forAlgorithm(algorithm.toString());
+	}
+	
+	public void encode(RowSource source, OutputStream out) throws IOException {
+		TimedOutputStream timedOut = new TimedOutputStream(out);
+		encode(source, timedSource -> algorithm.encode(timedSource, timedOut), timedOut.timer);
+	}
+	
+	public void encode(RowSource source, WritableByteChannel channel) throws IOException {
+		TimedChannel timedChannel = new TimedChannel(channel);
+		encode(source, timedSource -> algorithm.encode(timedSource, timedChannel), timedChannel.timer);
+	}
+	
+	/**
+	 * Runs an encoding and records its phases.
+	 * @param source the rows to encode
+	 * @param encoding the encoding of the timed source
+	 * @param output the timer of the output
+	 * @throws IOException if the encoding fails
+	 */
+	private void encode(RowSource source, Encoding encoding, WriteTimer output) throws IOException {
+		TimedRowSource timedSource = new TimedRowSource(source);
+		long start = System.nanoTime();
+		try {
+			encoding.encode(timedSource);
+		} catch (IOException | RuntimeException e) {
+			metrics.recordFailure();
+			throw e;
+		}
+		long total = System.nanoTime() - start;
+		
+		// split the time into the phases
+		long analysis = timedSource.lastReset == 0 ? 0 : timedSource.lastReset - start;
+		long write = Math.min(output.nanos, total - analysis);
+		long rawBytes = (long) source.getWidth() * source.getHeight();
+		metrics.recordCompression(analysis, total - analysis - write, write, rawBytes, output.count);
+	}
+	
+	public void decode(InputStream in, RowSink sink) throws IOException {
+		CountingInputStream countingIn = new CountingInputStream(in);
+		decode(countedSink -> algorithm.decode(countingIn, countedSink), sink, () -> countingIn.count);
+	}
+	
+	public void decode(ByteBuffer data, RowSink sink) throws IOException {
+		int start = data.position();
+		decode(countedSink -> algorithm.decode(data, countedSink), sink, () -> data.position() - start);
+	}
+	
+	public void decodeRegion(ByteBuffer data, int x, int y, int width, int height, RowSink sink) throws IOException {
+		int start = data.position();
+		decode(countedSink -> algorithm.decodeRegion(data, x, y, width, height, countedSink), sink, () -> data.position() - start);
+	}
+	
+	/**
+	 * Runs a decoding and records it.
+	 * @param decoding the decoding into the counted sink
+	 * @param sink the sink receiving the decoded rows
+	 * @param compressedBytes the number of compressed bytes read once done
+	 * @throws IOException if the decoding fails
+	 */
+	private void decode(Decoding decoding, RowSink sink, LongSupplier compressedBytes) throws IOException {
+		long[] pixels = new long[1];
+		long start = System.nanoTime();
+		try {
+			decoding.decode(new RowSink() {
+				public void begin(int width, int height) throws IOException {
+					pixels[0] = (long) width * height;
+					sink.begin(width, height);
+				}
+				public void writeRow(int y, int[] row) throws IOException {
+					sink.writeRow(y, row);
+				}
+			});
+		} catch (IOException | RuntimeException e) {
+			metrics.recordFailure();
+			throw e;
+		}
+		metrics.recordDecompression(System.nanoTime() - start, compressedBytes.getAsLong(), pixels[0]);
+	}
+	
+	/**
+	 * Gets the metrics of the wrapped algorithm.
+	 * @return the metrics
+	 */
+	public CompressionMetrics getMetrics() {
+		return metrics;
+	}
+	
+	public String getExtension() {
+		return algorithm.getExtension();
+	}
+	
+	public String getId() {
+		return algorithm.getId();
+	}
+	
+	public String toString() {
+		return algorithm.toString();
+	}
+	
+	/*
+	 * Source remembering when it was last reset
+	 */
+	static class TimedRowSource implements RowSource {
+		TimedRowSource(RowSource source) { this.source = source; }
+		public int getWidth() { return source.getWidth(); }
+		public int getHeight() { return source.getHeight(); }
+		public void readRow(int[] row) throws IOException { source.readRow(row); }
+		public void reset() throws IOException {
+			source.reset();
+			lastReset = System.nanoTime();
+		}
+		final RowSource source;
+		long lastReset;
+	}
+	
+	/*
+	 * Encoding or decoding run by the wrapper
+	 */
+	interface Encoding {
+		void encode(RowSource source) throws IOException;
+	}
+	interface Decoding {
+		void decode(RowSink sink) throws IOException;
+	}
+	
+	/*
+	 * Bytes written and time spent writing them
+	 */
+	static class WriteTimer {
+		long count;
+		long nanos;
+	}
+	
+	/*
+	 * Stream counting the bytes written and the time spent writing them
+	 */
+	static class TimedOutputStream extends FilterOutputStream {
+		TimedOutputStream(OutputStream out) { super(out); }
+		public void write(int b) throws IOException {
+			long start = System.nanoTime();
+			out.write(b);
+			timer.nanos += System.nanoTime() - start;
+			timer.count ++;
+		}
+		public void write(byte[] b, int off, int len) throws IOException {
+			long start = System.nanoTime();
+			out.write(b, off, len);
+			timer.nanos += System.nanoTime() - start;
+			timer.count += len;
+		}
+		public void flush() throws IOException {
+			long start = System.nanoTime();
+			out.flush();
+			timer.nanos += System.nanoTime() - start;
+		}
+		final WriteTimer timer = new WriteTimer();
+	}
+	
+	/*
+	 * Channel counting the bytes written and the time spent writing them,
+	 * keeping gathering writes if the channel supports them
+	 */
+	static class TimedChannel implements GatheringByteChannel {
+		TimedChannel(WritableByteChannel channel) { this.channel = channel; }
+		public int write(ByteBuffer src) throws IOException {
+			long start = System.nanoTime();
+			int n = channel.write(src);
+			timer.nanos += System.nanoTime() - start;
+			timer.count += n;
+			return n;
+		}
+		public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+			long n = 0;
+			if (channel instanceof GatheringByteChannel) {
+				long start = System.nanoTime();
+				n = ((GatheringByteChannel) channel).write(srcs, offset, length);
+				timer.nanos += System.nanoTime() - start;
+				timer.count += n;
+			} else {
+				for (int i = offset; i < offset + length; i ++) n += write(srcs[i]);
+			}
+			return n;
+		}
+		public long write(ByteBuffer[] srcs) throws IOException { return write(srcs, 0, srcs.length); }
+		public boolean isOpen() { return channel.isOpen(); }
+		public void close() throws IOException { channel.close(); }
+		final WritableByteChannel channel;
+		final WriteTimer timer = new WriteTimer();
+	}
+	
+	/*
+	 * Stream counting the bytes read
+	 */
+	static class CountingInputStream extends FilterInputStream {
+		CountingInputStream(InputStream in) { super(in); }
+		public int read() throws IOException {
+			int b = in.read();
+			if (b >= 0) count ++;
+			return b;
+		}
+		public int read(byte[] b, int off, int len) throws IOException {
+			int n = in.read(b, off, len);
+			if (n > 0) count += n;
+			return n;
+		}
+		public long skip(long n) throws IOException {
+			long skipped = in.skip(n);
+			count += skipped;
+			return skipped;
+		}
+		public boolean markSupported() { return false; }
+		long count;
+	}
+	
+	private final CompressionAlgorithm algorithm;
+	private final CompressionMetrics metrics;
+
+}
@@ -0,0 +1,417 @@
+package compression_algorithms;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * LZ77 Coding of the gray values in row major order, in the style of LZ4.
+ *
+ * The image is coded as sequences of a token byte, holding the number of
+ * literals in the high nibble and the match length minus MIN_MATCH in the low
+ * nibble (15 meaning more follows in bytes of 255 and a last byte below 255),
+ * the literal gray values and the 2 byte little endian distance of the match.
+ * Distance 0 stands for the row above, which is tried first at every position,
+ * so repeated rows and vertical structure are found whatever the image width.
+ * Other matches are found in a hash table of the last position of each 8 byte
+ * sequence, longer than the shortest match so that the few values of flat and
+ * two tone areas do not crowd out the useful candidates. The lazy level
+ * follows hash chains and defers a match when the next position has a longer
+ * one, trading encoding speed for ratio. Decoding is the same for both levels
+ * and mostly array copies.
+ *
+ * The format is the image dimensions, a flags byte, the length of the
+ * sequences in bytes and the sequences.
+ * @author JLepere2
+ * @date 06/01/2018
+ */
+public class LzCoding implements CompressionAlgorithm {
+
+	/**
+	 * Creates the fast greedy level.
+	 */
+	public LzCoding() {
+		this(false);
+	}
+	
+	/**
+	 * Creates an LZ coder.
+	 * @param lazy true for the slower lazy matching level
+	 */
+	public LzCoding(boolean lazy) {
+		this.lazy = lazy;
+	}
+	
+	public void encode(RowSource source, OutputStream out) throws IOException {
+		
+		// reusable encoder context of this thread
+		Encoder encoder = encoders.get();
+		
+		// flatten the image
+		int width = source.getWidth();
+		int height = source.getHeight();
+		if ((long) width * height > Integer.MAX_VALUE) throw new IOException("Image is too large for LZ coding: " + width + "x" + height);
+		int n = width * height;
+		byte[] pixels = encoder.getPixels(n);
+		int[] row = new int[width];
+		for (int y = 0; y < height; y ++) {
+			source.readRow(row);
+			for (int x = 0; x < width; x ++) pixels[y * width + x] = (byte) row[x];
+		}
+		
+		// match and write the sequences
+		int length = encoder.encode(pixels, n, width, lazy);
+		DataOutputStream data = new DataOutputStream(out);
+		data.writeInt(width);
+		data.writeInt(height);
+		data.writeByte(lazy ? LAZY : 0);
+		data.writeInt(length);
+		data.write(encoder.output, 0, length);
+		data.flush();
+	
+	}
+	
+	public void decode(InputStream in, RowSink sink) throws IOException {
+		DataInputStream data = new DataInputStream(in);
+		
+		// read the header and the sequences
+		int width = data.readInt();
+		int height = data.readInt();
+		data.readUnsignedByte();
+		int length = data.readInt();
+		if (length < 0) throw new IOException("Invalid LZ data length");
+		byte[] sequences = new byte[length];
+		data.readFully(sequences);
+		
+		decode(width, height, sequences, 0, length, sink);
+	}
+	
+	/**
+	 * Decodes straight from the array of heap buffers, copying only other buffers.
+	 */
+	public void decode(ByteBuffer data, RowSink sink) throws IOException {
+		
+		// read the header
+		if (data.remaining() < HEADER_BYTES) throw new EOFException();
+		ByteBuffer header = data.duplicate().order(ByteOrder.BIG_ENDIAN);
+		int width = header.getInt();
+		int height = header.getInt();
+		header.get();
+		int length = header.getInt();
+		if (length < 0) throw new IOException("Invalid LZ data length");
+		if (header.remaining() < length) throw new EOFException();
+		
+		// read the sequences
+		if (data.hasArray()) {
+			decode(width, height, data.array(), data.arrayOffset() + header.position(), length, sink);
+		} else {
+			byte[] sequences = new byte[length];
+			header.get(sequences);
+			decode(width, height, sequences, 0, length, sink);
+		}
+		data.position(data.position() + HEADER_BYTES + length);
+	}
+	
+	/**
+	 * Decodes the sequences, writing each row as soon as it is complete.
+	 * @param width the image width
+	 * @param height the image height
+	 * @param in the array holding the sequences
+	 * @param offset the index of the first sequence
+	 * @param length the length of the sequences
+	 * @param sink the sink receiving the decoded rows
+	 * @throws IOException if the data is invalid or writing the sink fails
+	 */
+	private void decode(int width, int height, byte[] in, int offset, int length, RowSink sink) throws IOException {
+		if (width < 0 || height < 0 || (long) width * height > Integer.MAX_VALUE) throw new IOException("Invalid image dimensions");
+		sink.begin(width, height);
+		int n = width * height;
+		byte[] pixels = new byte[n];
+		int[] row = new int[width];
+		int p = offset;
+		int end = offset + length;
+		int q = 0;
+		int y = 0;
+		while (q < n) {
+			if (p >= end) throw new IOException("Invalid LZ data");
+			int token = in[p ++] & 0xFF;
+			
+			// copy the literals
+			int literals = token >>> 4;
+			if (literals == 15) {
+				int b;
+				do {
+					if (p >= end) throw new IOException("Invalid LZ data");
+					b = in[p ++] & 0xFF;
+					literals += b;
+				} while (b == 255);
+			}
+			if (literals < 0 || literals > n - q || literals > end - p) throw new IOException("Invalid LZ data");
+			System.arraycopy(in, p, pixels, q, literals);
+			p += literals;
+			q += literals;
+			
+			// copy the match, a repeating pattern when it overlaps itself
+			if (q < n) {
+				if (end - p < 2) throw new IOException("Invalid LZ data");
+				int distance = (in[p] & 0xFF) | (in[p + 1] & 0xFF) << 8;
+				p += 2;
+				if (distance == 0) distance = width;
+				int match = token & 15;
+				if (match == 15) {
+					int b;
+					do {
+						if (p >= end) throw new IOException("Invalid LZ data");
+						b = in[p ++] & 0xFF;
+						match += b;
+					} while (b == 255);
+				}
+				match += MIN_MATCH;
+				if (match < MIN_MATCH || distance == 0 || distance > q || match > n - q) throw new IOException("Invalid LZ data");
+				int from = q - distance;
+				while (match > 0) {
+					int chunk = Math.min(match, q - from);
+					System.arraycopy(pixels, from, pixels, q, chunk);
+					q += chunk;
+					match -= chunk;
+				}
+			}
+			
+			// write the completed rows
+			for (; y < height && q >= (y + 1) * width; y ++) {
+				for (int x = 0, i = y * width; x < width; x ++, i ++) row[x] = pixels[i] & 0xFF;
+				sink.writeRow(y, row);
+			}
+		}
+		
+		// rows of an image without pixels
+		for (; y < height; y ++) sink.writeRow(y, row);
+	}
+	
+	public String getExtension() {
+		return EXTENSION;
+	}
+	
+	public String toString() {
+		return lazy ? "Lazy LZ Coding" : "LZ Coding";
+	}
+	
+	/**
+	 * Reusable match finder and buffers. Not thread safe, use one per thread.
+	 */
+	private static class Encoder {
+		
+		/**
+		 * Codes the pixels as sequences into the output buffer.
+		 * @param pixels the gray values in row major order
+		 * @param n the number of pixels
+		 * @param width the image width, the distance of the row above
+		 * @param lazy true to follow hash chains and defer matches
+		 * @return the length of the sequences in the output buffer
+		 */
+		int encode(byte[] pixels, int n, int width, boolean lazy) {
+			if (output.length < n + n / 255 + 16) output = new byte[n + n / 255 + 16];
+			Arrays.fill(head, -1);
+			this.pixels = pixels;
+			this.n = n;
+			this.width = width;
+			this.lazy = lazy;
+			out = 0;
+			indexed = 0;
+			
+			int anchor = 0;
+			int p = 0;
+			int misses = 0;
+			while (p + MIN_MATCH <= n) {
+				int length = findMatch(p);
+				if (length < MIN_MATCH) {
+					// skip ahead faster through data without matches on the greedy level
+					p += lazy ? 1 : 1 + (misses ++ >>> SKIP_SHIFT);
+					continue;
+				}
+				
+				// defer to the next position while it has a longer match
+				int distance = this.distance;
+				while (lazy && p + 1 + MIN_MATCH <= n) {
+					int next = findMatch(p + 1);
+					if (next <= length) break;
+					p ++;
+					length = next;
+					distance = this.distance;
+				}
+				
+				writeSequence(anchor, p - anchor, length, distance);
+				
+				// index positions inside the match
+				int matchEnd = p + length;
+				for (int i = Math.max(p + 1, indexed); i < matchEnd && i + HASH_LENGTH <= n; i += lazy ? 1 : INSERT_STEP) insert(i);
+				p = matchEnd;
+				anchor = p;
+				misses = 0;
+			}
+			
+			// the last literals
+			if (anchor < n) writeSequence(anchor, n - anchor, 0, 0);
+			return out;
+		}
+		
+		/**
+		 * Finds the longest match at a position, trying the row above first,
+		 * and indexes the position.
+		 * @param p the position, with at least MIN_MATCH pixels left
+		 * @return the length of the match, 0 if there is none, with its distance in the distance field
+		 */
+		private int findMatch(int p) {
+			int best = 0;
+			distance = 0;
+			
+			// the row above
+			if (width > 0 && p >= width) {
+				best = matchLength(p - width, p);
+				if (best >= MIN_MATCH) distance = width;
+			}
+			
+			// candidates with the same hash, the most recent first
+			if (p + HASH_LENGTH > n) return best >= MIN_MATCH ? best : 0;
+			int h = hash(p);
+			int candidate = head[h];
+			int chain = lazy ? MAX_CHAIN : 1;
+			while (candidate >= 0 && p - candidate <= MAX_DISTANCE && chain -- > 0 && best < n - p) {
+				if (pixels[candidate + best] == pixels[p + best]) {
+					int length = matchLength(candidate, p);
+					if (length > best) {
+						best = length;
+						distance = p - candidate;
+					}
+				}
+				candidate = lazy ? previous[candidate & WINDOW_MASK] : -1;
+			}
+			if (p >= indexed) insert(p, h);
+			return best >= MIN_MATCH ? best : 0;
+		}
+		
+		/**
+		 * Gets the length of the match between two positions.
+		 * @param from the earlier position
+		 * @param p the later position
+		 * @return the number of equal pixels, up to the end of the image
+		 */
+		private int matchLength(int from, int p) {
+			int length = 0;
+			int max = n - p;
+			while (length < max && pixels[from + length] == pixels[p + length]) length ++;
+			return length;
+		}
+		
+		/**
+		 * Indexes a position.
+		 * @param p the position, with at least HASH_LENGTH pixels left
+		 */
+		private void insert(int p) {
+			insert(p, hash(p));
+		}
+		
+		/**
+		 * Indexes a position under its hash. Positions are indexed at most once
+		 * and in increasing order, so the hash chains never loop.
+		 * @param p the position
+		 * @param h the hash of the pixels at the position
+		 */
+		private void insert(int p, int h) {
+			if (lazy) previous[p & WINDOW_MASK] = head[h];
+			head[h] = p;
+			indexed = p + 1;
+		}
+		
+		/**
+		 * Hashes the HASH_LENGTH pixels at a position.
+		 * @param p the position, with at least HASH_LENGTH pixels left
+		 * @return the hash, HASH_BITS bits long
+		 */
+		private int hash(int p) {
+			long v = 0;
+			for (int i = HASH_LENGTH - 1; i >= 0; i --) v = v << 8 | (pixels[p + i] & 0xFF);
+			return (int) ((v * 0x9E3779B97F4A7C15L) >>> (64 - HASH_BITS));
+		}
+		
+		/**
+		 * Writes a sequence of literals followed by a match.
+		 * @param literals the index of the first literal
+		 * @param count the number of literals
+		 * @param length the length of the match, 0 for the last literals
+		 * @param distance the distance of the match
+		 */
+		private void writeSequence(int literals, int count, int length, int distance) {
+			int match = length == 0 ? 0 : length - MIN_MATCH;
+			output[out ++] = (byte) (Math.min(count, 15) << 4 | Math.min(match, 15));
+			if (count >= 15) out = writeLength(count - 15);
+			System.arraycopy(pixels, literals, output, out, count);
+			out += count;
+			if (length == 0) return;
+			int code = distance == width ? 0 : distance;
+			output[out ++] = (byte) code;
+			output[out ++] = (byte) (code >>> 8);
+			if (match >= 15) out = writeLength(match - 15);
+		}
+		
+		/**
+		 * Writes the rest of a length in bytes of 255 and a last byte below 255.
+		 * @param rest the rest of the length
+		 * @return the new end of the output
+		 */
+		private int writeLength(int rest) {
+			for (; rest >= 255; rest -= 255) output[out ++] = (byte) 255;
+			output[out ++] = (byte) rest;
+			return out;
+		}
+		
+		/**
+		 * Gets the reusable pixel buffer.
+		 * @param n the minimum length of the buffer
+		 * @return the pixel buffer
+		 */
+		byte[] getPixels(int n) {
+			if (input.length < n) input = new byte[n];
+			return input;
+		}
+		
+		private final int[] head = new int[1 << HASH_BITS];
+		private final int[] previous = new int[WINDOW_MASK + 1];
+		private byte[] input = new byte[0];
+		private byte[] output = new byte[0];
+		private byte[] pixels;
+		private int n;
+		private int width;
+		private boolean lazy;
+		private int out;
+		private int indexed;
+		private int distance;
+	
+	}
+	
+	/*
+	 * Encoder context of each thread
+	 */
+	private final ThreadLocal<Encoder> encoders = ThreadLocal.withInitial(Encoder::new);
+	
+	private final boolean lazy;
+	
+	private static final int LAZY = 0x01;
+	private static final int MIN_MATCH = 4;
+	private static final int HASH_LENGTH = 8;
+	private static final int MAX_DISTANCE = 0xFFFF;
+	private static final int WINDOW_MASK = 0xFFFF;
+	private static final int HASH_BITS = 16;
+	private static final int MAX_CHAIN = 32;
+	private static final int SKIP_SHIFT = 6;
+	private static final int INSERT_STEP = 4;
+	private static final int HEADER_BYTES = 13;
+	private static final String EXTENSION = ".LZ";
+
+}
@@ -0,0 +1,28 @@
+package compression_algorithms;
+
+/**
+ * Row sink collecting the decoded rows into an image matrix.
+ * @author JLepere2
+ * @date 06/01/2018
+ */
+public class MatrixRowSink implements RowSink {
+	
+	public void begin(int width, int height) {
+		image = new int[height][width];
+	}
+	
+	public void writeRow(int y, int[] row) {
+		System.arraycopy(row, 0, image[y], 0, image[y].length);
+	}
+	
+	/**
+	 * Gets the decoded image.
+	 * @return the image, or null if decoding has not begun
+	 */
+	public int[][] getImage() {
+		return image;
+	}
+	
+	private int[][] image;
+
+}
@@ -0,0 +1,39 @@
+package compression_algorithms;
+
+/**
+ * Row source reading from an in memory image matrix.
+ * @author JLepere2
+ * @date 06/01/2018
+ */
+public class MatrixRowSource implements RowSource {
+	
+	/**
+	 * Creates a row source over the image.
+	 * @param image the image to read
+	 */
+	public MatrixRowSource(int[][] image) {
+		this.image = image;
+		this.y = 0;
+	}
+	
+	public int getWidth() {
+		return image.length == 0 ? 0 : image[0].length;
+	}
+	
+	public int getHeight() {
+		return image.length;
+	}
+	
+	public void readRow(int[] row) {
+		System.arraycopy(image[y], 0, row, 0, image[y].length);
+		y ++;
+	}
+	
+	public void reset() {
+		y = 0;
+	}
+	
+	private final int[][] image;
+	private int y;
+
+}
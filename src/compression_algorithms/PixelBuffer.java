@@ -0,0 +1,253 @@
+package compression_algorithms;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Compact 8 bit gray image backed by a flat byte array or an off heap byte
+ * buffer. Row y starts at offset + y * stride, so a buffer can also view a
+ * region of a larger image. One byte per pixel and no row objects make it a
+ * quarter of the size of an int[][] image.
+ * @author JLepere2
+ * @date 06/01/2018
+ */
+public class PixelBuffer {
+
+	/**
+	 * Creates an image on the heap.
+	 * @param width the width of the image
+	 * @param height the height of the image
+	 */
+	public PixelBuffer(int width, int height) {
+		this(new byte[checkedSize(width, height)], null, 0, width, height, width);
+	}
+	
+	/**
+	 * Creates an image in an off heap buffer.
+	 * @param width the width of the image
+	 * @param height the height of the image
+	 * @return the image
+	 */
+	public static PixelBuffer allocateDirect(int width, int height) {
+		return new PixelBuffer(null, ByteBuffer.allocateDirect(checkedSize(width, height)), 0, width, height, width);
+	}
+	
+	/**
+	 * Views an image stored in a byte array.
+	 * @param array the pixels
+	 * @param offset the index of the first pixel
+	 * @param width the width of the image
+	 * @param height the height of the image
+	 * @param stride the distance between the starts of two rows
+	 * @return the image
+	 */
+	public static PixelBuffer wrap(byte[] array, int offset, int width, int height, int stride) {
+		checkBounds(array.length, offset, width, height, stride);
+		return new PixelBuffer(array, null, offset, width, height, stride);
+	}
+	
+	/**
+	 * Views an image stored in a byte buffer, starting at its position. The
+	 * position of the buffer is not changed.
+	 * @param buffer the pixels
+	 * @param width the width of the image
+	 * @param height the height of the image
+	 * @param stride the distance between the starts of two rows
+	 * @return the image
+	 */
+	public static PixelBuffer wrap(ByteBuffer buffer, int width, int height, int stride) {
+		checkBounds(buffer.limit(), buffer.position(), width, height, stride);
+		if (buffer.hasArray() && !buffer.isReadOnly()) {
+			return wrap(buffer.array(), buffer.arrayOffset() + buffer.position(), width, height, stride);
+		}
+		return new PixelBuffer(null, buffer.duplicate(), buffer.position(), width, height, stride);
+	}
+	
+	/**
+	 * Copies an image matrix.
+	 * @param image the gray values, one array per row
+	 * @return the image
+	 */
+	public static PixelBuffer fromMatrix(int[][] image) {
+		PixelBuffer pixels = new PixelBuffer(image.length == 0 ? 0 : image[0].length, image.length);
+		for (int y = 0; y < image.length; y ++) pixels.setRow(y, image[y]);
+		return pixels;
+	}
+	
+	private PixelBuffer(byte[] array, ByteBuffer buffer, int offset, int width, int height, int stride) {
+		this.array = array;
+		this.buffer = buffer;
+		this.offset = offset;
+		this.width = width;
+		this.height = height;
+		this.stride = stride;
+	}
+	
+	/**
+	 * Gets the width of the image.
+	 * @return the number of pixels in each row
+	 */
+	public int getWidth() {
+		return width;
+	}
+	
+	/**
+	 * Gets the height of the image.
+	 * @return the number of rows
+	 */
+	public int getHeight() {
+		return height;
+	}
+	
+	/**
+	 * Gets the distance between the starts of two rows.
+	 * @return the stride in bytes
+	 */
+	public int getStride() {
+		return stride;
+	}
+	
+	/**
+	 * Tells whether the pixels are in a byte array.
+	 * @return true if array() can be used
+	 */
+	public boolean hasArray() {
+		return array != null;
+	}
+	
+	/**
+	 * Gets the byte array holding the pixels.
+	 * @return the array
+	 * @throws UnsupportedOperationException if the pixels are off heap
+	 */
+	public byte[] array() {
+		if (array == null) throw new UnsupportedOperationException("Pixels are not in an array");
+		return array;
+	}
+	
+	/**
+	 * Gets the index of the first pixel in the array or buffer.
+	 * @return the offset
+	 */
+	public int getOffset() {
+		return offset;
+	}
+	
+	/**
+	 * Gets the gray value of a pixel.
+	 * @param x the column
+	 * @param y the row
+	 * @return the gray value, 0 to 255
+	 */
+	public int get(int x, int y) {
+		int i = offset + y * stride + x;
+		return (array != null ? array[i] : buffer.get(i)) & 0xFF;
+	}
+	
+	/**
+	 * Sets the gray value of a pixel.
+	 * @param x the column
+	 * @param y the row
+	 * @param gv the gray value, 0 to 255
+	 */
+	public void set(int x, int y, int gv) {
+		int i = offset + y * stride + x;
+		if (array != null) {
+			array[i] = (byte) gv;
+		} else {
+			buffer.put(i, (byte) gv);
+		}
+	}
+	
+	/**
+	 * Copies a row into an int array.
+	 * @param y the row
+	 * @param row the array to fill, at least getWidth() long
+	 */
+	public void getRow(int y, int[] row) {
+		int start = offset + y * stride;
+		if (array != null) {
+			for (int x = 0; x < width; x ++) row[x] = array[start + x] & 0xFF;
+		} else {
+			for (int x = 0; x < width; x ++) row[x] = buffer.get(start + x) & 0xFF;
+		}
+	}
+	
+	/**
+	 * Copies a row from an int array, keeping the low 8 bits of each value.
+	 * @param y the row
+	 * @param row the gray values, at least getWidth() long
+	 */
+	public void setRow(int y, int[] row) {
+		int start = offset + y * stride;
+		if (array != null) {
+			for (int x = 0; x < width; x ++) array[start + x] = (byte) row[x];
+		} else {
+			for (int x = 0; x < width; x ++) buffer.put(start + x, (byte) row[x]);
+		}
+	}
+	
+	/**
+	 * Copies the image into a byte array, such as the data of a raster.
+	 * @param dest the array to fill
+	 * @param destOffset the index of the first pixel in the array
+	 * @param destStride the distance between the starts of two rows in the array
+	 */
+	public void copyTo(byte[] dest, int destOffset, int destStride) {
+		ByteBuffer source = array == null ? buffer.duplicate() : null;
+		for (int y = 0; y < height; y ++) {
+			int from = offset + y * stride;
+			if (array != null) {
+				System.arraycopy(array, from, dest, destOffset + y * destStride, width);
+			} else {
+				source.position(from);
+				source.get(dest, destOffset + y * destStride, width);
+			}
+		}
+	}
+	
+	/**
+	 * Copies the image into a matrix.
+	 * @return the gray values, one array per row
+	 */
+	public int[][] toMatrix() {
+		int[][] image = new int[height][width];
+		for (int y = 0; y < height; y ++) getRow(y, image[y]);
+		return image;
+	}
+	
+	/**
+	 * Checks the size of a new image.
+	 * @param width the width
+	 * @param height the height
+	 * @return the number of pixels
+	 */
+	private static int checkedSize(int width, int height) {
+		if (width < 0 || height < 0 || (long) width * height > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Invalid image size " + width + "x" + height);
+		}
+		return width * height;
+	}
+	
+	/**
+	 * Checks that an image fits in its storage.
+	 * @param length the size of the storage
+	 * @param offset the index of the first pixel
+	 * @param width the width
+	 * @param height the height
+	 * @param stride the distance between the starts of two rows
+	 */
+	private static void checkBounds(int length, int offset, int width, int height, int stride) {
+		if (width < 0 || height < 0 || stride < width || offset < 0
+				|| (height > 0 && offset + (long) (height - 1) * stride + width > length)) {
+			throw new IllegalArgumentException("Image does not fit in its storage");
+		}
+	}
+	
+	private final byte[] array;
+	private final ByteBuffer buffer;
+	private final int offset;
+	private final int width;
+	private final int height;
+	private final int stride;
+
+}
@@ -0,0 +1,65 @@
+package compression_algorithms;
+
+import java.io.IOException;
+
+/**
+ * Row sink writing the decoded rows into a pixel buffer, either a new one
+ * allocated when decoding begins or an existing one of the right size.
+ * @author JLepere2
+ * @date 06/01/2018
+ */
+public class PixelBufferRowSink implements RowSink {
+
+	/**
+	 * Creates a sink allocating a heap pixel buffer.
+	 */
+	public PixelBufferRowSink() {
+		this(null, false);
+	}
+	
+	/**
+	 * Creates a sink allocating a pixel buffer.
+	 * @param direct true to allocate the pixels off heap
+	 */
+	public PixelBufferRowSink(boolean direct) {
+		this(null, direct);
+	}
+	
+	/**
+	 * Creates a sink writing into an existing pixel buffer.
+	 * @param pixels the image to write, of the size of the decoded image
+	 */
+	public PixelBufferRowSink(PixelBuffer pixels) {
+		this(pixels, false);
+	}
+	
+	private PixelBufferRowSink(PixelBuffer pixels, boolean direct) {
+		this.pixels = pixels;
+		this.direct = direct;
+	}
+	
+	public void begin(int width, int height) throws IOException {
+		if (pixels == null) {
+			pixels = direct ? PixelBuffer.allocateDirect(width, height) : new PixelBuffer(width, height);
+		} else if (pixels.getWidth() != width || pixels.getHeight() != height) {
+			throw new IOException("Image is " + width + "x" + height + ", expected "
+					+ pixels.getWidth() + "x" + pixels.getHeight());
+		}
+	}
+	
+	public void writeRow(int y, int[] row) {
+		pixels.setRow(y, row);
+	}
+	
+	/**
+	 * Gets the decoded image.
+	 * @return the image, or null if decoding has not begun
+	 */
+	public PixelBuffer getPixels() {
+		return pixels;
+	}
+	
+	private PixelBuffer pixels;
+	private final boolean direct;
+
+}
@@ -0,0 +1,38 @@
+package compression_algorithms;
+
+/**
+ * Row source reading from a pixel buffer.
+ * @author JLepere2
+ * @date 06/01/2018
+ */
+public class PixelBufferRowSource implements RowSource {
+
+	/**
+	 * Creates a row source over the image.
+	 * @param pixels the image to read
+	 */
+	public PixelBufferRowSource(PixelBuffer pixels) {
+		this.pixels = pixels;
+		this.y = 0;
+	}
+	
+	public int getWidth() {
+		return pixels.getWidth();
+	}
+	
+	public int getHeight() {
+		return pixels.getHeight();
+	}
+	
+	public void readRow(int[] row) {
+		pixels.getRow(y ++, row);
+	}
+	
+	public void reset() {
+		y = 0;
+	}
+	
+	private final PixelBuffer pixels;
+	private int y;
+
+}
@@ -0,0 +1,316 @@
+package compression_algorithms;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+import io.BitInputStream;
+import io.BitOutputStream;
+
+/**
+ * Predictive pre-transform ahead of another compression algorithm
+ *
+ * Each gray value is replaced by its difference from a prediction made from
+ * the left (a), up (b) and up left (c) neighbours, which leaves a peaked
+ * histogram and long runs of small residuals on natural images. The residual
+ * is taken modulo 256 and zig zag mapped, so small differences of either sign
+ * become small values and the result is a gray value again.
+ *
+ * The predictor with the smallest sum of residuals is chosen for each row in
+ * a first pass over the image. The predictors are stored in a small side
+ * stream ahead of the wrapped payload: the byte length as an int, then one bit
+ * per row, set if the predictor changes and followed by the new predictor in
+ * PREDICTOR_BITS bits. The wrapped algorithm codes the residual image at the
+ * size of the image. Wrapped in a TiledCompression the rows of each tile are
+ * predicted on their own.
+ * @author JLepere2
+ * @date 06/01/2018
+ */
+public class PredictiveCompression implements CompressionAlgorithm {
+
+	/**
+	 * Creates the predictive pre-transform.
+	 * @param algorithm the algorithm compressing the residuals
+	 */
+	public PredictiveCompression(CompressionAlgorithm algorithm) {
+		this.algorithm = algorithm;
+	}
+	
+	public void encode(RowSource source, OutputStream out) throws IOException {
+		
+		// choose the predictor of each row
+		ResidualRowSource residuals = new ResidualRowSource(source);
+		byte[] predictors = residuals.choosePredictors();
+		
+		// write the side stream of the predictors
+		ByteArrayOutputStream side = new ByteArrayOutputStream();
+		BitOutputStream bits = new BitOutputStream(side);
+		int previous = NONE;
+		for (byte predictor : predictors) {
+			if (predictor == previous) {
+				bits.writeBits(0, 1);
+			} else {
+				bits.writeBits(1, 1);
+				bits.writeBits(predictor, PREDICTOR_BITS);
+				previous = predictor;
+			}
+		}
+		bits.flush();
+		DataOutputStream header = new DataOutputStream(out);
+		header.writeInt(side.size());
+		side.writeTo(out);
+		
+		// code the residual image
+		algorithm.encode(residuals, out);
+	}
+	
+	public void decode(InputStream in, RowSink sink) throws IOException {
+		
+		// read the side stream of the predictors
+		DataInputStream header = new DataInputStream(in);
+		int length = header.readInt();
+		if (length < 0) throw new IOException("Invalid predictor stream length");
+		byte[] side = new byte[length];
+		header.readFully(side);
+		
+		algorithm.decode(in, new ReconstructingRowSink(sink, new BitInputStream(ByteBuffer.wrap(side))));
+	}
+	
+	/**
+	 * Decodes straight from the buffer if the wrapped algorithm does.
+	 */
+	public void decode(ByteBuffer data, RowSink sink) throws IOException {
+		
+		// slice the side stream of the predictors
+		if (data.remaining() < 4) throw new EOFException();
+		int length = data.duplicate().order(ByteOrder.BIG_ENDIAN).getInt();
+		if (length < 0 || length > data.remaining() - 4) throw new IOException("Invalid predictor stream length");
+		ByteBuffer side = data.duplicate();
+		side.position(data.position() + 4).limit(data.position() + 4 + length);
+		data.position(data.position() + 4 + length);
+		
+		algorithm.decode(data, new ReconstructingRowSink(sink, new BitInputStream(side.slice())));
+	}
+	
+	/**
+	 * Computes the residuals of a row, zig zag mapped to 0-255.
+	 * @param predictor the predictor
+	 * @param row the gray values of the row
+	 * @param up the gray values of the row above, zeros for the first row
+	 * @param residuals the array receiving the residuals
+	 * @param width the width of the row
+	 * @return the sum of the residuals
+	 */
+	static long residuals(int predictor, int[] row, int[] up, int[] residuals, int width) {
+		long sum = 0;
+		int a = 0, c = 0;    // left and up left neighbours, 0 left of the row
+		for (int x = 0; x < width; x ++) {
+			int b = up[x];
+			int r = zigZag(row[x] - predict(predictor, a, b, c));
+			residuals[x] = r;
+			sum += r;
+			a = row[x];
+			c = b;
+		}
+		return sum;
+	}
+	
+	/**
+	 * Reconstructs the gray values of a row from its residuals.
+	 * @param predictor the predictor
+	 * @param residuals the residuals
+	 * @param up the gray values of the row above, zeros for the first row
+	 * @param row the array receiving the gray values
+	 * @param width the width of the row
+	 */
+	static void reconstruct(int predictor, int[] residuals, int[] up, int[] row, int width) {
+		int a = 0, c = 0;    // left and up left neighbours, 0 left of the row
+		for (int x = 0; x < width; x ++) {
+			int b = up[x];
+			int gv = (predict(predictor, a, b, c) + unZigZag(residuals[x])) & 0xFF;
+			row[x] = gv;
+			a = gv;
+			c = b;
+		}
+	}
+	
+	/**
+	 * Predicts a gray value from its neighbours.
+	 * @param predictor the predictor
+	 * @param a the left neighbour
+	 * @param b the up neighbour
+	 * @param c the up left neighbour
+	 * @return the predicted gray value
+	 */
+	static int predict(int predictor, int a, int b, int c) {
+		switch (predictor) {
+			case LEFT:
+				return a;
+			case UP:
+				return b;
+			case AVERAGE:
+				return (a + b) >>> 1;
+			case PAETH: {
+				// the neighbour closest to the gradient a + b - c
+				int p = a + b - c;
+				int pa = Math.abs(p - a), pb = Math.abs(p - b), pc = Math.abs(p - c);
+				if (pa <= pb && pa <= pc) return a;
+				return pb <= pc ? b : c;
+			}
+			case MED: {
+				// median edge detector of LOCO-I
+				int min = Math.min(a, b), max = Math.max(a, b);
+				if (c >= max) return min;
+				if (c <= min) return max;
+				return a + b - c;
+			}
+			default:
+				return 0;
+		}
+	}
+	
+	/**
+	 * Maps a difference modulo 256 to 0-255, small magnitudes to small values.
+	 * @param d the difference
+	 * @return the zig zag value
+	 */
+	private static int zigZag(int d) {
+		int s = (byte) d;
+		return ((s << 1) ^ (s >> 31)) & 0xFF;
+	}
+	
+	/**
+	 * Inverts zigZag.
+	 * @param z the zig zag value
+	 * @return the difference
+	 */
+	private static int unZigZag(int z) {
+		return (z >>> 1) ^ -(z & 1);
+	}
+	
+	public String getExtension() {
+		return ".P" + algorithm.getExtension().substring(1);
+	}
+	
+	public String getId() {
+		return "Predictive " + algorithm.getId();
+	}
+	
+	public String toString() {
+		return "Predictive " + algorithm;
+	}
+	
+	/*
+	 * Row source of the residuals of the chosen predictor of each row
+	 */
+	static class ResidualRowSource implements RowSource {
+		ResidualRowSource(RowSource source) {
+			this.source = source;
+			this.width = source.getWidth();
+			this.current = new int[width];
+			this.up = new int[width];
+		}
+		byte[] choosePredictors() throws IOException {
+			predictors = new byte[source.getHeight()];
+			int[] trial = new int[width];
+			for (int y = 0; y < predictors.length; y ++) {
+				source.readRow(current);
+				
+				// keep the predictor with the smallest sum of residuals
+				long bestSum = residuals(NONE, current, up, trial, width);
+				int bestPredictor = NONE;
+				for (int predictor = NONE + 1; predictor < NUM_PREDICTORS; predictor ++) {
+					long sum = residuals(predictor, current, up, trial, width);
+					if (sum < bestSum) {
+						bestSum = sum;
+						bestPredictor = predictor;
+					}
+				}
+				predictors[y] = (byte) bestPredictor;
+				swapRows();
+			}
+			reset();
+			return predictors;
+		}
+		public int getWidth() { return width; }
+		public int getHeight() { return source.getHeight(); }
+		public void readRow(int[] row) throws IOException {
+			source.readRow(current);
+			residuals(predictors[y ++], current, up, row, width);
+			swapRows();
+		}
+		public void reset() throws IOException {
+			source.reset();
+			Arrays.fill(up, 0);
+			y = 0;
+		}
+		void swapRows() {
+			// the row is the up neighbour of the next one
+			int[] swap = up;
+			up = current;
+			current = swap;
+		}
+		final RowSource source;
+		final int width;
+		int[] current, up;
+		byte[] predictors;
+		int y;
+	}
+	
+	/*
+	 * Row sink reconstructing the gray values from the residual rows and the
+	 * side stream of the predictors
+	 */
+	static class ReconstructingRowSink implements RowSink {
+		ReconstructingRowSink(RowSink sink, BitInputStream predictors) {
+			this.sink = sink;
+			this.predictors = predictors;
+		}
+		public void begin(int width, int height) throws IOException {
+			this.width = width;
+			sink.begin(width, height);
+			this.row = new int[width];
+			this.up = new int[width];
+		}
+		public void writeRow(int y, int[] residuals) throws IOException {
+			if (y != next ++) throw new IOException("Predictive rows must be decoded in order");
+			if (predictors.readBits(1) == 1) {
+				predictor = predictors.readBits(PREDICTOR_BITS);
+				if (predictor >= NUM_PREDICTORS) throw new IOException("Invalid predictor: " + predictor);
+			}
+			reconstruct(predictor, residuals, up, row, width);
+			sink.writeRow(y, row);
+			
+			// the row is the up neighbour of the next one
+			int[] swap = up;
+			up = row;
+			row = swap;
+		}
+		final RowSink sink;
+		final BitInputStream predictors;
+		int width, next, predictor = NONE;
+		int[] row, up;
+	}
+	
+	private final CompressionAlgorithm algorithm;
+	
+	/*
+	 * Predictors, stored in PREDICTOR_BITS bits in the side stream
+	 */
+	static final int NONE = 0;
+	static final int LEFT = 1;
+	static final int UP = 2;
+	static final int AVERAGE = 3;
+	static final int PAETH = 4;
+	static final int MED = 5;
+	static final int NUM_PREDICTORS = 6;
+	static final int PREDICTOR_BITS = 3;
+
+}
@@ -0,0 +1,447 @@
+package compression_algorithms;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Range Asymmetric Numeral System (rANS) Coding.
+ *
+ * The gray value histogram is scaled to frequencies summing to 2^PROB_BITS,
+ * so a symbol costs close to its information content instead of at least one
+ * bit as with Huffman Coding. The image is coded in chunks of whole rows of
+ * about CHUNK_SYMBOLS symbols, each with NUM_STATES states taking the symbols
+ * in turn, so the decoder works on independent states at once. A table indexed
+ * by the low bits of a state gives the symbol, its frequency and cumulative
+ * frequency in one lookup.
+ *
+ * The format is the image dimensions, a 256 bit map of the used symbols and the
+ * frequency minus one of each in 2 bytes, then each chunk as its length in bytes,
+ * the initial states and the renormalization bytes.
+ * @author JLepere2
+ * @date 06/01/2018
+ */
+public class RansCoding implements CompressionAlgorithm {
+
+	public void encode(RowSource source, OutputStream out) throws IOException {
+		
+		// reusable encoder context of this thread
+		Context context = contexts.get();
+		HuffmanEncoder histogram = context.histogram;
+		
+		// image dimensions
+		int width = source.getWidth();
+		int height = source.getHeight();
+		int chunkRows = getChunkRows(width, height);
+		int[] row = histogram.getRowBuffer(width);
+		int[] symbols = context.getSymbols(chunkRows * width);
+		
+		// calculate frequencies in a first pass over the rows
+		histogram.clear();
+		for (int y = 0; y < height; y ++) {
+			source.readRow(row);
+			histogram.count(row, 0, width);
+		}
+		context.normalize((long) width * height);
+		
+		// write the image dimensions and the frequencies
+		DataOutputStream data = new DataOutputStream(out);
+		data.writeInt(width);
+		data.writeInt(height);
+		context.writeFrequencies(data);
+		
+		// write the chunks in a second pass over the rows
+		source.reset();
+		byte[] buffer = context.getBuffer(2 * chunkRows * width + 4 * NUM_STATES);
+		for (int y = 0; y < height; y += chunkRows) {
+			int rows = Math.min(chunkRows, height - y);
+			for (int r = 0; r < rows; r ++) {
+				source.readRow(row);
+				System.arraycopy(row, 0, symbols, r * width, width);
+			}
+			int start = context.encode(symbols, rows * width, buffer);
+			data.writeInt(buffer.length - start);
+			data.write(buffer, start, buffer.length - start);
+		}
+		
+		data.flush();
+	
+	}
+	
+	public void decode(InputStream in, RowSink sink) throws IOException {
+		DataInputStream data = new DataInputStream(in);
+		
+		// read the image dimensions and the frequencies
+		int width = data.readInt();
+		int height = data.readInt();
+		if (width < 0 || height < 0) throw new IOException("Invalid image dimensions");
+		byte[] table = new byte[TABLE_BYTES];
+		data.readFully(table, 0, BITMAP_BYTES);
+		int used = 0;
+		for (int i = 0; i < BITMAP_BYTES; i ++) used += Integer.bitCount(table[i] & 0xFF);
+		data.readFully(table, BITMAP_BYTES, 2 * used);
+		Decoder decoder = new Decoder(ByteBuffer.wrap(table));
+		
+		// read each chunk into a buffer and decode it
+		sink.begin(width, height);
+		int chunkRows = getChunkRows(width, height);
+		int[] symbols = new int[chunkRows * width];
+		byte[] chunk = new byte[0];
+		for (int y = 0; y < height; y += chunkRows) {
+			int rows = Math.min(chunkRows, height - y);
+			int length = data.readInt();
+			if (length < 4 * NUM_STATES || length > 2 * rows * width + 4 * NUM_STATES) throw new IOException("Invalid chunk length");
+			if (chunk.length < length) chunk = new byte[length];
+			data.readFully(chunk, 0, length);
+			decoder.decode(chunk, 0, length, symbols, rows * width);
+			writeRows(sink, y, rows, width, symbols);
+		}
+	}
+	
+	/**
+	 * Decodes straight from the buffer, copying only the chunks of buffers without an array.
+	 */
+	public void decode(ByteBuffer data, RowSink sink) throws IOException {
+		ByteBuffer buffer = data.duplicate().order(ByteOrder.BIG_ENDIAN);
+		decodeBuffer(buffer, sink);
+		data.position(buffer.position());
+	}
+	
+	/**
+	 * Decodes the image, advancing the buffer past it.
+	 * @param data the compressed bytes in big endian order
+	 * @param sink the sink receiving the decoded rows
+	 * @throws IOException if the data is invalid or writing the sink fails
+	 */
+	private void decodeBuffer(ByteBuffer data, RowSink sink) throws IOException {
+		
+		// read the image dimensions and the frequencies
+		if (data.remaining() < 8 + BITMAP_BYTES) throw new EOFException();
+		int width = data.getInt();
+		int height = data.getInt();
+		if (width < 0 || height < 0) throw new IOException("Invalid image dimensions");
+		Decoder decoder = new Decoder(data);
+		
+		// decode each chunk in place
+		sink.begin(width, height);
+		int chunkRows = getChunkRows(width, height);
+		int[] symbols = new int[chunkRows * width];
+		byte[] chunk = new byte[0];
+		for (int y = 0; y < height; y += chunkRows) {
+			int rows = Math.min(chunkRows, height - y);
+			if (data.remaining() < 4) throw new EOFException();
+			int length = data.getInt();
+			if (length < 4 * NUM_STATES || length > 2 * rows * width + 4 * NUM_STATES) throw new IOException("Invalid chunk length");
+			if (data.remaining() < length) throw new EOFException();
+			if (data.hasArray()) {
+				decoder.decode(data.array(), data.arrayOffset() + data.position(), length, symbols, rows * width);
+				data.position(data.position() + length);
+			} else {
+				if (chunk.length < length) chunk = new byte[length];
+				data.get(chunk, 0, length);
+				decoder.decode(chunk, 0, length, symbols, rows * width);
+			}
+			writeRows(sink, y, rows, width, symbols);
+		}
+	}
+	
+	/**
+	 * Writes the decoded rows of a chunk to the sink.
+	 * @param sink the sink
+	 * @param y the first row of the chunk
+	 * @param rows the number of rows in the chunk
+	 * @param width the image width
+	 * @param symbols the decoded symbols of the chunk
+	 * @throws IOException if writing the sink fails
+	 */
+	private static void writeRows(RowSink sink, int y, int rows, int width, int[] symbols) throws IOException {
+		int[] row = new int[width];
+		for (int r = 0; r < rows; r ++) {
+			System.arraycopy(symbols, r * width, row, 0, width);
+			sink.writeRow(y + r, row);
+		}
+	}
+	
+	/**
+	 * Gets the number of rows coded together.
+	 * @param width the image width
+	 * @param height the image height
+	 * @return the number of rows in a chunk, at least 1
+	 */
+	private static int getChunkRows(int width, int height) {
+		if (width == 0) return Math.max(1, height);
+		return Math.max(1, Math.min(height, CHUNK_SYMBOLS / width));
+	}
+	
+	public String getExtension() {
+		return EXTENSION;
+	}
+	
+	public String toString() {
+		return "rANS Coding";
+	}
+	
+	/**
+	 * Reusable encoder context, holding the histogram, the scaled frequencies
+	 * and the chunk buffers. Not thread safe, use one context per thread.
+	 */
+	private static class Context {
+		
+		/**
+		 * Scales the histogram to frequencies summing to PROB_SCALE, keeping
+		 * every counted symbol at least 1.
+		 * @param total the number of counted symbols
+		 */
+		void normalize(long total) {
+			int sum = 0;
+			int largest = 0;
+			for (int s = 0; s < NUM_SYMBOLS; s ++) {
+				long count = histogram.getFrequency(s);
+				frequency[s] = count == 0 ? 0 : (int) Math.max(1, count * PROB_SCALE / total);
+				sum += frequency[s];
+				if (count > histogram.getFrequency(largest)) largest = s;
+			}
+			if (sum == 0) return;
+			
+			// hand the rounding error to the largest frequencies
+			frequency[largest] += PROB_SCALE - sum;
+			while (frequency[largest] < 1) {
+				int next = largest == 0 ? 1 : 0;
+				for (int s = 0; s < NUM_SYMBOLS; s ++) {
+					if (s != largest && frequency[s] > frequency[next]) next = s;
+				}
+				frequency[next] += frequency[largest] - 1;
+				frequency[largest] = 1;
+				largest = next;
+			}
+			
+			// cumulative frequencies and renormalization bounds
+			int c = 0;
+			for (int s = 0; s < NUM_SYMBOLS; s ++) {
+				cumulative[s] = c;
+				c += frequency[s];
+				bound[s] = (long) ((RANS_L >>> PROB_BITS) << 8) * frequency[s];
+			}
+		}
+		
+		/**
+		 * Writes the bit map of the used symbols and their frequencies.
+		 * @param out the stream
+		 * @throws IOException if writing the stream fails
+		 */
+		void writeFrequencies(DataOutputStream out) throws IOException {
+			for (int i = 0; i < BITMAP_BYTES; i ++) {
+				int bits = 0;
+				for (int b = 0; b < 8; b ++) {
+					if (frequency[8 * i + b] != 0) bits |= 1 << b;
+				}
+				out.writeByte(bits);
+			}
+			for (int s = 0; s < NUM_SYMBOLS; s ++) {
+				if (frequency[s] != 0) out.writeShort(frequency[s] - 1);
+			}
+		}
+		
+		/**
+		 * Encodes the symbols of a chunk backwards into the end of the buffer.
+		 * @param symbols the symbols
+		 * @param count the number of symbols
+		 * @param buffer the buffer, large enough for the coded chunk
+		 * @return the index of the first byte of the coded chunk in the buffer
+		 */
+		int encode(int[] symbols, int count, byte[] buffer) {
+			int[] states = this.states;
+			for (int j = 0; j < NUM_STATES; j ++) states[j] = RANS_L;
+			int p = buffer.length;
+			
+			// the decoder reads forwards, so code the last symbol first
+			for (int i = count - 1; i >= 0; i --) {
+				int s = symbols[i];
+				int f = frequency[s];
+				int x = states[i & (NUM_STATES - 1)];
+				
+				// renormalize so the coded state stays below RANS_L << 8
+				long max = bound[s];
+				while (x >= max) {
+					buffer[-- p] = (byte) x;
+					x >>>= 8;
+				}
+				states[i & (NUM_STATES - 1)] = ((x / f) << PROB_BITS) + (x % f) + cumulative[s];
+			}
+			
+			// the final states, the first state first
+			for (int j = NUM_STATES - 1; j >= 0; j --) {
+				int x = states[j];
+				buffer[-- p] = (byte) (x >>> 24);
+				buffer[-- p] = (byte) (x >>> 16);
+				buffer[-- p] = (byte) (x >>> 8);
+				buffer[-- p] = (byte) x;
+			}
+			return p;
+		}
+		
+		/**
+		 * Gets the reusable symbol buffer.
+		 * @param length the minimum length of the buffer
+		 * @return the symbol buffer
+		 */
+		int[] getSymbols(int length) {
+			if (symbols.length < length) symbols = new int[length];
+			return symbols;
+		}
+		
+		/**
+		 * Gets the reusable output buffer of exactly the given length, so the
+		 * chunks end at the end of the buffer.
+		 * @param length the length of the buffer
+		 * @return the output buffer
+		 */
+		byte[] getBuffer(int length) {
+			if (buffer.length != length) buffer = new byte[length];
+			return buffer;
+		}
+		
+		private final HuffmanEncoder histogram = new HuffmanEncoder();
+		private final int[] frequency = new int[NUM_SYMBOLS];
+		private final int[] cumulative = new int[NUM_SYMBOLS];
+		private final long[] bound = new long[NUM_SYMBOLS];
+		private final int[] states = new int[NUM_STATES];
+		private int[] symbols = new int[0];
+		private byte[] buffer = new byte[0];
+	
+	}
+	
+	/**
+	 * Table driven rANS decoder. Each of the PROB_SCALE slots packs the symbol in
+	 * the low 8 bits, its frequency minus one in the next 12 and its cumulative
+	 * frequency in the top 12.
+	 */
+	private static class Decoder {
+		
+		/**
+		 * Reads the frequencies and builds the slot table.
+		 * @param data the buffer at the bit map of the used symbols, advanced past the frequencies
+		 * @throws IOException if the frequencies are truncated or do not sum to PROB_SCALE
+		 */
+		Decoder(ByteBuffer data) throws IOException {
+			if (data.remaining() < BITMAP_BYTES) throw new EOFException();
+			byte[] bitmap = new byte[BITMAP_BYTES];
+			data.get(bitmap);
+			int c = 0;
+			for (int s = 0; s < NUM_SYMBOLS; s ++) {
+				if ((bitmap[s >>> 3] & 1 << (s & 7)) == 0) continue;
+				if (data.remaining() < 2) throw new EOFException();
+				int f = (data.getShort() & 0xFFFF) + 1;
+				if (c + f > PROB_SCALE) throw new IOException("Invalid rANS frequencies");
+				int entry = c << 20 | (f - 1) << 8 | s;
+				for (int i = c; i < c + f; i ++) slots[i] = entry;
+				c += f;
+			}
+			if (c != PROB_SCALE && c != 0) throw new IOException("Invalid rANS frequencies");
+		}
+		
+		/**
+		 * Decodes a chunk, keeping the states in locals so the steps of the
+		 * different states overlap.
+		 * @param data the buffer holding the chunk
+		 * @param offset the index of the chunk in the buffer
+		 * @param length the length of the chunk
+		 * @param symbols the array receiving the symbols
+		 * @param count the number of symbols
+		 * @throws IOException if the chunk is invalid
+		 */
+		void decode(byte[] data, int offset, int length, int[] symbols, int count) throws IOException {
+			int[] slots = this.slots;
+			int p = offset;
+			int end = offset + length;
+			int x0 = readState(data, p);
+			int x1 = readState(data, p + 4);
+			int x2 = readState(data, p + 8);
+			int x3 = readState(data, p + 12);
+			p += 16;
+			int i = 0;
+			for (; i + NUM_STATES <= count; i += NUM_STATES) {
+				
+				// one step of each state
+				int e0 = slots[x0 & PROB_MASK];
+				int e1 = slots[x1 & PROB_MASK];
+				int e2 = slots[x2 & PROB_MASK];
+				int e3 = slots[x3 & PROB_MASK];
+				symbols[i] = e0 & 0xFF;
+				symbols[i + 1] = e1 & 0xFF;
+				symbols[i + 2] = e2 & 0xFF;
+				symbols[i + 3] = e3 & 0xFF;
+				x0 = ((e0 >>> 8 & 0xFFF) + 1) * (x0 >>> PROB_BITS) + (x0 & PROB_MASK) - (e0 >>> 20);
+				x1 = ((e1 >>> 8 & 0xFFF) + 1) * (x1 >>> PROB_BITS) + (x1 & PROB_MASK) - (e1 >>> 20);
+				x2 = ((e2 >>> 8 & 0xFFF) + 1) * (x2 >>> PROB_BITS) + (x2 & PROB_MASK) - (e2 >>> 20);
+				x3 = ((e3 >>> 8 & 0xFFF) + 1) * (x3 >>> PROB_BITS) + (x3 & PROB_MASK) - (e3 >>> 20);
+				
+				// renormalize in the order the encoder wrote the bytes
+				while (x0 < RANS_L) {
+					if (p == end) throw new IOException("Invalid rANS data");
+					x0 = x0 << 8 | (data[p ++] & 0xFF);
+				}
+				while (x1 < RANS_L) {
+					if (p == end) throw new IOException("Invalid rANS data");
+					x1 = x1 << 8 | (data[p ++] & 0xFF);
+				}
+				while (x2 < RANS_L) {
+					if (p == end) throw new IOException("Invalid rANS data");
+					x2 = x2 << 8 | (data[p ++] & 0xFF);
+				}
+				while (x3 < RANS_L) {
+					if (p == end) throw new IOException("Invalid rANS data");
+					x3 = x3 << 8 | (data[p ++] & 0xFF);
+				}
+			}
+			
+			// the last symbols take the first states
+			int[] states = {x0, x1, x2, x3};
+			for (int j = 0; i < count; i ++, j ++) {
+				int x = states[j];
+				int e = slots[x & PROB_MASK];
+				symbols[i] = e & 0xFF;
+				x = ((e >>> 8 & 0xFFF) + 1) * (x >>> PROB_BITS) + (x & PROB_MASK) - (e >>> 20);
+				while (x < RANS_L) {
+					if (p == end) throw new IOException("Invalid rANS data");
+					x = x << 8 | (data[p ++] & 0xFF);
+				}
+			}
+		}
+		
+		/**
+		 * Reads a little endian state.
+		 * @param data the buffer
+		 * @param p the index of the state
+		 * @return the state
+		 */
+		private static int readState(byte[] data, int p) {
+			return (data[p] & 0xFF) | (data[p + 1] & 0xFF) << 8 | (data[p + 2] & 0xFF) << 16 | (data[p + 3] & 0xFF) << 24;
+		}
+		
+		private final int[] slots = new int[PROB_SCALE];
+	
+	}
+	
+	/*
+	 * Encoder context of each thread
+	 */
+	private final ThreadLocal<Context> contexts = ThreadLocal.withInitial(Context::new);
+	
+	private static final int NUM_SYMBOLS = CanonicalHuffman.NUM_SYMBOLS;
+	private static final int NUM_STATES = 4;
+	private static final int PROB_BITS = 12;
+	private static final int PROB_SCALE = 1 << PROB_BITS;
+	private static final int PROB_MASK = PROB_SCALE - 1;
+	private static final int RANS_L = 1 << 23;
+	private static final int CHUNK_SYMBOLS = 1 << 16;
+	private static final int BITMAP_BYTES = NUM_SYMBOLS / 8;
+	private static final int TABLE_BYTES = BITMAP_BYTES + 2 * NUM_SYMBOLS;
+	private static final String EXTENSION = ".RANS";
+
+}
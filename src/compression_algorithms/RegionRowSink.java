@@ -0,0 +1,62 @@
+package compression_algorithms;
+
+import java.io.IOException;
+
+/**
+ * Row sink passing on only a rectangular region of the decoded rows.
+ * @author JLepere2
+ * @date 06/01/2018
+ */
+public class RegionRowSink implements RowSink {
+
+	/**
+	 * Creates a region sink.
+	 * @param x the left of the region
+	 * @param y the top of the region
+	 * @param width the width of the region
+	 * @param height the height of the region
+	 * @param sink the sink receiving the rows of the region
+	 */
+	public RegionRowSink(int x, int y, int width, int height, RowSink sink) {
+		this.x = x;
+		this.y = y;
+		this.width = width;
+		this.height = height;
+		this.sink = sink;
+	}
+	
+	public void begin(int imageWidth, int imageHeight) throws IOException {
+		checkRegion(x, y, width, height, imageWidth, imageHeight);
+		row = new int[width];
+		sink.begin(width, height);
+	}
+	
+	public void writeRow(int y, int[] row) throws IOException {
+		if (y < this.y || y >= this.y + height) return;
+		System.arraycopy(row, x, this.row, 0, width);
+		sink.writeRow(y - this.y, this.row);
+	}
+	
+	/**
+	 * Checks a region lies inside an image.
+	 * @param x the left of the region
+	 * @param y the top of the region
+	 * @param width the width of the region
+	 * @param height the height of the region
+	 * @param imageWidth the width of the image
+	 * @param imageHeight the height of the image
+	 * @throws IllegalArgumentException if the region is not inside the image
+	 */
+	static void checkRegion(int x, int y, int width, int height, int imageWidth, int imageHeight) {
+		if (x < 0 || y < 0 || width < 0 || height < 0
+				|| x > imageWidth - width || y > imageHeight - height) {
+			throw new IllegalArgumentException("Region " + width + "x" + height + " at (" + x + ", " + y
+					+ ") is not inside the " + imageWidth + "x" + imageHeight + " image");
+		}
+	}
+	
+	private final int x, y, width, height;
+	private final RowSink sink;
+	private int[] row;
+
+}
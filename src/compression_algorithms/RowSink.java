@@ -0,0 +1,29 @@
+package compression_algorithms;
+
+import java.io.IOException;
+
+/**
+ * A destination for decoded image rows, written from top to bottom one row at a time.
+ * @author JLepere2
+ * @date 06/01/2018
+ */
+public interface RowSink {
+	
+	/**
+	 * Called once before the first row with the dimensions stored in the stream.
+	 * @param width the number of pixels in each row
+	 * @param height the number of rows
+	 * @throws IOException if the sink cannot accept the image
+	 */
+	public void begin(int width, int height) throws IOException;
+	
+	/**
+	 * Writes the next decoded row. The array is reused by the decoder, so
+	 * the sink must copy any values it keeps.
+	 * @param y the index of the row
+	 * @param row the gray values of the row
+	 * @throws IOException if the row cannot be written
+	 */
+	public void writeRow(int y, int[] row) throws IOException;
+
+}
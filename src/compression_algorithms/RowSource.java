@@ -0,0 +1,38 @@
+package compression_algorithms;
+
+import java.io.IOException;
+
+/**
+ * A source of image rows, read from top to bottom one row at a time.
+ * @author JLepere2
+ * @date 06/01/2018
+ */
+public interface RowSource {
+	
+	/**
+	 * Gets the width of the image.
+	 * @return the number of pixels in each row
+	 */
+	public int getWidth();
+	
+	/**
+	 * Gets the height of the image.
+	 * @return the number of rows
+	 */
+	public int getHeight();
+	
+	/**
+	 * Reads the next row of gray values.
+	 * @param row the array to fill, at least getWidth() long
+	 * @throws IOException if the row cannot be read
+	 */
+	public void readRow(int[] row) throws IOException;
+	
+	/**
+	 * Rewinds the source to the first row. Algorithms that need more than one
+	 * pass over the image call this between passes.
+	 * @throws IOException if the source cannot be rewound
+	 */
+	public void reset() throws IOException;
+
+}
@@ -1,8 +1,13 @@
 package compression_algorithms;
 
-import java.util.LinkedList;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 
-import io.Utilities;
+import io.ByteBufferInput;
+import io.ByteBufferOutput;
 
 /**
  * Run Length Coding compression algorithm
@@ -11,115 +16,120 @@ import io.Utilities;
  */
 public class RunLengthCoding implements CompressionAlgorithm {
 
-	public void compress(int[][] image) {
-		
-		// timer
-		long startTime = System.currentTimeMillis();
-				
-		// Linked List for run length encoding where
-		LinkedList<Node> runLength = new LinkedList<>();
-		
-		// calculate run length coding
-		Node currentNode = null;
-		for (int y = 0; y < image.length; y ++) {
-			for (int x = 0; x < image[0].length; x ++) {
-				// get the gray value
-				int gv = image[y][x];
-				
-				if (currentNode == null || gv != currentNode.gv) {
-					// new gv
-					Node newNode = new Node(gv);   // create new node
-					runLength.add(newNode);        // add to list
-					currentNode = newNode;         // set new current node
-				} else {
-					// same gv
-					currentNode.increment();
+	public void encode(RowSource source, OutputStream out) throws IOException {
+		
+		// reusable buffer of this thread
+		ByteBufferOutput data = outputs.get().reset(out);
+		
+		// write the image dimensions
+		int width = source.getWidth();
+		int height = source.getHeight();
+		data.writeInt(width);
+		data.writeInt(height);
+		
+		// calculate run length coding where each run is a gv byte followed by a varint count
+		int[] row = new int[width];
+		int gv = -1;       // gray value of the current run
+		long count = 0;    // length of the current run, which may span rows
+		for (int y = 0; y < height; y ++) {
+			source.readRow(row);
+			int x = 0;
+			while (x < width) {
+				if (row[x] != gv) {
+					// new gv, write the previous run
+					writeRun(data, gv, count);
+					gv = row[x];
+					count = 0;
 				}
+				
+				// scan to the end of the run within the row
+				int start = x;
+				x ++;
+				while (x < width && row[x] == gv) x ++;
+				count += x - start;
 			}
 		}
 		
-		// byte array for saving where first is gv, second is count
-		byte[] byteArray = new byte[runLength.size()*2];
+		// write the last run
+		writeRun(data, gv, count);
 		
-		// set byte array
-		int i = 0;
-		for (Node n : runLength) {
-			// get gv and count
-			byte gv = (byte) n.gv;
-			byte count = (byte) n.count;
-			
-			// set byte array
-			byteArray[i] = gv;
-			byteArray[i+1] = count;
-			
-			// increment counter
-			i += 2;
+		data.flush();
+	}
+	
+	/**
+	 * Writes a run, split into several runs if it is longer than MAX_RUN.
+	 * @param data the output
+	 * @param gv the gray value of the run
+	 * @param count the length of the run
+	 * @throws IOException
+	 */
+	private void writeRun(ByteBufferOutput data, int gv, long count) throws IOException {
+		while (count > 0) {
+			int n = (int) Math.min(count, MAX_RUN);
+			data.writeByte(gv);
+			data.writeVarInt(n);
+			count -= n;
 		}
-		
-		// compression duration
-		long endTime = System.currentTimeMillis();
-		
-		// show compression statistics
-		Utilities.showStatistics("COMPRESSION", endTime - startTime, byteArray.length);
-		
-		// save byte array
-		Utilities.saveByteArray(byteArray, EXTENSION);
-		
 	}
-
-	public int[][] decompress() {
-		
-		// load the byte array file
-		byte[] data = Utilities.loadByteArray(EXTENSION);
-		
-		// timer
-		long startTime = System.currentTimeMillis();
+	
+	public void decode(InputStream in, RowSink sink) throws IOException {
+		// reusable buffer of this thread
+		decode(inputs.get().reset(in), sink);
+	}
+	
+	/**
+	 * Decodes straight from the buffer without copying it.
+	 */
+	public void decode(ByteBuffer data, RowSink sink) throws IOException {
+		ByteBufferInput input = new ByteBufferInput(data);
+		decode(input, sink);
+		data.position(data.position() + input.getBytesRead());
+	}
+	
+	/**
+	 * Decodes the image.
+	 * @param data the compressed bytes
+	 * @param sink the sink receiving the decoded rows
+	 * @throws IOException if the data is invalid or writing the sink fails
+	 */
+	private void decode(ByteBufferInput data, RowSink sink) throws IOException {
 		
-		// check if null
-		if (data == null) { return null; }
+		// read the image dimensions
+		int width = data.readInt();
+		int height = data.readInt();
+		if (width < 0 || height < 0) throw new IOException("Invalid image dimensions");
+		sink.begin(width, height);
 		
-		// decompressed image
-		int[][] image = new int[IMAGE_SIZE][IMAGE_SIZE];
+		// current decoded row
+		int[] row = new int[width];
 		
 		// variables
-		int y = 0;     // current image y
-		int x = 0;     // current image x
-		int b = 0;     // current byte
+		int gv = 0;        // gray value of the current run
+		int count = 0;     // remaining pixels in the current run
 		
 		// set image
-		while (b < data.length) {
-			
-			// get gv and count
-			int gv = data[b];
-			int count = data[b+1] & 0xFF;
-			
-			// set image
-			while (count > 0) {
-				// set pixel
-				image[y][x] = gv;
-				
-				// increment image x and y
-				x += 1;
-				if (x == IMAGE_SIZE) {
-					x = 0;
-					y += 1;
+		for (int y = 0; y < height; y ++) {
+			int x = 0;
+			while (x < width) {
+				// read the next run
+				if (count == 0) {
+					gv = data.readUnsignedByte();
+					count = data.readVarInt();
+					if (count <= 0) throw new IOException("Invalid run length");
 				}
 				
-				// decrement count
-				count --;
+				// fill as much of the row as the run covers
+				int n = Math.min(count, width - x);
+				Arrays.fill(row, x, x + n, gv);
+				x += n;
+				count -= n;
 			}
-			
-			// increment b
-			b += 2;
+			sink.writeRow(y, row);
 		}
-		
-		// decompression duration
-		long endTime = System.currentTimeMillis();
-		
-		// show decompression statistics
-		Utilities.showStatistics("DECOMPRESSION", endTime - startTime, 0);
-		
-		return image;
+	}
+	
+	public String getExtension() {
+		return EXTENSION;
 	}
 	
 	public String toString() {
@@ -127,19 +137,13 @@ public class RunLengthCoding implements CompressionAlgorithm {
 	}
 	
 	/*
-	 * Node for Linked List
+	 * Reusable buffers of each thread
 	 */
-	class Node {
-		public Node(int gv) {
-			this.gv = gv;
-			this.count = 1;
-		}
-		public void increment() { count ++; }
-		int gv;
-		int count;
-	}
+	private final ThreadLocal<ByteBufferOutput> outputs = ThreadLocal.withInitial(() -> new ByteBufferOutput(BUFFER_SIZE));
+	private final ThreadLocal<ByteBufferInput> inputs = ThreadLocal.withInitial(() -> new ByteBufferInput(BUFFER_SIZE));
 	
 	private static final String EXTENSION = ".RLC";
-	private static final int IMAGE_SIZE = 512;
+	private static final int MAX_RUN = Integer.MAX_VALUE;
+	private static final int BUFFER_SIZE = 1 << 16;
 
 }
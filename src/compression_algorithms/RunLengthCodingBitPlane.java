@@ -1,150 +1,192 @@
 package compression_algorithms;
 
-import java.util.LinkedList;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 
-import io.Utilities;
+import io.ByteBufferInput;
+import io.ByteBufferOutput;
 
 /**
  * Run Length Coding on Bit Planes
+ *
+ * Each row is split into 8 bit planes packed 64 pixels to a long. The run
+ * boundaries of a plane are the set bits of the word XORed with itself shifted
+ * by one pixel, found with Long.numberOfTrailingZeros. Runs alternate between
+ * 0 and 1 starting with 0, so only the varint lengths are stored. With the
+ * Gray code option the planes of (gv ^ gv >>> 1) are coded instead, which turns
+ * the many bit flips of neighbouring gray values into longer runs.
  * @author JLepere2
  * @date 06/01/2018
  */
 public class RunLengthCodingBitPlane implements CompressionAlgorithm {
 
-	public void compress(int[][] image) {
+	/**
+	 * Creates the bit plane coder on the binary planes.
+	 */
+	public RunLengthCodingBitPlane() {
+		this(false);
+	}
+	
+	/**
+	 * Creates the bit plane coder.
+	 * @param grayCode true to code the planes of the Gray code of each gray value
+	 */
+	public RunLengthCodingBitPlane(boolean grayCode) {
+		this.grayCode = grayCode;
+	}
+	
+	public void encode(RowSource source, OutputStream out) throws IOException {
 		
-		// timer
-		long startTime = System.currentTimeMillis();
+		// reusable buffer of this thread
+		ByteBufferOutput data = outputs.get().reset(out);
 		
-		// Linked List for run length encoding where
-		LinkedList<Node> runLength = new LinkedList<>();
+		// write the image dimensions and options
+		int width = source.getWidth();
+		int height = source.getHeight();
+		data.writeInt(width);
+		data.writeInt(height);
+		data.writeByte(grayCode ? GRAY_CODE : 0);
 		
-		// calculate run length coding
-		Node currentNode = null;
-		for (int p = 0; p < 8; p ++) {                            // bit plane
-			for (int y = 0; y < image.length; y ++) {             // image y
-				for (int x = 0; x < image[0].length; x ++) {      // image x
-					// get the gray value
-					int gv = image[y][x] & (0x01 << p);
-					
-					if (currentNode == null || gv != currentNode.gv || currentNode.count == 255) {
-						// new gv
-						Node newNode = new Node(gv);   // create new node
-						runLength.add(newNode);        // add to list
-						currentNode = newNode;         // set new current node
-					} else {
-						// same gv
-						currentNode.increment();
-					}
-				}
-			}
-		}
+		// bit planes of the current row, 64 pixels per word
+		int words = (width + 63) >>> 6;
+		long[][] planes = new long[8][words];
 		
-		// byte array for saving where first is gv, second and third is count
-		byte[] byteArray = new byte[runLength.size()*2];
+		// mask of the valid pixels in the last word
+		long lastMask = (width & 63) == 0 ? -1L : (1L << (width & 63)) - 1;
 		
-		// set byte array
-		int i = 0;
-		for (Node n : runLength) {
-			// get gv and count
-			byte gv = (byte) n.gv;
-			int count = n.count;
+		int[] row = new int[width];
+		for (int y = 0; y < height; y ++) {
+			source.readRow(row);
 			
-			// set byte array
-			byteArray[i] = gv;
-			byteArray[i+1] = (byte)  (count & 0x000000FF);
+			// pack the bit planes
+			for (int w = 0; w < words; w ++) {
+				int base = w << 6;
+				int end = Math.min(64, width - base);
+				for (int p = 0; p < 8; p ++) planes[p][w] = 0;
+				for (int i = 0; i < end; i ++) {
+					int gv = row[base + i];
+					if (grayCode) gv ^= gv >>> 1;
+					for (int p = 0; p < 8; p ++) {
+						planes[p][w] |= (long) ((gv >>> p) & 1) << i;
+					}
+				}
+			}
 			
-			// increment counter
-			i += 2;
+			// write the alternating run lengths of each plane
+			for (int p = 0; p < 8; p ++) {
+				long[] plane = planes[p];
+				long previous = 0;     // bit before the word, the row starts with a 0 run
+				int start = 0;         // start of the current run
+				for (int w = 0; w < words; w ++) {
+					long word = plane[w];
+					long boundaries = word ^ ((word << 1) | previous);
+					previous = word >>> 63;
+					if (w == words - 1) boundaries &= lastMask;
+					while (boundaries != 0) {
+						int x = (w << 6) + Long.numberOfTrailingZeros(boundaries);
+						data.writeVarInt(x - start);
+						start = x;
+						boundaries &= boundaries - 1;
+					}
+				}
+				if (width > 0) data.writeVarInt(width - start);
+			}
 		}
 		
-		// compression duration
-		long endTime = System.currentTimeMillis();
-		
-		// show compression statistics
-		Utilities.showStatistics("COMPRESSION", endTime - startTime, byteArray.length);
-		
-		// save byte array
-		Utilities.saveByteArray(byteArray, EXTENSION);
+		data.flush();
 	}
-
-	public int[][] decompress() {
-		
-		// load the byte array file
-		byte[] data = Utilities.loadByteArray(EXTENSION);
-		
-		// check if null
-		if (data == null) { return null; }
-		
-		// timer
-		long startTime = System.currentTimeMillis();
+	
+	public void decode(InputStream in, RowSink sink) throws IOException {
+		// reusable buffer of this thread
+		decode(inputs.get().reset(in), sink);
+	}
+	
+	/**
+	 * Decodes straight from the buffer without copying it.
+	 */
+	public void decode(ByteBuffer data, RowSink sink) throws IOException {
+		ByteBufferInput input = new ByteBufferInput(data);
+		decode(input, sink);
+		data.position(data.position() + input.getBytesRead());
+	}
+	
+	/**
+	 * Decodes the image.
+	 * @param data the compressed bytes
+	 * @param sink the sink receiving the decoded rows
+	 * @throws IOException if the data is invalid or writing the sink fails
+	 */
+	private void decode(ByteBufferInput data, RowSink sink) throws IOException {
 		
-		// decompressed image
-		int[][] image = new int[IMAGE_SIZE][IMAGE_SIZE];
+		// read the image dimensions and options
+		int width = data.readInt();
+		int height = data.readInt();
+		if (width < 0 || height < 0) throw new IOException("Invalid image dimensions");
+		boolean gray = (data.readUnsignedByte() & GRAY_CODE) != 0;
+		sink.begin(width, height);
 		
-		// variables
-		int y = 0;     // current image y
-		int x = 0;     // current image x
-		int b = 0;     // current byte
+		// current decoded row
+		int[] row = new int[width];
 		
 		// set image
-		while (b < data.length) {
-			
-			// get gv and count
-			int gv = data[b];
-			int count = data[b+1] & 0xFF;
-			
-			// set image
-			while (count > 0) {
-				// set pixel
-				//image[y][x] += (gv << p);
-				image[y][x] += gv;
-				
-				// increment image x and y
-				x += 1;
-				if (x == IMAGE_SIZE) {
-					x = 0;
-					y += 1;
-					if (y == IMAGE_SIZE) {
-						y = 0;
+		for (int y = 0; y < height; y ++) {
+			Arrays.fill(row, 0);
+			for (int p = 0; p < 8; p ++) {
+				int bit = 1 << p;
+				boolean ones = false;     // runs alternate starting with 0
+				int x = 0;                // current image x
+				while (x < width) {
+					int count = data.readVarInt();
+					if (count < 0 || count > width - x || (count == 0 && (ones || x > 0))) {
+						// only the first run of a plane may be empty
+						throw new IOException("Invalid run length");
+					}
+					
+					// set the bit plane
+					if (ones) {
+						for (int i = x; i < x + count; i ++) row[i] |= bit;
 					}
+					x += count;
+					ones = !ones;
 				}
-				
-				// decrement count
-				count --;
 			}
 			
-			// increment b
-			b += 2;
+			// undo the Gray code
+			if (gray) {
+				for (int x = 0; x < width; x ++) {
+					int gv = row[x];
+					gv ^= gv >>> 1;
+					gv ^= gv >>> 2;
+					gv ^= gv >>> 4;
+					row[x] = gv;
+				}
+			}
+			
+			sink.writeRow(y, row);
 		}
-		
-		// decompression duration
-		long endTime = System.currentTimeMillis();
-		
-		// show decompression statistics
-		Utilities.showStatistics("DECOMPRESSION", endTime - startTime, 0);
-		
-		return image;
+	}
+	
+	public String getExtension() {
+		return EXTENSION;
 	}
 	
 	public String toString() {
-		return "Run Length Coding Bit Plane";
+		return grayCode ? "Run Length Coding Gray Bit Plane" : "Run Length Coding Bit Plane";
 	}
 	
 	/*
-	 * Node for Linked List
+	 * Reusable buffers of each thread
 	 */
-	class Node {
-		public Node(int gv) {
-			this.gv = gv;
-			this.count = 1;
-		}
-		public void increment() { count ++; }
-		int gv;
-		int count;
-	}
+	private final ThreadLocal<ByteBufferOutput> outputs = ThreadLocal.withInitial(() -> new ByteBufferOutput(BUFFER_SIZE));
+	private final ThreadLocal<ByteBufferInput> inputs = ThreadLocal.withInitial(() -> new ByteBufferInput(BUFFER_SIZE));
 	
-	private static final String EXTENSION = ".RLCBP";
-	private static final int IMAGE_SIZE = 512;
+	private final boolean grayCode;
 	
+	private static final String EXTENSION = ".RLCBP";
+	private static final int GRAY_CODE = 0x01;
+	private static final int BUFFER_SIZE = 1 << 16;
+
 }
@@ -0,0 +1,459 @@
+package compression_algorithms;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+import io.ByteBufferInputStream;
+
+/**
+ * Tiled container that cuts the image into independent tiles, each compressed
+ * by another compression algorithm on a fork join pool. The header holds a
+ * tile offset table, so the tiles are also decompressed in parallel, a
+ * mapped file is decoded from slices of the mapping without copying, and a
+ * region is decoded from only the tiles overlapping it.
+ *
+ * Format: width, height, tile width and tile height as ints, then the offset
+ * of each tile and the end of the data as longs, relative to the first tile,
+ * then the tiles in row major order.
+ * @author JLepere2
+ * @date 06/01/2018
+ */
+public class TiledCompression implements CompressionAlgorithm {
+
+	/**
+	 * Creates a tiled container with the default tile size on the common pool.
+	 * @param algorithm the algorithm compressing each tile
+	 */
+	public TiledCompression(CompressionAlgorithm algorithm) {
+		this(algorithm, DEFAULT_TILE_SIZE, DEFAULT_TILE_SIZE, ForkJoinPool.commonPool());
+	}
+	
+	/**
+	 * Creates a tiled container.
+	 * @param algorithm the algorithm compressing each tile
+	 * @param tileWidth the width of the tiles
+	 * @param tileHeight the height of the tiles
+	 * @param pool the pool compressing the tiles
+	 */
+	public TiledCompression(CompressionAlgorithm algorithm, int tileWidth, int tileHeight, ForkJoinPool pool) {
+		if (tileWidth < 1 || tileHeight < 1) throw new IllegalArgumentException("Tile size must be positive");
+		this.algorithm = algorithm;
+		this.tileWidth = tileWidth;
+		this.tileHeight = tileHeight;
+		this.pool = pool;
+	}
+	
+	/**
+	 * Encodes the tiles in parallel and writes the container to the stream.
+	 */
+	public void encode(RowSource source, OutputStream out) throws IOException {
+		List<byte[]> tiles = encodeTiles(source);
+		ByteBuffer header = header(source, tiles);
+		out.write(header.array(), 0, header.limit());
+		for (byte[] tile : tiles) out.write(tile);
+		out.flush();
+	}
+	
+	/**
+	 * Encodes the tiles in parallel and writes the header and all tiles with
+	 * gathering writes, without copying the tiles into one buffer.
+	 */
+	public void encode(RowSource source, WritableByteChannel channel) throws IOException {
+		List<byte[]> tiles = encodeTiles(source);
+		ByteBuffer[] buffers = new ByteBuffer[tiles.size() + 1];
+		buffers[0] = header(source, tiles);
+		for (int i = 0; i < tiles.size(); i ++) buffers[i + 1] = ByteBuffer.wrap(tiles.get(i));
+		
+		if (channel instanceof GatheringByteChannel) {
+			// write as many buffers per call as the channel accepts
+			GatheringByteChannel gathering = (GatheringByteChannel) channel;
+			int first = 0;
+			while (first < buffers.length) {
+				gathering.write(buffers, first, buffers.length - first);
+				while (first < buffers.length && !buffers[first].hasRemaining()) first ++;
+			}
+		} else {
+			for (ByteBuffer buffer : buffers) {
+				while (buffer.hasRemaining()) channel.write(buffer);
+			}
+		}
+	}
+	
+	/**
+	 * Encodes the tiles in parallel. One strip of tiles is read at a time, and
+	 * a few strips are kept in flight so narrow images still use every worker.
+	 * The compressed tiles are held in memory until the offset table is known.
+	 * @param source the rows to encode
+	 * @return the compressed tiles in row major order
+	 * @throws IOException if reading the source or compressing a tile fails
+	 */
+	private List<byte[]> encodeTiles(RowSource source) throws IOException {
+		
+		// image and tile grid dimensions
+		int width = source.getWidth();
+		int height = source.getHeight();
+		int tilesX = (width + tileWidth - 1) / tileWidth;
+		int tilesY = (height + tileHeight - 1) / tileHeight;
+		int window = stripWindow(tilesX);
+		
+		// compress each strip of tiles as soon as its rows are read
+		List<ForkJoinTask<byte[]>> tasks = new ArrayList<>(tilesX * tilesY);
+		ArrayDeque<Integer> inFlight = new ArrayDeque<>();
+		for (int ty = 0; ty < tilesY; ty ++) {
+			
+			// wait for the oldest strip before reading another one
+			if (inFlight.size() == window) {
+				int first = inFlight.remove();
+				for (int i = first; i < first + tilesX; i ++) join(tasks.get(i));
+			}
+			
+			// read the rows of the strip
+			int stripHeight = Math.min(tileHeight, height - ty * tileHeight);
+			int[][] strip = new int[stripHeight][width];
+			for (int y = 0; y < stripHeight; y ++) source.readRow(strip[y]);
+			
+			// submit one task per tile
+			inFlight.add(tasks.size());
+			for (int tx = 0; tx < tilesX; tx ++) {
+				int x0 = tx * tileWidth;
+				int w = Math.min(tileWidth, width - x0);
+				tasks.add(pool.submit(new EncodeTile(algorithm, new TileRowSource(strip, x0, w))));
+			}
+		}
+		
+		// wait for the remaining tiles
+		List<byte[]> tiles = new ArrayList<>(tasks.size());
+		for (ForkJoinTask<byte[]> task : tasks) tiles.add(join(task));
+		return tiles;
+	}
+	
+	/**
+	 * Builds the header and the tile offset table.
+	 * @param source the encoded source
+	 * @param tiles the compressed tiles
+	 * @return the header, ready to be written
+	 */
+	private ByteBuffer header(RowSource source, List<byte[]> tiles) {
+		ByteBuffer header = ByteBuffer.allocate(16 + 8 * (tiles.size() + 1));
+		header.putInt(source.getWidth());
+		header.putInt(source.getHeight());
+		header.putInt(tileWidth);
+		header.putInt(tileHeight);
+		long offset = 0;
+		for (byte[] tile : tiles) {
+			header.putLong(offset);
+			offset += tile.length;
+		}
+		header.putLong(offset);
+		header.flip();
+		return header;
+	}
+	
+	public void decode(InputStream in, RowSink sink) throws IOException {
+		DataInputStream data = new DataInputStream(new BufferedInputStream(in));
+		Header header = new Header(data);
+		
+		// read each tile from the stream in order
+		decodeTiles(header, 0, 0, header.width, header.height, sink, tile -> {
+			byte[] bytes = new byte[header.getTileSize(tile)];
+			data.readFully(bytes);
+			return ByteBuffer.wrap(bytes);
+		});
+	}
+	
+	/**
+	 * Decodes each tile from a slice of the buffer, so the tiles of a mapped
+	 * file are never copied.
+	 */
+	public void decode(ByteBuffer data, RowSink sink) throws IOException {
+		decodeRegion(data, null, sink);
+	}
+	
+	/**
+	 * Seeks to and decodes only the tiles overlapping the region, so the cost
+	 * is proportional to the area of the region rather than of the image.
+	 */
+	public void decodeRegion(ByteBuffer data, int x, int y, int width, int height, RowSink sink) throws IOException {
+		decodeRegion(data, new int[]{x, y, width, height}, sink);
+	}
+	
+	/**
+	 * Decodes a region from slices of the buffer, so the tiles of a mapped
+	 * file are never copied.
+	 * @param data the compressed image
+	 * @param region the x, y, width and height of the region, null for the whole image
+	 * @param sink the sink receiving the decoded rows of the region
+	 * @throws IOException if the data is invalid or writing the sink fails
+	 */
+	private void decodeRegion(ByteBuffer data, int[] region, RowSink sink) throws IOException {
+		ByteBuffer buffer = data.duplicate();
+		Header header = new Header(new DataInputStream(new ByteBufferInputStream(buffer)));
+		int base = buffer.position();
+		long end = header.offsets[header.offsets.length - 1];
+		if (end > buffer.remaining()) throw new EOFException("Tiled image is truncated");
+		data.position(base + (int) end);
+		if (region == null) region = new int[]{0, 0, header.width, header.height};
+		RegionRowSink.checkRegion(region[0], region[1], region[2], region[3], header.width, header.height);
+		
+		// slice each tile out of the buffer
+		decodeTiles(header, region[0], region[1], region[2], region[3], sink, tile -> {
+			ByteBuffer slice = buffer.duplicate();
+			slice.limit(base + (int) header.offsets[tile + 1]).position(base + (int) header.offsets[tile]);
+			return slice.slice();
+		});
+	}
+	
+	/**
+	 * Decodes the tiles overlapping a region in parallel, a few strips ahead,
+	 * while emitting the rows of the region in order.
+	 * @param header the header of the container
+	 * @param rx the left of the region
+	 * @param ry the top of the region
+	 * @param rw the width of the region
+	 * @param rh the height of the region
+	 * @param sink the sink receiving the decoded rows of the region
+	 * @param tiles the reader of the compressed tiles, called in order
+	 * @throws IOException if a tile is invalid or writing the sink fails
+	 */
+	private void decodeTiles(Header header, int rx, int ry, int rw, int rh, RowSink sink, TileReader tiles) throws IOException {
+		int width = header.width;
+		int height = header.height;
+		int tw = header.tileWidth;
+		int th = header.tileHeight;
+		int tilesX = (width + tw - 1) / tw;
+		sink.begin(rw, rh);
+		
+		// the tiles overlapping the region
+		int firstX = rx / tw;
+		int endX = rw == 0 ? firstX : (rx + rw - 1) / tw + 1;
+		int firstY = ry / th;
+		int endY = rh == 0 ? firstY : (ry + rh - 1) / th + 1;
+		int window = stripWindow(endX - firstX);
+		
+		// decompress a few strips ahead while emitting the rows in order
+		ArrayDeque<int[][]> strips = new ArrayDeque<>();
+		ArrayDeque<List<ForkJoinTask<?>>> stripTasks = new ArrayDeque<>();
+		int nextStrip = firstY;
+		int y = 0;
+		while (y < rh) {
+			
+			// submit the tiles of the strips in the window, each strip holding only the rows of the region
+			while (nextStrip < endY && strips.size() < window) {
+				int tileY = nextStrip * th;
+				int tileHeight = Math.min(th, height - tileY);
+				int top = Math.max(ry, tileY);
+				int[][] strip = new int[Math.min(ry + rh, tileY + tileHeight) - top][rw];
+				List<ForkJoinTask<?>> tasks = new ArrayList<>(endX - firstX);
+				for (int tx = firstX; tx < endX; tx ++) {
+					ByteBuffer tile = tiles.read(nextStrip * tilesX + tx);
+					int x0 = tx * tw;
+					int w = Math.min(tw, width - x0);
+					TileRowSink tileSink = new TileRowSink(strip, x0 - rx, tileY - top, w, tileHeight);
+					tasks.add(pool.submit(new DecodeTile(algorithm, tile, tileSink)));
+				}
+				strips.add(strip);
+				stripTasks.add(tasks);
+				nextStrip ++;
+			}
+			
+			// emit the oldest strip once all of its tiles are done
+			int[][] strip = strips.remove();
+			for (ForkJoinTask<?> task : stripTasks.remove()) join(task);
+			for (int[] row : strip) sink.writeRow(y ++, row);
+		}
+	}
+	
+	/**
+	 * Gets the number of strips to keep in flight so the pool has enough tiles.
+	 * @param tilesX the number of tiles in a strip
+	 * @return the number of strips
+	 */
+	private int stripWindow(int tilesX) {
+		return Math.max(2, 2 * pool.getParallelism() / Math.max(1, tilesX) + 1);
+	}
+	
+	/**
+	 * Waits for a tile task, unwrapping the IOException of a failed tile.
+	 * @param task the task
+	 * @return the result of the task
+	 * @throws IOException if the tile failed
+	 */
+	static <T> T join(ForkJoinTask<T> task) throws IOException {
+		try {
+			return task.join();
+		} catch (RuntimeException e) {
+			for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+				if (cause instanceof IOException) throw (IOException) cause;
+			}
+			throw e;
+		}
+	}
+	
+	public String getExtension() {
+		return ".T" + algorithm.getExtension().substring(1);
+	}
+	
+	public String getId() {
+		return "Tiled " + tileWidth + "x" + tileHeight + " " + algorithm.getId();
+	}
+	
+	public String toString() {
+		return "Tiled " + algorithm;
+	}
+	
+	/*
+	 * Task compressing one tile, releasing the strip once done
+	 */
+	static class EncodeTile extends RecursiveTask<byte[]> {
+		EncodeTile(CompressionAlgorithm algorithm, TileRowSource source) {
+			this.algorithm = algorithm;
+			this.source = source;
+		}
+		protected byte[] compute() {
+			try {
+				ByteArrayOutputStream tile = new ByteArrayOutputStream();
+				algorithm.encode(source, tile);
+				return tile.toByteArray();
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			} finally {
+				source = null;
+			}
+		}
+		final CompressionAlgorithm algorithm;
+		TileRowSource source;
+		private static final long serialVersionUID = 1L;
+	}
+	
+	/*
+	 * Task decompressing one tile into its strip
+	 */
+	static class DecodeTile extends RecursiveAction {
+		DecodeTile(CompressionAlgorithm algorithm, ByteBuffer data, RowSink sink) {
+			this.algorithm = algorithm;
+			this.data = data;
+			this.sink = sink;
+		}
+		protected void compute() {
+			try {
+				algorithm.decode(data, sink);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			} finally {
+				data = null;
+				sink = null;
+			}
+		}
+		final CompressionAlgorithm algorithm;
+		ByteBuffer data;
+		RowSink sink;
+		private static final long serialVersionUID = 1L;
+	}
+	
+	/*
+	 * Header and tile offset table of a container. The table grows as its
+	 * offsets are read, so a corrupt tile count runs out of data instead of
+	 * allocating a huge table up front.
+	 */
+	static class Header {
+		Header(DataInputStream data) throws IOException {
+			width = data.readInt();
+			height = data.readInt();
+			tileWidth = data.readInt();
+			tileHeight = data.readInt();
+			if (width < 0 || height < 0 || tileWidth < 1 || tileHeight < 1) throw new IOException("Invalid tiled image header");
+			long tiles = ((width + (long) tileWidth - 1) / tileWidth) * ((height + (long) tileHeight - 1) / tileHeight);
+			if (tiles >= Integer.MAX_VALUE) throw new IOException("Invalid tiled image header");
+			int count = (int) tiles + 1;
+			long[] table = new long[Math.min(count, INITIAL_OFFSETS)];
+			for (int i = 0; i < count; i ++) {
+				if (i == table.length) table = Arrays.copyOf(table, (int) Math.min(count, 2L * table.length));
+				table[i] = data.readLong();
+				if (i > 0 && (table[i] < table[i - 1] || table[i] - table[i - 1] > Integer.MAX_VALUE)) {
+					throw new IOException("Invalid tile offset table");
+				}
+			}
+			offsets = table;
+		}
+		int getTileSize(int tile) { return (int) (offsets[tile + 1] - offsets[tile]); }
+		final int width, height, tileWidth, tileHeight;
+		final long[] offsets;
+		private static final int INITIAL_OFFSETS = 1 << 10;
+	}
+	
+	/*
+	 * Supplier of the compressed tiles in order
+	 */
+	interface TileReader {
+		ByteBuffer read(int tile) throws IOException;
+	}
+	
+	/*
+	 * Row source over one tile of a strip
+	 */
+	static class TileRowSource implements RowSource {
+		TileRowSource(int[][] strip, int x0, int width) {
+			this.strip = strip;
+			this.x0 = x0;
+			this.width = width;
+		}
+		public int getWidth() { return width; }
+		public int getHeight() { return strip.length; }
+		public void readRow(int[] row) { System.arraycopy(strip[y ++], x0, row, 0, width); }
+		public void reset() { y = 0; }
+		final int[][] strip;
+		final int x0, width;
+		int y;
+	}
+	
+	/*
+	 * Row sink into one tile of a strip, dropping the pixels outside the strip.
+	 * The tile starts at column x0 and row y0 of the strip, either may be negative.
+	 */
+	static class TileRowSink implements RowSink {
+		TileRowSink(int[][] strip, int x0, int y0, int width, int height) {
+			this.strip = strip;
+			this.x0 = x0;
+			this.y0 = y0;
+			this.width = width;
+			this.height = height;
+		}
+		public void begin(int width, int height) throws IOException {
+			if (width != this.width || height != this.height) throw new IOException("Tile has the wrong size");
+		}
+		public void writeRow(int y, int[] row) {
+			int sy = y0 + y;
+			if (sy < 0 || sy >= strip.length) return;
+			int from = Math.max(0, -x0);
+			int to = Math.min(width, strip[sy].length - x0);
+			if (to > from) System.arraycopy(row, from, strip[sy], x0 + from, to - from);
+		}
+		final int[][] strip;
+		final int x0, y0, width, height;
+	}
+	
+	private final CompressionAlgorithm algorithm;
+	private final int tileWidth;
+	private final int tileHeight;
+	private final ForkJoinPool pool;
+	
+	private static final int DEFAULT_TILE_SIZE = 256;
+
+}
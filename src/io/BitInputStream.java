@@ -0,0 +1,117 @@
+package io;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Buffered reader of bit strings, most significant bit first. The reader
+ * buffers ahead, so it consumes the rest of the underlying stream. Over a
+ * byte buffer, such as a mapped file, the bytes are read in place.
+ * @author JLepere2
+ * @date 06/01/2018
+ */
+public class BitInputStream {
+
+	/**
+	 * Creates a bit reader.
+	 * @param in the stream to read the packed bytes from
+	 */
+	public BitInputStream(InputStream in) {
+		this.in = in;
+		this.buffer = new byte[BUFFER_SIZE];
+		this.data = null;
+	}
+	
+	/**
+	 * Creates a bit reader over the remaining bytes of a buffer, consuming them.
+	 * @param data the packed bytes
+	 */
+	public BitInputStream(ByteBuffer data) {
+		this.in = null;
+		this.buffer = null;
+		this.data = data;
+	}
+	
+	/**
+	 * Reads bits as an unsigned value.
+	 * @param length the number of bits to read, 0 to 32
+	 * @return the bits
+	 * @throws IOException if the stream ends before the bits
+	 */
+	public int readBits(int length) throws IOException {
+		int bits = peekBits(length);
+		skipBits(length);
+		return bits;
+	}
+	
+	/**
+	 * Gets the next bits without consuming them. Past the end of the stream the
+	 * missing bits read as zero.
+	 * @param length the number of bits to peek, 0 to 32
+	 * @return the bits
+	 * @throws IOException if reading the stream fails
+	 */
+	public int peekBits(int length) throws IOException {
+		if (count < length) fill();
+		return (int) ((accumulator >>> (count - length)) & ((1L << length) - 1));
+	}
+	
+	/**
+	 * Consumes bits that have been peeked.
+	 * @param length the number of bits to consume
+	 * @throws IOException if the stream ended before the bits
+	 */
+	public void skipBits(int length) throws IOException {
+		if (count < length) fill();
+		count -= length;
+		if (count < padding) throw new EOFException("Unexpected end of bit stream");
+	}
+	
+	/**
+	 * Fills the accumulator with at least 57 bits, padding with zero bytes at the end of the stream.
+	 * @throws IOException if reading the stream fails
+	 */
+	private void fill() throws IOException {
+		while (count <= 56) {
+			if (data != null) {
+				// read the buffer in place, padding past its end
+				if (data.hasRemaining()) {
+					accumulator = (accumulator << 8) | (data.get() & 0xFF);
+				} else {
+					accumulator <<= 8;
+					padding += 8;
+				}
+				count += 8;
+				continue;
+			}
+			if (position == limit) {
+				limit = in.read(buffer, 0, buffer.length);
+				position = 0;
+				if (limit <= 0) {
+					// end of the stream
+					limit = 0;
+					accumulator <<= 8;
+					count += 8;
+					padding += 8;
+					continue;
+				}
+			}
+			accumulator = (accumulator << 8) | (buffer[position ++] & 0xFF);
+			count += 8;
+		}
+	}
+	
+	private final InputStream in;
+	private final byte[] buffer;
+	private final ByteBuffer data;
+	private int position;
+	private int limit;
+	private long accumulator;
+	private int count;
+	private int padding;
+	
+	private static final int BUFFER_SIZE = 1 << 16;
+
+}
@@ -0,0 +1,79 @@
+package io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Buffered writer of bit strings, most significant bit first.
+ * @author JLepere2
+ * @date 06/01/2018
+ */
+public class BitOutputStream {
+
+	/**
+	 * Creates a bit writer.
+	 * @param out the stream to write the packed bytes to
+	 */
+	public BitOutputStream(OutputStream out) {
+		this.out = out;
+		this.buffer = new byte[BUFFER_SIZE];
+	}
+	
+	/**
+	 * Points the writer at another stream so the buffer can be reused.
+	 * Any unflushed bits are discarded.
+	 * @param out the stream to write the packed bytes to
+	 */
+	public void reset(OutputStream out) {
+		this.out = out;
+		this.position = 0;
+		this.accumulator = 0;
+		this.count = 0;
+	}
+	
+	/**
+	 * Writes the lowest bits of a value.
+	 * @param bits the value holding the bits
+	 * @param length the number of bits to write, 0 to 32
+	 * @throws IOException if writing the stream fails
+	 */
+	public void writeBits(int bits, int length) throws IOException {
+		
+		// append the bits to the accumulator
+		accumulator = (accumulator << length) | (bits & ((1L << length) - 1));
+		count += length;
+		
+		// move whole bytes to the buffer
+		while (count >= 8) {
+			count -= 8;
+			buffer[position ++] = (byte) (accumulator >>> count);
+			if (position == buffer.length) {
+				out.write(buffer, 0, position);
+				position = 0;
+			}
+		}
+	}
+	
+	/**
+	 * Pads the last byte with zero bits and flushes all buffered bytes to the stream.
+	 * The stream is not closed.
+	 * @throws IOException if writing the stream fails
+	 */
+	public void flush() throws IOException {
+		if (count > 0) {
+			writeBits(0, 8 - count);
+		}
+		out.write(buffer, 0, position);
+		position = 0;
+		out.flush();
+	}
+	
+	private OutputStream out;
+	private final byte[] buffer;
+	private int position;
+	private long accumulator;
+	private int count;
+	
+	private static final int BUFFER_SIZE = 1 << 16;
+
+}
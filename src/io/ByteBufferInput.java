@@ -0,0 +1,124 @@
+package io;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Reusable byte buffer refilled from a stream, with helpers for fixed size
+ * and variable length integers. The input buffers ahead, so it consumes the
+ * rest of the underlying stream. It can also read straight from a given
+ * buffer, such as a mapped file, without copying.
+ * @author JLepere2
+ * @date 06/01/2018
+ */
+public class ByteBufferInput {
+
+	/**
+	 * Creates a buffered input.
+	 * @param capacity the size of the buffer in bytes, at least 16
+	 */
+	public ByteBufferInput(int capacity) {
+		this.buffer = ByteBuffer.allocate(capacity);
+		this.buffer.limit(0);
+		this.wrapped = false;
+		this.start = 0;
+	}
+	
+	/**
+	 * Creates an input reading the remaining bytes of a buffer. The position
+	 * of the given buffer is not changed.
+	 * @param data the bytes to read
+	 */
+	public ByteBufferInput(ByteBuffer data) {
+		this.buffer = data.duplicate().order(ByteOrder.BIG_ENDIAN);
+		this.wrapped = true;
+		this.start = buffer.position();
+	}
+	
+	/**
+	 * Points the input at another stream so the buffer can be reused.
+	 * @param in the stream to read from
+	 * @return this input
+	 */
+	public ByteBufferInput reset(InputStream in) {
+		if (wrapped) throw new IllegalStateException("Input reads a fixed buffer");
+		this.in = in;
+		this.buffer.clear().limit(0);
+		return this;
+	}
+	
+	/**
+	 * Reads one byte.
+	 * @return the byte as an unsigned value
+	 * @throws IOException if the stream ended
+	 */
+	public int readUnsignedByte() throws IOException {
+		if (!buffer.hasRemaining()) refill(1);
+		if (!buffer.hasRemaining()) throw new EOFException();
+		return buffer.get() & 0xFF;
+	}
+	
+	/**
+	 * Reads a big endian 32 bit integer.
+	 * @return the integer
+	 * @throws IOException if the stream ended
+	 */
+	public int readInt() throws IOException {
+		if (buffer.remaining() < 4) refill(4);
+		if (buffer.remaining() < 4) throw new EOFException();
+		return buffer.getInt();
+	}
+	
+	/**
+	 * Reads an unsigned integer written by ByteBufferOutput.writeVarInt.
+	 * @return the integer
+	 * @throws IOException if the stream ended or the integer is malformed
+	 */
+	public int readVarInt() throws IOException {
+		if (buffer.remaining() < 5) refill(5);
+		int v = 0;
+		for (int shift = 0; shift < 35; shift += 7) {
+			if (!buffer.hasRemaining()) throw new EOFException();
+			int b = buffer.get();
+			v |= (b & 0x7F) << shift;
+			if (b >= 0) return v;
+		}
+		throw new IOException("Malformed variable length integer");
+	}
+	
+	/**
+	 * Gets the number of bytes read from a fixed buffer.
+	 * @return the number of bytes consumed since the input was created
+	 */
+	public int getBytesRead() {
+		if (!wrapped) throw new IllegalStateException("Input reads ahead from a stream");
+		return buffer.position() - start;
+	}
+	
+	/**
+	 * Moves the unread bytes to the front and reads the stream until at least
+	 * the needed number of bytes are buffered or the stream ends. A fixed
+	 * buffer has nothing more to read.
+	 * @param needed the number of bytes needed
+	 * @throws IOException if reading the stream fails
+	 */
+	private void refill(int needed) throws IOException {
+		if (wrapped) return;
+		buffer.compact();
+		while (buffer.position() < needed) {
+			int n = in.read(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+			if (n <= 0) break;
+			buffer.position(buffer.position() + n);
+		}
+		buffer.flip();
+	}
+	
+	private final ByteBuffer buffer;
+	private final boolean wrapped;
+	private final int start;
+	private InputStream in;
+
+}
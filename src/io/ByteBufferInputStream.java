@@ -0,0 +1,46 @@
+package io;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Input stream over the remaining bytes of a byte buffer, such as a mapped
+ * file, so stream based decoders read it without copying the whole file.
+ * @author JLepere2
+ * @date 06/01/2018
+ */
+public class ByteBufferInputStream extends InputStream {
+
+	/**
+	 * Creates a stream consuming the remaining bytes of a buffer.
+	 * @param data the bytes to read
+	 */
+	public ByteBufferInputStream(ByteBuffer data) {
+		this.data = data;
+	}
+	
+	public int read() {
+		return data.hasRemaining() ? data.get() & 0xFF : -1;
+	}
+	
+	public int read(byte[] b, int off, int len) {
+		if (len == 0) return 0;
+		if (!data.hasRemaining()) return -1;
+		int n = Math.min(len, data.remaining());
+		data.get(b, off, n);
+		return n;
+	}
+	
+	public long skip(long n) {
+		int skipped = (int) Math.max(0, Math.min(n, data.remaining()));
+		data.position(data.position() + skipped);
+		return skipped;
+	}
+	
+	public int available() {
+		return data.remaining();
+	}
+	
+	private final ByteBuffer data;
+
+}
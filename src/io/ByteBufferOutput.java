@@ -0,0 +1,91 @@
+package io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Reusable byte buffer that is drained to a stream whenever it fills up,
+ * with helpers for fixed size and variable length integers.
+ * @author JLepere2
+ * @date 06/01/2018
+ */
+public class ByteBufferOutput {
+
+	/**
+	 * Creates a buffered output.
+	 * @param capacity the size of the buffer in bytes, at least 16
+	 */
+	public ByteBufferOutput(int capacity) {
+		this.buffer = ByteBuffer.allocate(capacity);
+	}
+	
+	/**
+	 * Points the output at another stream so the buffer can be reused.
+	 * Any unflushed bytes are discarded.
+	 * @param out the stream to write to
+	 * @return this output
+	 */
+	public ByteBufferOutput reset(OutputStream out) {
+		this.out = out;
+		this.buffer.clear();
+		return this;
+	}
+	
+	/**
+	 * Writes one byte.
+	 * @param b the byte in the lowest 8 bits
+	 * @throws IOException if draining the buffer fails
+	 */
+	public void writeByte(int b) throws IOException {
+		if (!buffer.hasRemaining()) drain();
+		buffer.put((byte) b);
+	}
+	
+	/**
+	 * Writes a big endian 32 bit integer.
+	 * @param v the integer
+	 * @throws IOException if draining the buffer fails
+	 */
+	public void writeInt(int v) throws IOException {
+		if (buffer.remaining() < 4) drain();
+		buffer.putInt(v);
+	}
+	
+	/**
+	 * Writes an unsigned integer in 1 to 5 bytes, 7 bits per byte with the
+	 * high bit set on all but the last byte.
+	 * @param v the integer, treated as unsigned
+	 * @throws IOException if draining the buffer fails
+	 */
+	public void writeVarInt(int v) throws IOException {
+		if (buffer.remaining() < 5) drain();
+		while ((v & ~0x7F) != 0) {
+			buffer.put((byte) ((v & 0x7F) | 0x80));
+			v >>>= 7;
+		}
+		buffer.put((byte) v);
+	}
+	
+	/**
+	 * Writes the buffered bytes to the stream and flushes it. The stream is not closed.
+	 * @throws IOException if writing the stream fails
+	 */
+	public void flush() throws IOException {
+		drain();
+		out.flush();
+	}
+	
+	/**
+	 * Writes the buffered bytes to the stream.
+	 * @throws IOException if writing the stream fails
+	 */
+	private void drain() throws IOException {
+		out.write(buffer.array(), buffer.arrayOffset(), buffer.position());
+		buffer.clear();
+	}
+	
+	private final ByteBuffer buffer;
+	private OutputStream out;
+
+}
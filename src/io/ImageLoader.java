@@ -0,0 +1,355 @@
+package io;
+
+import java.awt.color.ColorSpace;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBufferByte;
+import java.awt.image.Raster;
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import javax.imageio.ImageIO;
+
+import compression_algorithms.ChannelImage;
+import compression_algorithms.PixelBuffer;
+
+/**
+ * Loads images into pixel buffers. Binary PGM and raw files are parsed
+ * directly into the buffer. Other formats are decoded by ImageIO, and their
+ * samples are copied in bulk from the raster instead of through getRGB, which
+ * converts every pixel through the color model. Color images are converted
+ * to luma, or loaded as channel images keeping their color and 16 bit samples.
+ * @author JLepere2
+ * @date 06/01/2018
+ */
+public class ImageLoader {
+
+	/**
+	 * Loads a PGM, PNG, JPEG or other ImageIO supported image file.
+	 * @param file the image file
+	 * @return the gray values of the image, or null if the file is not an image
+	 * @throws IOException if reading the file fails or a PGM file is malformed
+	 */
+	public static PixelBuffer load(Path file) throws IOException {
+		try (InputStream in = Files.newInputStream(file)) {
+			return load(in);
+		}
+	}
+	
+	/**
+	 * Loads a PGM, PNG, JPEG or other ImageIO supported image from a stream.
+	 * The format is detected from the first bytes.
+	 * @param in the stream, not closed
+	 * @return the gray values of the image, or null if the stream is not an image
+	 * @throws IOException if reading the stream fails or a PGM image is malformed
+	 */
+	public static PixelBuffer load(InputStream in) throws IOException {
+		BufferedInputStream buffered = new BufferedInputStream(in, BUFFER_SIZE);
+		
+		// binary PGM starts with P5
+		buffered.mark(2);
+		boolean pgm = buffered.read() == 'P' && buffered.read() == '5';
+		buffered.reset();
+		if (pgm) return loadPgm(buffered);
+		
+		// anything else is left to ImageIO
+		BufferedImage image = ImageIO.read(buffered);
+		return image == null ? null : toPixels(image);
+	}
+	
+	/**
+	 * Loads a PGM, PNG, JPEG or other ImageIO supported image file keeping
+	 * its channels and 16 bit samples.
+	 * @param file the image file
+	 * @return the channels of the image, or null if the file is not an image
+	 * @throws IOException if reading the file fails or a PGM file is malformed
+	 */
+	public static ChannelImage loadChannels(Path file) throws IOException {
+		try (InputStream in = Files.newInputStream(file)) {
+			return loadChannels(in);
+		}
+	}
+	
+	/**
+	 * Loads a PGM, PNG, JPEG or other ImageIO supported image from a stream
+	 * keeping its channels and 16 bit samples. The format is detected from the
+	 * first bytes.
+	 * @param in the stream, not closed
+	 * @return the channels of the image, or null if the stream is not an image
+	 * @throws IOException if reading the stream fails or a PGM image is malformed
+	 */
+	public static ChannelImage loadChannels(InputStream in) throws IOException {
+		BufferedInputStream buffered = new BufferedInputStream(in, BUFFER_SIZE);
+		
+		// binary PGM starts with P5
+		buffered.mark(2);
+		boolean pgm = buffered.read() == 'P' && buffered.read() == '5';
+		buffered.reset();
+		if (pgm) return readPgm(buffered, true);
+		
+		// anything else is left to ImageIO
+		BufferedImage image = ImageIO.read(buffered);
+		return image == null ? null : toChannels(image);
+	}
+	
+	/**
+	 * Parses a binary PGM (P5) image. Samples with a maximum value other than
+	 * 255 are scaled to 8 bits.
+	 * @param in the stream positioned at the magic number
+	 * @return the gray values of the image
+	 * @throws IOException if the image is malformed or the stream ended
+	 */
+	public static PixelBuffer loadPgm(InputStream in) throws IOException {
+		return readPgm(in, false).getPlanes()[0];
+	}
+	
+	/**
+	 * Parses a binary PGM (P5) image.
+	 * @param in the stream positioned at the magic number
+	 * @param wide true to keep samples with a maximum value above 255 as 16 bits
+	 * along with their maximum value, false to scale all samples with a maximum
+	 * value other than 255 to 8 bits
+	 * @return the gray image
+	 * @throws IOException if the image is malformed or the stream ended
+	 */
+	private static ChannelImage readPgm(InputStream in, boolean wide) throws IOException {
+		
+		// header: magic number, width, height and maximum value separated by whitespace
+		if (in.read() != 'P' || in.read() != '5') throw new IOException("Not a binary PGM image");
+		int width = readPgmNumber(in);
+		int height = readPgmNumber(in);
+		int maxValue = readPgmNumber(in);
+		if (maxValue < 1 || maxValue > 65535) throw new IOException("Invalid PGM maximum value " + maxValue);
+		
+		if (wide && maxValue > 255) {
+			// two big endian bytes per sample, split into the high and low byte planes
+			ChannelImage image = new ChannelImage(width, height, 1, 16);
+			image.setMaxValue(maxValue);
+			byte[] high = image.getPlanes()[0].array();
+			byte[] low = image.getPlanes()[1].array();
+			byte[] row = new byte[2 * width];
+			for (int y = 0; y < height; y ++) {
+				readFully(in, row, 0, row.length);
+				for (int x = 0; x < width; x ++) {
+					high[y * width + x] = row[2 * x];
+					low[y * width + x] = row[2 * x + 1];
+				}
+			}
+			return image;
+		}
+		
+		PixelBuffer pixels = new PixelBuffer(width, height);
+		byte[] data = pixels.array();
+		if (maxValue < 256) {
+			// one byte per sample, read straight into the buffer
+			readFully(in, data, 0, data.length);
+			if (maxValue != 255) {
+				for (int i = 0; i < data.length; i ++) data[i] = (byte) scale(data[i] & 0xFF, maxValue);
+			}
+		} else {
+			// two big endian bytes per sample, one row at a time
+			byte[] row = new byte[2 * width];
+			for (int y = 0; y < height; y ++) {
+				readFully(in, row, 0, row.length);
+				for (int x = 0; x < width; x ++) {
+					int v = ((row[2 * x] & 0xFF) << 8) | (row[2 * x + 1] & 0xFF);
+					data[y * width + x] = (byte) scale(v, maxValue);
+				}
+			}
+		}
+		return ChannelImage.fromGray(pixels);
+	}
+	
+	/**
+	 * Converts a decoded image to gray values. Single band 8 bit rasters are
+	 * copied row by row, interleaved 8 bit color rasters are converted to luma
+	 * directly from their bytes, and any other raster goes through getRGB one
+	 * row at a time.
+	 * @param image the image
+	 * @return the gray values of the image
+	 */
+	public static PixelBuffer toPixels(BufferedImage image) {
+		int width = image.getWidth();
+		int height = image.getHeight();
+		PixelBuffer pixels = new PixelBuffer(width, height);
+		byte[] out = pixels.array();
+		Raster raster = image.getRaster();
+		
+		// gray or sRGB samples of 8 bits, possibly with alpha
+		ColorSpace colorSpace = image.getColorModel().getColorSpace();
+		boolean gray = raster.getNumBands() <= 2 && colorSpace.getType() == ColorSpace.TYPE_GRAY;
+		boolean rgb = raster.getNumBands() >= 3 && colorSpace.isCS_sRGB();
+		if ((gray || rgb) && raster.getDataBuffer() instanceof DataBufferByte
+				&& raster.getSampleModel() instanceof ComponentSampleModel && raster.getSampleModel().getSampleSize(0) == 8) {
+			
+			// bytes of the raster and their layout
+			ComponentSampleModel model = (ComponentSampleModel) raster.getSampleModel();
+			byte[] data = ((DataBufferByte) raster.getDataBuffer()).getData(model.getBankIndices()[0]);
+			int pixelStride = model.getPixelStride();
+			int scanlineStride = model.getScanlineStride();
+			int[] bandOffsets = model.getBandOffsets();
+			int base = ((DataBufferByte) raster.getDataBuffer()).getOffset()
+					- raster.getSampleModelTranslateY() * scanlineStride - raster.getSampleModelTranslateX() * pixelStride;
+			
+			if (gray && pixelStride == 1) {
+				// gray, copy whole rows
+				for (int y = 0; y < height; y ++) {
+					System.arraycopy(data, base + y * scanlineStride + bandOffsets[0], out, y * width, width);
+				}
+				return pixels;
+			}
+			int[] banks = model.getBankIndices();
+			if (gray || (banks[1] == banks[0] && banks[2] == banks[0])) {
+				// gray with alpha or interleaved color
+				int r = bandOffsets[0];
+				int g = rgb ? bandOffsets[1] : r;
+				int b = rgb ? bandOffsets[2] : r;
+				for (int y = 0; y < height; y ++) {
+					int i = base + y * scanlineStride;
+					for (int x = 0; x < width; x ++, i += pixelStride) {
+						out[y * width + x] = (byte) luma(data[i + r] & 0xFF, data[i + g] & 0xFF, data[i + b] & 0xFF);
+					}
+				}
+				return pixels;
+			}
+		}
+		
+		// any other layout, one row of sRGB pixels at a time
+		int[] argb = new int[width];
+		for (int y = 0; y < height; y ++) {
+			image.getRGB(0, y, width, 1, argb, 0, width);
+			for (int x = 0; x < width; x ++) {
+				int p = argb[x];
+				out[y * width + x] = (byte) luma((p >>> 16) & 0xFF, (p >>> 8) & 0xFF, p & 0xFF);
+			}
+		}
+		return pixels;
+	}
+	
+	/**
+	 * Converts a decoded image to its channels. Gray and sRGB rasters of 8 or
+	 * 16 bit samples, with or without alpha, are copied one row of each band at
+	 * a time, keeping 16 bit samples. Any other image goes through getRGB and
+	 * becomes 8 bit gray, RGB or RGBA.
+	 * @param image the image
+	 * @return the channels of the image
+	 */
+	public static ChannelImage toChannels(BufferedImage image) {
+		int width = image.getWidth();
+		int height = image.getHeight();
+		ColorModel colorModel = image.getColorModel();
+		ColorSpace colorSpace = colorModel.getColorSpace();
+		boolean gray = colorSpace.getType() == ColorSpace.TYPE_GRAY;
+		int channels = (gray ? 1 : 3) + (colorModel.hasAlpha() ? 1 : 0);
+		Raster raster = image.getRaster();
+		
+		if (colorModel instanceof ComponentColorModel && (gray || colorSpace.isCS_sRGB())
+				&& raster.getNumBands() == channels && raster.getSampleModel().getSampleSize(0) <= 16) {
+			
+			// copy the samples of each band, keeping up to 16 bits
+			int sampleSize = raster.getSampleModel().getSampleSize(0);
+			ChannelImage channelImage = new ChannelImage(width, height, channels, sampleSize > 8 ? 16 : 8);
+			channelImage.setMaxValue((1 << sampleSize) - 1);
+			int[] samples = new int[width];
+			for (int c = 0; c < channels; c ++) {
+				for (int y = 0; y < height; y ++) {
+					raster.getSamples(raster.getMinX(), raster.getMinY() + y, width, 1, c, samples);
+					for (int x = 0; x < width; x ++) channelImage.set(x, y, c, samples[x]);
+				}
+			}
+			return channelImage;
+		}
+		
+		// any other layout, one row of sRGB pixels at a time
+		ChannelImage channelImage = new ChannelImage(width, height, channels, 8);
+		int[] argb = new int[width];
+		for (int y = 0; y < height; y ++) {
+			image.getRGB(0, y, width, 1, argb, 0, width);
+			for (int x = 0; x < width; x ++) {
+				int p = argb[x];
+				if (gray) {
+					channelImage.set(x, y, 0, luma((p >>> 16) & 0xFF, (p >>> 8) & 0xFF, p & 0xFF));
+				} else {
+					channelImage.set(x, y, 0, p >>> 16);
+					channelImage.set(x, y, 1, p >>> 8);
+					channelImage.set(x, y, 2, p);
+				}
+				if (colorModel.hasAlpha()) channelImage.set(x, y, channels - 1, p >>> 24);
+			}
+		}
+		return channelImage;
+	}
+	
+	/**
+	 * Converts a color to its ITU-R BT.601 luma.
+	 * @param r the red value
+	 * @param g the green value
+	 * @param b the blue value
+	 * @return the gray value, 0 to 255
+	 */
+	private static int luma(int r, int g, int b) {
+		return (77 * r + 150 * g + 29 * b + 128) >> 8;
+	}
+	
+	/**
+	 * Scales a sample to 8 bits.
+	 * @param v the sample
+	 * @param maxValue the maximum sample value
+	 * @return the 8 bit sample
+	 */
+	private static int scale(int v, int maxValue) {
+		return (Math.min(v, maxValue) * 255 + maxValue / 2) / maxValue;
+	}
+	
+	/**
+	 * Reads a decimal number of a PGM header, skipping whitespace and comments
+	 * before it and consuming the single whitespace character after it.
+	 * @param in the stream
+	 * @return the number
+	 * @throws IOException if the header is malformed
+	 */
+	private static int readPgmNumber(InputStream in) throws IOException {
+		int c = in.read();
+		while (c == '#' || Character.isWhitespace(c)) {
+			if (c == '#') {
+				while (c != '\n' && c != '\r' && c != -1) c = in.read();
+			}
+			c = in.read();
+		}
+		if (c < '0' || c > '9') throw new IOException("Malformed PGM header");
+		long v = 0;
+		while (c >= '0' && c <= '9') {
+			v = v * 10 + (c - '0');
+			if (v > Integer.MAX_VALUE) throw new IOException("Malformed PGM header");
+			c = in.read();
+		}
+		if (!Character.isWhitespace(c)) throw new IOException("Malformed PGM header");
+		return (int) v;
+	}
+	
+	/**
+	 * Reads exactly the given number of bytes.
+	 * @param in the stream
+	 * @param b the array to fill
+	 * @param off the index of the first byte
+	 * @param len the number of bytes
+	 * @throws IOException if the stream ended
+	 */
+	private static void readFully(InputStream in, byte[] b, int off, int len) throws IOException {
+		while (len > 0) {
+			int n = in.read(b, off, len);
+			if (n < 0) throw new EOFException("Image data is truncated");
+			off += n;
+			len -= n;
+		}
+	}
+	
+	private static final int BUFFER_SIZE = 1 << 16;
+
+}
@@ -0,0 +1,144 @@
+package io;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import compression_algorithms.PixelBuffer;
+
+/**
+ * Loads images on background threads into a bounded queue, so decoding the
+ * next input images overlaps with compressing the current ones while only a
+ * few decoded images are held in memory. Images are delivered in the order
+ * they finish loading.
+ * @author JLepere2
+ * @date 06/01/2018
+ */
+public class ImagePrefetcher implements AutoCloseable {
+
+	/**
+	 * Loader of one image file.
+	 */
+	public interface Loader {
+		
+		/**
+		 * Loads an image.
+		 * @param file the image file
+		 * @return the gray values, or null if the file is not an image
+		 * @throws IOException if reading the file fails
+		 */
+		public PixelBuffer load(Path file) throws IOException;
+	}
+	
+	/**
+	 * Loaded image, or the reason it could not be loaded.
+	 */
+	public static class Entry {
+		Entry(Path file, PixelBuffer pixels, Exception error) {
+			this.file = file;
+			this.pixels = pixels;
+			this.error = error;
+		}
+		
+		/**
+		 * Gets the image file.
+		 * @return the file
+		 */
+		public Path getFile() { return file; }
+		
+		/**
+		 * Gets the loaded image.
+		 * @return the gray values, or null if the file is not an image or failed to load
+		 */
+		public PixelBuffer getPixels() { return pixels; }
+		
+		/**
+		 * Gets the error of a failed load.
+		 * @return the error, or null if the file was read
+		 */
+		public Exception getError() { return error; }
+		
+		private final Path file;
+		private final PixelBuffer pixels;
+		private final Exception error;
+	}
+	
+	/**
+	 * Starts loading the files.
+	 * @param files the files to load
+	 * @param loader the loader of each file
+	 * @param threads the number of loading threads
+	 * @param capacity the maximum number of loaded images waiting to be taken
+	 */
+	public ImagePrefetcher(List<Path> files, Loader loader, int threads, int capacity) {
+		if (threads < 1 || capacity < 1) throw new IllegalArgumentException("Threads and capacity must be positive");
+		this.files = files;
+		this.loader = loader;
+		this.queue = new ArrayBlockingQueue<>(capacity);
+		this.remaining = new AtomicInteger(files.size());
+		this.pool = Executors.newFixedThreadPool(threads, r -> {
+			Thread thread = new Thread(r, "image-prefetcher");
+			thread.setDaemon(true);
+			return thread;
+		});
+		for (int i = 0; i < threads; i ++) pool.execute(this::loadAll);
+		pool.shutdown();
+	}
+	
+	/**
+	 * Takes the next loaded image, waiting until one is ready. Safe to call from several threads.
+	 * @return the next image, or null once every file has been taken
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	public Entry take() throws InterruptedException {
+		if (remaining.getAndDecrement() <= 0) return null;
+		return queue.take();
+	}
+	
+	/**
+	 * Stops loading. Images already in the queue are dropped.
+	 */
+	public void close() {
+		pool.shutdownNow();
+		queue.clear();
+	}
+	
+	/**
+	 * Loads files until none are left, blocking while the queue is full. Every
+	 * file gets an entry, even when its load throws an error such as running
+	 * out of memory, or the consumer waiting for it would block forever.
+	 */
+	private void loadAll() {
+		int i;
+		while ((i = next.getAndIncrement()) < files.size()) {
+			Path file = files.get(i);
+			Entry entry;
+			try {
+				entry = new Entry(file, loader.load(file), null);
+			} catch (Exception e) {
+				entry = new Entry(file, null, e);
+			} catch (Throwable e) {
+				entry = new Entry(file, null, new ExecutionException(e));
+			}
+			try {
+				queue.put(entry);
+			} catch (InterruptedException e) {
+				return;
+			}
+		}
+	}
+	
+	private final List<Path> files;
+	private final Loader loader;
+	private final BlockingQueue<Entry> queue;
+	private final AtomicInteger next = new AtomicInteger();
+	private final AtomicInteger remaining;
+	private final ExecutorService pool;
+
+}
@@ -0,0 +1,57 @@
+package io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import compression_algorithms.RowSink;
+
+/**
+ * Row sink writing the decoded rows to a stream as an 8 bit raw gray image.
+ * @author JLepere2
+ * @date 06/01/2018
+ */
+public class RawRowSink implements RowSink {
+	
+	/**
+	 * Creates a raw row sink.
+	 * @param out the stream to write the pixels to
+	 */
+	public RawRowSink(OutputStream out) {
+		this.out = out;
+	}
+	
+	public void begin(int width, int height) {
+		this.width = width;
+		this.height = height;
+		this.buffer = new byte[width];
+	}
+	
+	public void writeRow(int y, int[] row) throws IOException {
+		for (int x = 0; x < width; x ++) {
+			buffer[x] = (byte) row[x];
+		}
+		out.write(buffer);
+	}
+	
+	/**
+	 * Gets the width of the decoded image.
+	 * @return the width
+	 */
+	public int getWidth() {
+		return width;
+	}
+	
+	/**
+	 * Gets the height of the decoded image.
+	 * @return the height
+	 */
+	public int getHeight() {
+		return height;
+	}
+	
+	private final OutputStream out;
+	private int width;
+	private int height;
+	private byte[] buffer;
+
+}
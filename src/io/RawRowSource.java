@@ -0,0 +1,71 @@
+package io;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import compression_algorithms.RowSource;
+
+/**
+ * Row source streaming an 8 bit raw gray image from a file, so images larger
+ * than the heap can be compressed one row at a time.
+ * @author JLepere2
+ * @date 06/01/2018
+ */
+public class RawRowSource implements RowSource, AutoCloseable {
+	
+	/**
+	 * Opens a raw image file.
+	 * @param file the file with width * height bytes, one per pixel, row by row
+	 * @param width the width of the image
+	 * @param height the height of the image
+	 * @throws IOException if the file cannot be opened or has the wrong size
+	 */
+	public RawRowSource(Path file, int width, int height) throws IOException {
+		if (Files.size(file) != (long) width * height) {
+			throw new IOException("Raw image " + file + " is not " + width + "x" + height);
+		}
+		this.file = file;
+		this.width = width;
+		this.height = height;
+		this.buffer = new byte[width];
+		reset();
+	}
+	
+	public int getWidth() {
+		return width;
+	}
+	
+	public int getHeight() {
+		return height;
+	}
+	
+	public void readRow(int[] row) throws IOException {
+		in.readFully(buffer);
+		for (int x = 0; x < width; x ++) {
+			row[x] = buffer[x] & 0xFF;
+		}
+	}
+	
+	public void reset() throws IOException {
+		close();
+		InputStream stream = Files.newInputStream(file);
+		in = new DataInputStream(new BufferedInputStream(stream, BUFFER_SIZE));
+	}
+	
+	public void close() throws IOException {
+		if (in != null) in.close();
+	}
+	
+	private final Path file;
+	private final int width;
+	private final int height;
+	private final byte[] buffer;
+	private DataInputStream in;
+	
+	private static final int BUFFER_SIZE = 1 << 16;
+
+}
@@ -1,20 +1,30 @@
 package io;
 
+import java.awt.Transparency;
+import java.awt.color.ColorSpace;
 import java.awt.image.BufferedImage;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
-import java.io.FileWriter;
+import java.awt.image.ColorModel;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.WritableRaster;
+import java.io.File;
 import java.io.IOException;
-import java.nio.file.Files;
+import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.Map;
-import java.util.Scanner;
+import java.nio.file.StandardOpenOption;
 
 import javax.imageio.ImageIO;
 import javax.swing.JFileChooser;
 import javax.swing.JOptionPane;
 import javax.swing.filechooser.FileNameExtensionFilter;
 
+import compression_algorithms.ChannelImage;
+import compression_algorithms.PixelBuffer;
+
 /**
  * IO Utilities
  * @author JLepere2
@@ -25,31 +35,73 @@ public class Utilities {
 	/**
 	 * Gets the default image to display.
 	 * @return the default image.
-	 * @throws IOException 
+	 * @throws IOException
 	 */
-	public static int[][] getDefaultImage() throws IOException {
-	
-		// read the image into a buffered image object
-		BufferedImage buffImage = ImageIO.read(Utilities.class.getResourceAsStream(DEFAULT_IMAGE_NAME));
+	public static PixelBuffer getDefaultImage() throws IOException {
 		
-	 	// integer matrix representation of the image
-	 	int[][] image = new int[buffImage.getHeight()][buffImage.getWidth()];
-		for (int y = 0; y < image.length; y ++) {
-			for (int x = 0; x < image[0].length; x ++) {
-				image[y][x] = buffImage.getRGB(x, y) & 0xff;
+		// read the image into a pixel buffer
+		try (InputStream in = Utilities.class.getResourceAsStream(DEFAULT_IMAGE_NAME)) {
+			return ImageLoader.load(in);
+		}
+	}
+	
+	/**
+	 * Saves a pixel buffer as a PNG image, copying whole rows into the raster.
+	 * @param pixels the image to save
+	 * @param file the file to save to
+	 * @throws IOException if writing the file fails
+	 */
+	public static void savePixels(PixelBuffer pixels, File file) throws IOException {
+		int width = pixels.getWidth();
+		BufferedImage buffImage = new BufferedImage(width, pixels.getHeight(), BufferedImage.TYPE_BYTE_GRAY);
+		pixels.copyTo(((DataBufferByte) buffImage.getRaster().getDataBuffer()).getData(), 0, width);
+		ImageIO.write(buffImage, "png", file);
+	}
+	
+	/**
+	 * Saves a channel image as a PNG image with 8 or 16 bit samples. Samples
+	 * with a maximum value below the bit depth, such as 12 bit samples, are
+	 * scaled to the full range so the image keeps its brightness.
+	 * @param image the image to save
+	 * @param file the file to save to
+	 * @throws IOException if writing the file fails
+	 */
+	public static void saveChannels(ChannelImage image, File file) throws IOException {
+		int width = image.getWidth();
+		int height = image.getHeight();
+		int channels = image.getChannels();
+		
+		// gray or sRGB color model of the bit depth, with alpha for 2 or 4 channels
+		ColorSpace colorSpace = ColorSpace.getInstance(channels < 3 ? ColorSpace.CS_GRAY : ColorSpace.CS_sRGB);
+		boolean alpha = channels == 2 || channels == 4;
+		ColorModel colorModel = new ComponentColorModel(colorSpace, alpha, false,
+				alpha ? Transparency.TRANSLUCENT : Transparency.OPAQUE,
+				image.getBitDepth() == 16 ? DataBuffer.TYPE_USHORT : DataBuffer.TYPE_BYTE);
+		WritableRaster raster = colorModel.createCompatibleWritableRaster(width, height);
+		
+		// copy the samples of each band one row at a time, scaled to the full range
+		int maxValue = image.getMaxValue();
+		int fullRange = (1 << image.getBitDepth()) - 1;
+		int[] samples = new int[width];
+		for (int c = 0; c < channels; c ++) {
+			for (int y = 0; y < height; y ++) {
+				for (int x = 0; x < width; x ++) {
+					int sample = image.get(x, y, c);
+					if (maxValue < fullRange) sample = (int) (((long) Math.min(sample, maxValue) * fullRange + maxValue / 2) / maxValue);
+					samples[x] = sample;
+				}
+				raster.setSamples(0, y, width, 1, c, samples);
 			}
 		}
-		
-		// return the image
-		return image;
+		ImageIO.write(new BufferedImage(colorModel, raster, false, null), "png", file);
 	}
 	
 	/**
-	 * Saves a byte array to file.
-	 * @param byteArray the byte array to save
+	 * Chooses the file to save a compressed image to.
 	 * @param extension the filename extension
+	 * @return the file, or null if cancelled
 	 */
-	public static void saveByteArray(byte[] byteArray, String extension) {
+	public static Path chooseSaveFile(String extension) {
 		
 		// file chooser
 		JFileChooser fileChooser = new JFileChooser();
@@ -62,24 +114,18 @@ public class Utilities {
 			if (!filename.endsWith(extension)) {
 				filename += extension;
 			}
-			
-			// try saving the file
-			try (FileOutputStream fos = new FileOutputStream(filename)) {
-				   fos.write(byteArray);
-			} catch (Exception e) {
-				JOptionPane.showMessageDialog(null, "There was an error saving the file!", "SAVING ERROR", JOptionPane.ERROR_MESSAGE);
-			}
-			
+			return Paths.get(filename);
 		}
 		
+		return null;
 	}
 	
 	/**
-	 * Loads a byte array.
+	 * Chooses a compressed file to load.
 	 * @param extension the extension of the filter to filter for.
-	 * @return the loaded byte array.
+	 * @return the file, or null if cancelled
 	 */
-	public static byte[] loadByteArray(String extension) {
+	public static Path chooseOpenFile(String extension) {
 		
 		// file chooser
 		JFileChooser fileChooser = new JFileChooser();
@@ -87,120 +133,54 @@ public class Utilities {
 		
 		// show file chooser
 		if (fileChooser.showOpenDialog(null) == JFileChooser.APPROVE_OPTION) {
-			
-			// get the filename of the selected file to save
-			String filename = fileChooser.getSelectedFile().getAbsolutePath();
-			
-			// try reading bytes
-			try {
-				byte[] data = Files.readAllBytes(Paths.get(filename));
-				return data;
-			} catch (IOException e) {
-				JOptionPane.showMessageDialog(null, "There was an error loading the file!", "LOADING ERROR", JOptionPane.ERROR_MESSAGE);
-			}
+			return fileChooser.getSelectedFile().toPath();
 		}
 		
 		return null;
 	}
 	
 	/**
-	 * Shows statistics.
-	 * @param type Compression or Decompression
-	 * @param imageTime the time it took to compress/decompress the image.
-	 * @param numBytes the number of bytes in compression (0 if decompression)
+	 * Maps a whole file read only, so decoders read the page cache in place
+	 * instead of copying the file onto the heap. The mapping is released when
+	 * the buffer is garbage collected.
+	 * @param file the file to map
+	 * @return the mapped bytes
+	 * @throws IOException if the file cannot be opened or is larger than 2 GB
 	 */
-	public static void showStatistics(String type, long time, int numBytes) {
-		
-		String message = "Execution Time: " + time + "ms";
-		if (numBytes != 0) {
-			message += "\nCompression Ratio: " + (512.0 * 512.0) / numBytes;
+	public static MappedByteBuffer mapFile(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			long size = channel.size();
+			if (size > Integer.MAX_VALUE) throw new IOException("File is too large to map: " + file);
+			return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
 		}
-		
-		JOptionPane.showMessageDialog(null, message, type + " STATISTICS", JOptionPane.INFORMATION_MESSAGE);
 	}
 	
 	/**
-	 * Saves huffman code and image to csv.
-	 * @param codings the codings
-	 * @param image the image
-	 * @param extension the file extension
+	 * Shows an error message.
+	 * @param message the message
+	 * @param title the title of the dialog
 	 */
-	public static void saveHuffmanCSV(Map<Integer, String> codings, int[][] image, String extension) {
-		
-		// file chooser
-		JFileChooser fileChooser = new JFileChooser();
-		
-		// show file chooser
-		if (fileChooser.showSaveDialog(null) == JFileChooser.APPROVE_OPTION) {
-			
-			// get the filename of the selected file to save
-			String filename = fileChooser.getSelectedFile().getAbsolutePath();
-			if (!filename.endsWith(extension)) {
-				filename += extension;
-			}
-			
-			try {
-				
-				// file writer
-				FileWriter writer = new FileWriter(filename);
-				
-				// write number of codings
-				writer.write(""+codings.size());
-				
-				// write the codings
-				for (Integer key : codings.keySet()) {
-					writer.write("\n" + codings.get(key) + "," + key);
-				}
-				
-				// write the image
-				for (int y = 0; y < image.length; y ++) {
-					writer.write("\n");
-					for (int x = 0; x < image[0].length; x ++) {
-						String gv = codings.get(image[y][x]);
-						if (x == 0) {
-							writer.write(gv);
-						} else {
-							writer.write("," + gv);
-						}
-					}
-				}
-				
-				// close the writer
-				writer.close();
-				
-			} catch (IOException e) {
-				JOptionPane.showMessageDialog(null, "There was an error saving the file!", "SAVING ERROR", JOptionPane.ERROR_MESSAGE);
-			}
-			
-		}
-		
+	public static void showError(String message, String title) {
+		JOptionPane.showMessageDialog(null, message, title, JOptionPane.ERROR_MESSAGE);
 	}
 	
 	/**
-	 * Loads a scanner for huffman csv.
-	 * @param extension the extension of the filter to filter for.
-	 * @return the huffman csv scanner.
+	 * Shows statistics.
+	 * @param type Compression or Decompression
+	 * @param nanos the time it took to compress/decompress the image, in nanoseconds.
+	 * @param rawBytes the number of pixel bytes in the image.
+	 * @param numBytes the number of bytes in compression (0 if decompression)
 	 */
-	public static Scanner loadHuffmanCSV(String extension) {
-		
-		// file chooser
-		JFileChooser fileChooser = new JFileChooser();
-		fileChooser.setFileFilter(new FileNameExtensionFilter(extension, extension.substring(1)));
+	public static void showStatistics(String type, long nanos, long rawBytes, long numBytes) {
 		
-		// show file chooser
-		if (fileChooser.showOpenDialog(null) == JFileChooser.APPROVE_OPTION) {
-			
-			try {
-				// return scanner
-				return new Scanner(fileChooser.getSelectedFile());
-			} catch (FileNotFoundException e) {
-				JOptionPane.showMessageDialog(null, "There was an error loading the file!", "LOADING ERROR", JOptionPane.ERROR_MESSAGE);
-			}
+		String message = String.format("Execution Time: %.3f ms", nanos / 1e6);
+		if (numBytes != 0) {
+			message += "\nCompression Ratio: " + (double) rawBytes / numBytes;
 		}
 		
-		return null;
+		JOptionPane.showMessageDialog(null, message, type + " STATISTICS", JOptionPane.INFORMATION_MESSAGE);
 	}
 	
 	private static final String DEFAULT_IMAGE_NAME = "lena.jpg";
-	
+
 }
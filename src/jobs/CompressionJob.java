@@ -0,0 +1,182 @@
+package jobs;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * A compression or decompression running in the background.
+ *
+ * The job counts the rows done as the algorithm reads or writes them, so its
+ * progress can be polled from any thread. Cancelling the job interrupts it,
+ * and it stops at the next row.
+ * @author JLepere2
+ * @date 06/01/2018
+ */
+public class CompressionJob<T> implements RunnableFuture<T> {
+
+	/**
+	 * Work of a job, which reports its progress to the job.
+	 */
+	public interface Task<T> {
+		
+		/**
+		 * Runs the work.
+		 * @param job the job to report progress to
+		 * @return the result of the job
+		 * @throws Exception if the work fails
+		 */
+		public T run(CompressionJob<T> job) throws Exception;
+	}
+	
+	/**
+	 * Creates a job.
+	 * @param name the name of the job
+	 * @param task the work of the job
+	 */
+	public CompressionJob(String name, Task<T> task) {
+		this.name = name;
+		this.future = new FutureTask<T>(() -> task.run(this)) {
+			protected void done() {
+				finish();
+			}
+		};
+	}
+	
+	public void run() {
+		startNanos = System.nanoTime();
+		future.run();
+	}
+	
+	/**
+	 * Cancels the job. A running job is interrupted and stops at the next row.
+	 */
+	public boolean cancel(boolean mayInterruptIfRunning) {
+		return future.cancel(mayInterruptIfRunning);
+	}
+	
+	public boolean isCancelled() {
+		return future.isCancelled();
+	}
+	
+	public boolean isDone() {
+		return future.isDone();
+	}
+	
+	public T get() throws InterruptedException, ExecutionException {
+		return future.get();
+	}
+	
+	public T get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+		return future.get(timeout, unit);
+	}
+	
+	/**
+	 * Runs an action once the job is done, failed or cancelled, on the thread
+	 * finishing the job, or right away if it is already done.
+	 * @param action the action
+	 */
+	public void whenDone(Runnable action) {
+		synchronized (callbacks) {
+			if (!finished) {
+				callbacks.add(action);
+				return;
+			}
+		}
+		action.run();
+	}
+	
+	/**
+	 * Sets the number of rows the job will process.
+	 * @param rows the total number of rows
+	 */
+	public void setRows(int rows) {
+		this.rows = rows;
+	}
+	
+	/**
+	 * Records a processed row, stopping the job if it was cancelled.
+	 * @param row the index of the row within the current pass
+	 * @throws CancellationException if the job was cancelled
+	 */
+	public void rowDone(int row) {
+		if (future.isCancelled()) throw new CancellationException(name + " was cancelled");
+		rowsDone = row + 1;
+	}
+	
+	/**
+	 * Gets the number of rows done in the current pass.
+	 * @return the number of rows done
+	 */
+	public int getRowsDone() {
+		return rowsDone;
+	}
+	
+	/**
+	 * Gets the number of rows the job processes.
+	 * @return the total number of rows, 0 until known
+	 */
+	public int getRows() {
+		return rows;
+	}
+	
+	/**
+	 * Gets the progress of the current pass.
+	 * @return the fraction of rows done, from 0 to 1
+	 */
+	public double getProgress() {
+		int total = rows;
+		return total == 0 ? (isDone() ? 1 : 0) : Math.min(1, (double) rowsDone / total);
+	}
+	
+	/**
+	 * Gets the time the job has run for.
+	 * @return the running time in nanoseconds, 0 if it has not started
+	 */
+	public long getNanos() {
+		if (startNanos == 0) return 0;
+		return (endNanos != 0 ? endNanos : System.nanoTime()) - startNanos;
+	}
+	
+	/**
+	 * Gets the name of the job.
+	 * @return the name
+	 */
+	public String getName() {
+		return name;
+	}
+	
+	public String toString() {
+		return name;
+	}
+	
+	/**
+	 * Records the end of the job and runs the callbacks.
+	 */
+	private void finish() {
+		if (startNanos != 0) endNanos = System.nanoTime();
+		List<Runnable> actions;
+		synchronized (callbacks) {
+			finished = true;
+			actions = new ArrayList<>(callbacks);
+			callbacks.clear();
+		}
+		for (Runnable action : actions) action.run();
+	}
+	
+	private final String name;
+	private final FutureTask<T> future;
+	private final List<Runnable> callbacks = new ArrayList<>();
+	private boolean finished;
+	
+	private volatile int rows;
+	private volatile int rowsDone;
+	private volatile long startNanos;
+	private volatile long endNanos;
+
+}
@@ -0,0 +1,172 @@
+package jobs;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import compression_algorithms.CompressionAlgorithm;
+import compression_algorithms.RowSink;
+import compression_algorithms.RowSource;
+
+/**
+ * Executor running compression and decompression jobs in the background.
+ *
+ * Jobs run on virtual threads when the JVM has them, or else on a bounded
+ * pool of daemon threads, so any number of jobs on different images may be
+ * started at once. Each job wraps the rows of its image to report progress
+ * and to stop at the next row once cancelled.
+ * @author JLepere2
+ * @date 06/01/2018
+ */
+public class CompressionJobs implements AutoCloseable {
+
+	/**
+	 * Creates an executor on virtual threads, or on a pool of one thread per
+	 * processor if the JVM has no virtual threads.
+	 */
+	public CompressionJobs() {
+		ExecutorService virtual = newVirtualThreadExecutor();
+		this.executor = virtual != null ? virtual : newPool(Runtime.getRuntime().availableProcessors(), THREAD_NAME);
+	}
+	
+	/**
+	 * Creates an executor on a bounded pool.
+	 * @param threads the number of jobs to run at once, further jobs are queued
+	 */
+	public CompressionJobs(int threads) {
+		if (threads < 1) throw new IllegalArgumentException("threads must be positive");
+		this.executor = newPool(threads, THREAD_NAME);
+	}
+	
+	/**
+	 * Starts compressing an image into a file. The file is deleted if the job
+	 * fails or is cancelled.
+	 * @param algorithm the compression algorithm
+	 * @param source the rows of the image
+	 * @param file the file to write
+	 * @return the job, whose result is the size of the compressed file in bytes
+	 */
+	public CompressionJob<Long> compress(CompressionAlgorithm algorithm, RowSource source, Path file) {
+		return submit(new CompressionJob<>("Compress " + file.getFileName() + " with " + algorithm, job -> {
+			job.setRows(source.getHeight());
+			try {
+				return algorithm.encode(new ProgressRowSource(source, job), file);
+			} catch (Exception | Error e) {
+				Files.deleteIfExists(file);
+				throw e;
+			}
+		}));
+	}
+	
+	/**
+	 * Starts decompressing a file.
+	 * @param algorithm the compression algorithm
+	 * @param file the compressed file
+	 * @param sink the sink receiving the decoded rows
+	 * @return the job
+	 */
+	public CompressionJob<Void> decompress(CompressionAlgorithm algorithm, Path file, RowSink sink) {
+		return submit(new CompressionJob<>("Decompress " + file.getFileName() + " with " + algorithm, job -> {
+			algorithm.decode(file, new ProgressRowSink(sink, job));
+			return null;
+		}));
+	}
+	
+	/**
+	 * Starts a job.
+	 * @param job the job
+	 * @return the job
+	 */
+	public <T> CompressionJob<T> submit(CompressionJob<T> job) {
+		executor.execute(job);
+		return job;
+	}
+	
+	/**
+	 * Stops accepting jobs. Running and queued jobs are finished.
+	 */
+	public void close() {
+		executor.shutdown();
+	}
+	
+	/**
+	 * Creates an executor starting a virtual thread per task, looked up
+	 * reflectively so the sources still build for Java 8.
+	 * @return the executor, or null if the JVM has no virtual threads
+	 */
+	public static ExecutorService newVirtualThreadExecutor() {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			return null;
+		}
+	}
+	
+	/**
+	 * Creates a pool of daemon threads, which do not keep the JVM alive.
+	 * @param threads the number of threads
+	 * @param name the prefix of the thread names
+	 * @return the pool
+	 */
+	public static ExecutorService newPool(int threads, String name) {
+		AtomicInteger count = new AtomicInteger();
+		ThreadFactory factory = task -> {
+			Thread thread = new Thread(task, name + "-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		};
+		return Executors.newFixedThreadPool(threads, factory);
+	}
+	
+	/*
+	 * Row source reporting each row read to the job, counting from 0 again on each pass
+	 */
+	static class ProgressRowSource implements RowSource {
+		ProgressRowSource(RowSource source, CompressionJob<?> job) {
+			this.source = source;
+			this.job = job;
+		}
+		public int getWidth() { return source.getWidth(); }
+		public int getHeight() { return source.getHeight(); }
+		public void readRow(int[] row) throws IOException {
+			source.readRow(row);
+			job.rowDone(y ++);
+		}
+		public void reset() throws IOException {
+			source.reset();
+			y = 0;
+		}
+		final RowSource source;
+		final CompressionJob<?> job;
+		int y;
+	}
+	
+	/*
+	 * Row sink reporting each row written to the job
+	 */
+	static class ProgressRowSink implements RowSink {
+		ProgressRowSink(RowSink sink, CompressionJob<?> job) {
+			this.sink = sink;
+			this.job = job;
+		}
+		public void begin(int width, int height) throws IOException {
+			job.setRows(height);
+			sink.begin(width, height);
+		}
+		public void writeRow(int y, int[] row) throws IOException {
+			sink.writeRow(y, row);
+			job.rowDone(y);
+		}
+		final RowSink sink;
+		final CompressionJob<?> job;
+	}
+	
+	private final ExecutorService executor;
+	
+	private static final String THREAD_NAME = "compression-job";
+
+}
@@ -0,0 +1,91 @@
+package metrics;
+
+/**
+ * Metrics of one compression algorithm: phase timers and latency histograms,
+ * byte counters in both directions and the aggregate compression ratio.
+ * @author JLepere2
+ * @date 06/01/2018
+ */
+public class CompressionMetrics {
+
+	CompressionMetrics(MetricsRegistry registry, String algorithm) {
+		String[] labels = { "algorithm", algorithm };
+		analysis = registry.histogram("compression_phase_seconds", "Time spent in each phase of compressing an image",
+				"algorithm", algorithm, "phase", "analysis");
+		encode = registry.histogram("compression_phase_seconds", "Time spent in each phase of compressing an image",
+				"algorithm", algorithm, "phase", "encode");
+		write = registry.histogram("compression_phase_seconds", "Time spent in each phase of compressing an image",
+				"algorithm", algorithm, "phase", "write");
+		compression = registry.histogram("compression_seconds", "Latency of compressing an image", labels);
+		decompression = registry.histogram("decompression_seconds", "Latency of decompressing an image", labels);
+		compressedImages = registry.counter("compression_images_total", "Images compressed", labels);
+		decompressedImages = registry.counter("decompression_images_total", "Images decompressed", labels);
+		failures = registry.counter("compression_failures_total", "Failed compressions and decompressions", labels);
+		rawBytesIn = registry.counter("compression_bytes_in_total", "Raw pixel bytes read by compression", labels);
+		compressedBytesOut = registry.counter("compression_bytes_out_total", "Compressed bytes written by compression", labels);
+		compressedBytesIn = registry.counter("decompression_bytes_in_total", "Compressed bytes read by decompression", labels);
+		rawBytesOut = registry.counter("decompression_bytes_out_total", "Raw pixel bytes written by decompression", labels);
+		registry.gauge("compression_ratio", "Raw bytes over compressed bytes of all compressed images", this::getRatio, labels);
+	}
+	
+	/**
+	 * Records a compressed image.
+	 * @param analysisNanos the time spent analysing the image before encoding
+	 * @param encodeNanos the time spent encoding
+	 * @param writeNanos the time spent writing the compressed bytes
+	 * @param rawBytes the number of pixel bytes read
+	 * @param compressedBytes the number of compressed bytes written
+	 */
+	public void recordCompression(long analysisNanos, long encodeNanos, long writeNanos, long rawBytes, long compressedBytes) {
+		analysis.record(analysisNanos);
+		encode.record(encodeNanos);
+		write.record(writeNanos);
+		compression.record(analysisNanos + encodeNanos + writeNanos);
+		compressedImages.increment();
+		rawBytesIn.add(rawBytes);
+		compressedBytesOut.add(compressedBytes);
+	}
+	
+	/**
+	 * Records a decompressed image.
+	 * @param nanos the time spent decompressing
+	 * @param compressedBytes the number of compressed bytes read
+	 * @param rawBytes the number of pixel bytes written
+	 */
+	public void recordDecompression(long nanos, long compressedBytes, long rawBytes) {
+		decompression.record(nanos);
+		decompressedImages.increment();
+		compressedBytesIn.add(compressedBytes);
+		rawBytesOut.add(rawBytes);
+	}
+	
+	/**
+	 * Records a failed compression or decompression.
+	 */
+	public void recordFailure() {
+		failures.increment();
+	}
+	
+	/**
+	 * Gets the aggregate compression ratio of the compressed images.
+	 * @return the raw bytes over the compressed bytes, NaN before the first image
+	 */
+	public double getRatio() {
+		long out = compressedBytesOut.get();
+		return out == 0 ? Double.NaN : (double) rawBytesIn.get() / out;
+	}
+	
+	private final Histogram analysis;
+	private final Histogram encode;
+	private final Histogram write;
+	private final Histogram compression;
+	private final Histogram decompression;
+	private final Counter compressedImages;
+	private final Counter decompressedImages;
+	private final Counter failures;
+	private final Counter rawBytesIn;
+	private final Counter compressedBytesOut;
+	private final Counter compressedBytesIn;
+	private final Counter rawBytesOut;
+
+}
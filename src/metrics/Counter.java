@@ -0,0 +1,53 @@
+package metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Monotonically increasing count, such as bytes or images processed.
+ * @author JLepere2
+ * @date 06/01/2018
+ */
+public class Counter extends Metric {
+
+	Counter(String name, String help, String[] labels) {
+		super(name, help, labels);
+	}
+	
+	/**
+	 * Increments the count by one.
+	 */
+	public void increment() {
+		count.increment();
+	}
+	
+	/**
+	 * Adds to the count.
+	 * @param n the amount to add, not negative
+	 */
+	public void add(long n) {
+		count.add(n);
+	}
+	
+	/**
+	 * Gets the count.
+	 * @return the count
+	 */
+	public long get() {
+		return count.sum();
+	}
+	
+	public String getType() {
+		return "counter";
+	}
+	
+	void appendPrometheus(StringBuilder out) {
+		out.append(getName()).append(prometheusLabels(null, null)).append(' ').append(get()).append('\n');
+	}
+	
+	void appendJsonFields(StringBuilder out) {
+		out.append(",\"value\":").append(get());
+	}
+	
+	private final LongAdder count = new LongAdder();
+
+}
@@ -0,0 +1,40 @@
+package metrics;
+
+import java.util.function.DoubleSupplier;
+
+/**
+ * Value computed when the metrics are exported, such as a compression ratio.
+ * @author JLepere2
+ * @date 06/01/2018
+ */
+public class Gauge extends Metric {
+
+	Gauge(String name, String help, String[] labels, DoubleSupplier value) {
+		super(name, help, labels);
+		this.value = value;
+	}
+	
+	/**
+	 * Gets the current value.
+	 * @return the value
+	 */
+	public double get() {
+		return value.getAsDouble();
+	}
+	
+	public String getType() {
+		return "gauge";
+	}
+	
+	void appendPrometheus(StringBuilder out) {
+		out.append(getName()).append(prometheusLabels(null, null)).append(' ').append(format(get())).append('\n');
+	}
+	
+	void appendJsonFields(StringBuilder out) {
+		double v = get();
+		out.append(",\"value\":").append(Double.isNaN(v) || Double.isInfinite(v) ? "null" : Double.toString(v));
+	}
+	
+	private final DoubleSupplier value;
+
+}
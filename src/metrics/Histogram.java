@@ -0,0 +1,116 @@
+package metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency histogram with exponential buckets from 1 microsecond to about 68
+ * seconds. Durations are recorded in nanoseconds and exported in seconds.
+ * @author JLepere2
+ * @date 06/01/2018
+ */
+public class Histogram extends Metric {
+
+	Histogram(String name, String help, String[] labels) {
+		super(name, help, labels);
+		this.buckets = new AtomicLongArray(NUM_BUCKETS + 1);
+	}
+	
+	/**
+	 * Records a duration.
+	 * @param nanos the duration in nanoseconds
+	 */
+	public void record(long nanos) {
+		if (nanos < 0) nanos = 0;
+		
+		// bucket i holds durations up to 2^i microseconds, the last one the rest
+		long micros = (nanos + 999) / 1000;
+		int bucket = micros <= 1 ? 0 : 64 - Long.numberOfLeadingZeros(micros - 1);
+		buckets.incrementAndGet(Math.min(bucket, NUM_BUCKETS));
+		count.increment();
+		sum.add(nanos);
+	}
+	
+	/**
+	 * Gets the number of recorded durations.
+	 * @return the count
+	 */
+	public long getCount() {
+		return count.sum();
+	}
+	
+	/**
+	 * Gets the total of the recorded durations.
+	 * @return the sum in nanoseconds
+	 */
+	public long getSumNanos() {
+		return sum.sum();
+	}
+	
+	/**
+	 * Estimates a quantile from the bucket bounds.
+	 * @param q the quantile, 0 to 1
+	 * @return the upper bound of the bucket holding the quantile, in nanoseconds
+	 */
+	public long quantileNanos(double q) {
+		long total = 0;
+		for (int i = 0; i <= NUM_BUCKETS; i ++) total += buckets.get(i);
+		long rank = (long) Math.ceil(q * total);
+		long seen = 0;
+		for (int i = 0; i < NUM_BUCKETS; i ++) {
+			seen += buckets.get(i);
+			if (seen >= rank && seen > 0) return upperBoundNanos(i);
+		}
+		return Long.MAX_VALUE;
+	}
+	
+	public String getType() {
+		return "histogram";
+	}
+	
+	void appendPrometheus(StringBuilder out) {
+		long cumulative = 0;
+		for (int i = 0; i < NUM_BUCKETS; i ++) {
+			cumulative += buckets.get(i);
+			out.append(getName()).append("_bucket").append(prometheusLabels("le", format(upperBoundNanos(i) / 1e9)))
+					.append(' ').append(cumulative).append('\n');
+		}
+		cumulative += buckets.get(NUM_BUCKETS);
+		out.append(getName()).append("_bucket").append(prometheusLabels("le", "+Inf")).append(' ').append(cumulative).append('\n');
+		out.append(getName()).append("_sum").append(prometheusLabels(null, null)).append(' ').append(format(getSumNanos() / 1e9)).append('\n');
+		out.append(getName()).append("_count").append(prometheusLabels(null, null)).append(' ').append(getCount()).append('\n');
+	}
+	
+	void appendJsonFields(StringBuilder out) {
+		out.append(",\"count\":").append(getCount());
+		out.append(",\"sum_seconds\":").append(getSumNanos() / 1e9);
+		out.append(",\"p50_seconds\":").append(quantileSeconds(0.5));
+		out.append(",\"p99_seconds\":").append(quantileSeconds(0.99));
+	}
+	
+	/**
+	 * Formats a quantile for JSON.
+	 * @param q the quantile
+	 * @return the quantile in seconds, or null if unknown
+	 */
+	private String quantileSeconds(double q) {
+		long nanos = quantileNanos(q);
+		return getCount() == 0 || nanos == Long.MAX_VALUE ? "null" : Double.toString(nanos / 1e9);
+	}
+	
+	/**
+	 * Gets the upper bound of a bucket.
+	 * @param bucket the bucket
+	 * @return the bound in nanoseconds
+	 */
+	private static long upperBoundNanos(int bucket) {
+		return 1000L << bucket;
+	}
+	
+	private final AtomicLongArray buckets;
+	private final LongAdder count = new LongAdder();
+	private final LongAdder sum = new LongAdder();
+	
+	private static final int NUM_BUCKETS = 27;
+
+}
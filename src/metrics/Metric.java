@@ -0,0 +1,134 @@
+package metrics;
+
+/**
+ * Base class of the metrics held by a registry. A metric is identified by its
+ * name and label values, and knows how to export itself.
+ * @author JLepere2
+ * @date 06/01/2018
+ */
+public abstract class Metric {
+
+	/**
+	 * Creates a metric.
+	 * @param name the metric name
+	 * @param help the description of the metric
+	 * @param labels alternating label names and values
+	 */
+	protected Metric(String name, String help, String[] labels) {
+		if (labels.length % 2 != 0) throw new IllegalArgumentException("Labels must be name value pairs");
+		this.name = name;
+		this.help = help;
+		this.labels = labels.clone();
+		this.key = key(name, labels);
+	}
+	
+	/**
+	 * Gets the metric name.
+	 * @return the name
+	 */
+	public String getName() {
+		return name;
+	}
+	
+	/**
+	 * Gets the key of the metric in the registry.
+	 * @return the name followed by the label pairs
+	 */
+	String getKey() {
+		return key;
+	}
+	
+	/**
+	 * Gets the description of the metric.
+	 * @return the help text
+	 */
+	public String getHelp() {
+		return help;
+	}
+	
+	/**
+	 * Gets the Prometheus type of the metric.
+	 * @return counter, gauge or histogram
+	 */
+	public abstract String getType();
+	
+	/**
+	 * Appends the Prometheus sample lines of the metric, without the HELP and TYPE lines.
+	 * @param out the text to append to
+	 */
+	abstract void appendPrometheus(StringBuilder out);
+	
+	/**
+	 * Appends the fields of the metric value to a JSON object.
+	 * @param out the text to append to, positioned after the common fields
+	 */
+	abstract void appendJsonFields(StringBuilder out);
+	
+	/**
+	 * Formats the labels in Prometheus syntax.
+	 * @param extraName an extra label name, or null
+	 * @param extraValue the extra label value
+	 * @return the label set including braces, or an empty string
+	 */
+	String prometheusLabels(String extraName, String extraValue) {
+		if (labels.length == 0 && extraName == null) return "";
+		StringBuilder sb = new StringBuilder("{");
+		for (int i = 0; i < labels.length; i += 2) {
+			if (i > 0) sb.append(',');
+			sb.append(labels[i]).append("=\"").append(escape(labels[i + 1])).append('"');
+		}
+		if (extraName != null) {
+			if (labels.length > 0) sb.append(',');
+			sb.append(extraName).append("=\"").append(extraValue).append('"');
+		}
+		return sb.append('}').toString();
+	}
+	
+	/**
+	 * Appends the name and labels as JSON fields.
+	 * @param out the text to append to
+	 */
+	void appendJsonIdentity(StringBuilder out) {
+		out.append("\"name\":\"").append(escape(name)).append('"');
+		out.append(",\"type\":\"").append(getType()).append('"');
+		for (int i = 0; i < labels.length; i += 2) {
+			out.append(",\"").append(escape(labels[i])).append("\":\"").append(escape(labels[i + 1])).append('"');
+		}
+	}
+	
+	/**
+	 * Escapes quotes, backslashes and newlines for both export formats.
+	 * @param s the string
+	 * @return the escaped string
+	 */
+	static String escape(String s) {
+		return s.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+	}
+	
+	/**
+	 * Formats a double for export.
+	 * @param v the value
+	 * @return the text of the value
+	 */
+	static String format(double v) {
+		if (Double.isNaN(v)) return "NaN";
+		if (Double.isInfinite(v)) return v > 0 ? "+Inf" : "-Inf";
+		return Double.toString(v);
+	}
+	
+	/**
+	 * Gets the key of a metric in the registry.
+	 * @param name the metric name
+	 * @param labels alternating label names and values
+	 * @return the key
+	 */
+	static String key(String name, String[] labels) {
+		return name + "\u0000" + String.join("\u0000", labels);
+	}
+	
+	private final String name;
+	private final String help;
+	private final String[] labels;
+	private final String key;
+
+}
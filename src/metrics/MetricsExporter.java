@@ -0,0 +1,162 @@
+package metrics;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Exports a registry to a local file on a schedule, or serves it over HTTP.
+ * A Prometheus file is replaced atomically on each export, as expected by a
+ * textfile collector, while JSON lines are appended as a time series.
+ * @author JLepere2
+ * @date 06/01/2018
+ */
+public class MetricsExporter implements AutoCloseable {
+
+	/**
+	 * Export formats.
+	 */
+	public enum Format {
+		PROMETHEUS, JSON;
+		
+		/**
+		 * Gets the format of a file from its extension, JSON lines for .json
+		 * and .jsonl, the Prometheus text format otherwise.
+		 * @param file the file
+		 * @return the format
+		 */
+		public static Format forFile(Path file) {
+			String name = file.getFileName().toString().toLowerCase();
+			return name.endsWith(".json") || name.endsWith(".jsonl") ? JSON : PROMETHEUS;
+		}
+	}
+	
+	/**
+	 * Periodically exports the registry to a file. The file is written once
+	 * more when the exporter is closed.
+	 * @param registry the registry to export
+	 * @param file the file to write
+	 * @param format the export format
+	 * @param periodMillis the time between exports in milliseconds
+	 * @return the exporter
+	 */
+	public static MetricsExporter toFile(MetricsRegistry registry, Path file, Format format, long periodMillis) {
+		ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "metrics-exporter");
+			thread.setDaemon(true);
+			return thread;
+		});
+		MetricsExporter exporter = new MetricsExporter(registry, file, format, scheduler, null);
+		scheduler.scheduleAtFixedRate(() -> {
+			try {
+				exporter.export();
+			} catch (IOException e) {
+				System.err.println("Failed to export metrics: " + e.getMessage());
+			}
+		}, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+		return exporter;
+	}
+	
+	/**
+	 * Serves the registry on the loopback interface, in the Prometheus text
+	 * format at /metrics and as JSON lines at /metrics.json.
+	 * @param registry the registry to serve
+	 * @param port the port, 0 for any free port
+	 * @return the exporter
+	 * @throws IOException if the port cannot be bound
+	 */
+	public static MetricsExporter serve(MetricsRegistry registry, int port) throws IOException {
+		HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+		server.createContext("/metrics", exchange -> {
+			boolean json = exchange.getRequestURI().getPath().endsWith(".json");
+			String body = json ? registry.toJsonLines(System.currentTimeMillis()) : registry.toPrometheus();
+			respond(exchange, json ? "application/x-ndjson" : "text/plain; version=0.0.4", body);
+		});
+		server.start();
+		return new MetricsExporter(registry, null, null, null, server);
+	}
+	
+	private MetricsExporter(MetricsRegistry registry, Path file, Format format, ScheduledExecutorService scheduler, HttpServer server) {
+		this.registry = registry;
+		this.file = file;
+		this.format = format;
+		this.scheduler = scheduler;
+		this.server = server;
+	}
+	
+	/**
+	 * Writes the registry to the file now.
+	 * @throws IOException if writing the file fails
+	 */
+	public synchronized void export() throws IOException {
+		if (file == null) return;
+		if (format == Format.JSON) {
+			byte[] lines = registry.toJsonLines(System.currentTimeMillis()).getBytes(StandardCharsets.UTF_8);
+			Files.write(file, lines, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+		} else {
+			// write a temporary file next to the target and move it into place
+			Path parent = file.toAbsolutePath().getParent();
+			Path temp = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+			try {
+				Files.write(temp, registry.toPrometheus().getBytes(StandardCharsets.UTF_8));
+				Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} finally {
+				Files.deleteIfExists(temp);
+			}
+		}
+	}
+	
+	/**
+	 * Gets the port the registry is served on.
+	 * @return the port, or -1 if the exporter writes a file
+	 */
+	public int getPort() {
+		return server == null ? -1 : server.getAddress().getPort();
+	}
+	
+	/**
+	 * Stops the exporter, writing the file a last time.
+	 */
+	public void close() throws IOException {
+		if (scheduler != null) {
+			scheduler.shutdownNow();
+			export();
+		}
+		if (server != null) server.stop(0);
+	}
+	
+	/**
+	 * Sends a text response.
+	 * @param exchange the HTTP exchange
+	 * @param contentType the content type
+	 * @param body the body of the response
+	 * @throws IOException if sending fails
+	 */
+	private static void respond(HttpExchange exchange, String contentType, String body) throws IOException {
+		byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", contentType + "; charset=utf-8");
+		exchange.sendResponseHeaders(200, bytes.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(bytes);
+		}
+	}
+	
+	private final MetricsRegistry registry;
+	private final Path file;
+	private final Format format;
+	private final ScheduledExecutorService scheduler;
+	private final HttpServer server;
+
+}
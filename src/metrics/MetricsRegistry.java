@@ -0,0 +1,136 @@
+package metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.DoubleSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Registry of named metrics, exportable as Prometheus text or JSON lines.
+ * Metrics are created on first use and shared afterwards, so recording from
+ * several threads needs no other synchronization.
+ * @author JLepere2
+ * @date 06/01/2018
+ */
+public class MetricsRegistry {
+
+	/**
+	 * Gets the registry shared by the application.
+	 * @return the default registry
+	 */
+	public static MetricsRegistry getDefault() {
+		return DEFAULT;
+	}
+	
+	/**
+	 * Gets or creates a counter.
+	 * @param name the metric name
+	 * @param help the description of the metric
+	 * @param labels alternating label names and values
+	 * @return the counter
+	 */
+	public Counter counter(String name, String help, String... labels) {
+		return get(name, labels, Counter.class, () -> new Counter(name, help, labels));
+	}
+	
+	/**
+	 * Gets or creates a gauge. The value of an existing gauge is kept.
+	 * @param name the metric name
+	 * @param help the description of the metric
+	 * @param value the supplier of the value, called on export
+	 * @param labels alternating label names and values
+	 * @return the gauge
+	 */
+	public Gauge gauge(String name, String help, DoubleSupplier value, String... labels) {
+		return get(name, labels, Gauge.class, () -> new Gauge(name, help, labels, value));
+	}
+	
+	/**
+	 * Gets or creates a latency histogram.
+	 * @param name the metric name
+	 * @param help the description of the metric
+	 * @param labels alternating label names and values
+	 * @return the histogram
+	 */
+	public Histogram histogram(String name, String help, String... labels) {
+		return get(name, labels, Histogram.class, () -> new Histogram(name, help, labels));
+	}
+	
+	/**
+	 * Gets or creates the metrics of a compression algorithm.
+	 * @param algorithm the name of the algorithm
+	 * @return the metrics of the algorithm
+	 */
+	public CompressionMetrics forAlgorithm(String algorithm) {
+		return algorithms.computeIfAbsent(algorithm, a -> new CompressionMetrics(this, a));
+	}
+	
+	/**
+	 * Exports the metrics in the Prometheus text format.
+	 * @return the exposition text
+	 */
+	public String toPrometheus() {
+		StringBuilder out = new StringBuilder();
+		String previous = null;
+		for (Metric metric : snapshot()) {
+			// the HELP and TYPE lines once per metric family
+			if (!metric.getName().equals(previous)) {
+				out.append("# HELP ").append(metric.getName()).append(' ').append(metric.getHelp()).append('\n');
+				out.append("# TYPE ").append(metric.getName()).append(' ').append(metric.getType()).append('\n');
+				previous = metric.getName();
+			}
+			metric.appendPrometheus(out);
+		}
+		return out.toString();
+	}
+	
+	/**
+	 * Exports the metrics as JSON lines, one object per metric.
+	 * @param timestamp the time of the snapshot in milliseconds since the epoch
+	 * @return the JSON lines
+	 */
+	public String toJsonLines(long timestamp) {
+		StringBuilder out = new StringBuilder();
+		for (Metric metric : snapshot()) {
+			out.append("{\"timestamp\":").append(timestamp).append(',');
+			metric.appendJsonIdentity(out);
+			metric.appendJsonFields(out);
+			out.append("}\n");
+		}
+		return out.toString();
+	}
+	
+	/**
+	 * Gets the metrics sorted by name and labels, so each family is contiguous.
+	 * @return the metrics
+	 */
+	private List<Metric> snapshot() {
+		List<Metric> result = new ArrayList<>(metrics.values());
+		result.sort((a, b) -> a.getKey().compareTo(b.getKey()));
+		return result;
+	}
+	
+	/**
+	 * Gets an existing metric or registers a new one.
+	 * @param name the metric name
+	 * @param labels the labels
+	 * @param type the expected type of the metric
+	 * @param factory the factory creating the metric
+	 * @return the metric
+	 */
+	private <M extends Metric> M get(String name, String[] labels, Class<M> type, Supplier<M> factory) {
+		Metric metric = metrics.computeIfAbsent(Metric.key(name, labels), k -> factory.get());
+		if (!type.isInstance(metric)) {
+			throw new IllegalArgumentException("Metric " + name + " is a " + metric.getType());
+		}
+		return type.cast(metric);
+	}
+	
+	private final Map<String, Metric> metrics = new ConcurrentHashMap<>();
+	private final Map<String, CompressionMetrics> algorithms = new ConcurrentHashMap<>();
+	
+	private static final MetricsRegistry DEFAULT = new MetricsRegistry();
+
+}
@@ -0,0 +1,220 @@
+package service;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import compression_algorithms.PixelBuffer;
+import io.ImageLoader;
+import io.Utilities;
+
+/**
+ * Client of the local compression service, holding one connection.
+ *
+ * The main method load tests a running service:
+ * java service.CompressionClient port algorithm [connections] [requests] [image]
+ * Each connection compresses and decompresses the image the given number of
+ * times, and the latency percentiles and throughput are printed.
+ * @author JLepere2
+ * @date 06/01/2018
+ */
+public class CompressionClient implements AutoCloseable {
+
+	/**
+	 * Main method for the load test.
+	 * @param args command line arguments
+	 */
+	public static void main(String[] args) {
+		if (args.length < 2 || args.length > 5) {
+			System.err.println(USAGE);
+			System.exit(2);
+		}
+		try {
+			int port = Integer.parseInt(args[0]);
+			String algorithm = args[1];
+			int connections = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+			int requests = args.length > 3 ? Integer.parseInt(args[3]) : 100;
+			PixelBuffer image = args.length > 4 ? ImageLoader.load(Paths.get(args[4])) : Utilities.getDefaultImage();
+			
+			// each connection compresses and decompresses the image in a loop
+			ExecutorService pool = Executors.newFixedThreadPool(connections);
+			List<Future<long[]>> results = new ArrayList<>();
+			long start = System.nanoTime();
+			for (int c = 0; c < connections; c ++) {
+				results.add(pool.submit(() -> {
+					long[] latencies = new long[2 * requests];
+					try (CompressionClient client = new CompressionClient(port)) {
+						for (int i = 0; i < requests; i ++) {
+							long t0 = System.nanoTime();
+							byte[] compressed = client.compress(algorithm, image);
+							long t1 = System.nanoTime();
+							client.decompress(algorithm, compressed);
+							latencies[2 * i] = t1 - t0;
+							latencies[2 * i + 1] = System.nanoTime() - t1;
+						}
+					}
+					return latencies;
+				}));
+			}
+			
+			// gather the latencies
+			long[] compress = new long[connections * requests];
+			long[] decompress = new long[connections * requests];
+			int n = 0;
+			for (Future<long[]> result : results) {
+				long[] latencies = result.get();
+				for (int i = 0; i < requests; i ++, n ++) {
+					compress[n] = latencies[2 * i];
+					decompress[n] = latencies[2 * i + 1];
+				}
+			}
+			long elapsed = System.nanoTime() - start;
+			pool.shutdown();
+			
+			// print the report
+			System.out.printf("%d requests in %.3f s, %.1f requests/s%n", 2 * n, elapsed / 1e9, 2 * n / (elapsed / 1e9));
+			printLatencies("compress", compress);
+			printLatencies("decompress", decompress);
+		} catch (Exception e) {
+			System.err.println(e.getMessage());
+			System.exit(1);
+		}
+	}
+	
+	/**
+	 * Prints the latency percentiles of a request type.
+	 * @param type the request type
+	 * @param nanos the latencies in nanoseconds
+	 */
+	private static void printLatencies(String type, long[] nanos) {
+		Arrays.sort(nanos);
+		System.out.printf("%-10s p50 %.3f ms  p90 %.3f ms  p99 %.3f ms  max %.3f ms%n", type,
+				percentile(nanos, 0.5) / 1e6, percentile(nanos, 0.9) / 1e6, percentile(nanos, 0.99) / 1e6,
+				nanos[nanos.length - 1] / 1e6);
+	}
+	
+	/**
+	 * Gets a percentile of sorted values.
+	 * @param sorted the sorted values
+	 * @param q the quantile, from 0 to 1
+	 * @return the value
+	 */
+	private static long percentile(long[] sorted, double q) {
+		return sorted[(int) Math.min(sorted.length - 1, Math.floor(q * sorted.length))];
+	}
+	
+	/**
+	 * Connects to the service on the loopback interface.
+	 * @param port the port of the service
+	 * @throws IOException if the connection fails
+	 */
+	public CompressionClient(int port) throws IOException {
+		socket = new Socket(InetAddress.getLoopbackAddress(), port);
+		socket.setTcpNoDelay(true);
+		in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), BUFFER_SIZE));
+		out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), BUFFER_SIZE));
+	}
+	
+	/**
+	 * Compresses an image.
+	 * @param algorithm the name of the algorithm
+	 * @param image the image
+	 * @return the compressed bytes
+	 * @throws IOException if the connection fails or the service reports an error
+	 */
+	public byte[] compress(String algorithm, PixelBuffer image) throws IOException {
+		int width = image.getWidth();
+		int height = image.getHeight();
+		byte[] pixels = new byte[width * height];
+		image.copyTo(pixels, 0, width);
+		
+		writeHeader(CompressionServer.OP_COMPRESS, algorithm, 8 + pixels.length);
+		out.writeInt(width);
+		out.writeInt(height);
+		out.write(pixels);
+		out.flush();
+		return readResponse(algorithm);
+	}
+	
+	/**
+	 * Decompresses an image.
+	 * @param algorithm the name of the algorithm
+	 * @param compressed the compressed bytes
+	 * @return the image
+	 * @throws IOException if the connection fails or the service reports an error
+	 */
+	public PixelBuffer decompress(String algorithm, byte[] compressed) throws IOException {
+		writeHeader(CompressionServer.OP_DECOMPRESS, algorithm, compressed.length);
+		out.write(compressed);
+		out.flush();
+		byte[] response = readResponse(algorithm);
+		if (response.length < 8) throw new IOException("Response is truncated");
+		ByteBuffer header = ByteBuffer.wrap(response);
+		int width = header.getInt();
+		int height = header.getInt();
+		if ((long) width * height != response.length - 8) throw new IOException("Image size does not match the response");
+		return PixelBuffer.wrap(response, 8, width, height, width);
+	}
+	
+	/**
+	 * Writes the frame length, op and algorithm name of a request.
+	 * @param op the op
+	 * @param algorithm the name of the algorithm
+	 * @param payload the length of the payload
+	 * @throws IOException if writing the connection fails
+	 */
+	private void writeHeader(byte op, String algorithm, int payload) throws IOException {
+		byte[] name = algorithm.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(1 + 2 + name.length + payload);
+		out.writeByte(op);
+		out.writeShort(name.length);
+		out.write(name);
+	}
+	
+	/**
+	 * Reads the response to a request.
+	 * @param algorithm the name of the algorithm of the request
+	 * @return the payload of the response
+	 * @throws IOException if reading the connection fails or the service reports an error
+	 */
+	private byte[] readResponse(String algorithm) throws IOException {
+		int length = in.readInt();
+		if (length < 1 || length > CompressionServer.MAX_FRAME) throw new IOException("Invalid frame length: " + length);
+		byte status = in.readByte();
+		byte[] payload = new byte[length - 1];
+		in.readFully(payload);
+		if (status != CompressionServer.STATUS_OK) {
+			throw new IOException(algorithm + ": " + new String(payload, StandardCharsets.UTF_8));
+		}
+		return payload;
+	}
+	
+	/**
+	 * Closes the connection.
+	 * @throws IOException if closing the socket fails
+	 */
+	public void close() throws IOException {
+		socket.close();
+	}
+	
+	private final Socket socket;
+	private final DataInputStream in;
+	private final DataOutputStream out;
+	
+	private static final int BUFFER_SIZE = 1 << 16;
+	private static final String USAGE = "Usage: java service.CompressionClient port algorithm [connections] [requests] [image]";
+
+}
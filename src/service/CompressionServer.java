@@ -0,0 +1,478 @@
+package service;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import cache.CompressionCache;
+import compression_algorithms.CachedCompression;
+import compression_algorithms.CompressionAlgorithm;
+import compression_algorithms.CompressionAlgorithms;
+import compression_algorithms.InstrumentedCompression;
+import compression_algorithms.PixelBuffer;
+import compression_algorithms.RowSink;
+import jobs.CompressionJobs;
+import metrics.Counter;
+import metrics.MetricsExporter;
+import metrics.MetricsRegistry;
+
+/**
+ * Long lived local compression service.
+ *
+ * Usage: java service.CompressionServer port [coders] [--metrics-port port] [--cache MEGABYTES]
+ *
+ * Clients connect to the loopback port and send length prefixed frames, any
+ * number per connection. A request frame is an int length followed by an op
+ * byte, the algorithm name as a short length and UTF-8 bytes, and the payload.
+ * To compress, the payload is the width and height as ints and the raw 8 bit
+ * gray values; the response payload is the compressed bytes. To decompress,
+ * the payload is the compressed bytes; the response payload is the width,
+ * height and gray values.
+ * A response frame is an int length followed by a status byte and the payload,
+ * or an error message in UTF-8.
+ *
+ * Connections are served on virtual threads when the JVM has them. The coding
+ * itself runs on a few long lived coder threads, which keep the warmed up
+ * per thread encoder and decoder state of each algorithm. Each request goes to
+ * an idle coder; only while every coder is busy does a coder also take the
+ * waiting requests for the same algorithm and op, up to a byte budget, and code
+ * them as one batch with the state it just used. The frames and responses in
+ * flight share a byte budget of half the heap at most: a connection waits for
+ * room before reading a frame, and a decompression that does not fit is
+ * refused. With a cache,
+ * repeated images are answered from it after hashing.
+ * @author JLepere2
+ * @date 06/01/2018
+ */
+public class CompressionServer implements AutoCloseable {
+
+	/**
+	 * Main method for the compression service.
+	 * @param args command line arguments
+	 */
+	public static void main(String[] args) {
+		
+		// separate the options from the positional arguments
+		List<String> positional = new ArrayList<>();
+		String metricsPort = null;
+		String cacheSize = null;
+		for (int i = 0; i < args.length; i ++) {
+			if (args[i].equals("--metrics-port") && i + 1 < args.length) {
+				metricsPort = args[++ i];
+			} else if (args[i].equals("--cache") && i + 1 < args.length) {
+				cacheSize = args[++ i];
+			} else if (args[i].startsWith("--")) {
+				System.err.println(USAGE);
+				System.exit(2);
+			} else {
+				positional.add(args[i]);
+			}
+		}
+		if (positional.size() < 1 || positional.size() > 2) {
+			System.err.println(USAGE);
+			System.exit(2);
+		}
+		
+		try {
+			int port = Integer.parseInt(positional.get(0));
+			int coders = positional.size() == 2 ? Integer.parseInt(positional.get(1)) : Runtime.getRuntime().availableProcessors();
+			MetricsRegistry registry = MetricsRegistry.getDefault();
+			if (metricsPort != null) MetricsExporter.serve(registry, Integer.parseInt(metricsPort));
+			
+			CompressionCache cache = null;
+			if (cacheSize != null) cache = new CompressionCache(Long.parseLong(cacheSize) << 20, null, 0, registry);
+			CompressionServer server = new CompressionServer(port, coders, registry, cache);
+			System.out.println("Compression service listening on port " + server.getPort());
+		} catch (IllegalArgumentException | IOException e) {
+			System.err.println(e.getMessage());
+			System.exit(2);
+		}
+	}
+	
+	/**
+	 * Starts the service on the loopback interface. The coders warm up every
+	 * registered algorithm before taking requests.
+	 * @param port the port to listen on, 0 for any free port
+	 * @param coders the number of coder threads
+	 * @param registry the registry receiving the metrics of the service
+	 * @throws IOException if the port cannot be bound
+	 */
+	public CompressionServer(int port, int coders, MetricsRegistry registry) throws IOException {
+		this(port, coders, registry, null);
+	}
+	
+	/**
+	 * Starts the service on the loopback interface with a cache of the compressed images.
+	 * @param port the port to listen on, 0 for any free port
+	 * @param coders the number of coder threads
+	 * @param registry the registry receiving the metrics of the service
+	 * @param cache the cache of compressed images, or null for none
+	 * @throws IOException if the port cannot be bound
+	 */
+	public CompressionServer(int port, int coders, MetricsRegistry registry, CompressionCache cache) throws IOException {
+		if (coders < 1) throw new IllegalArgumentException("Number of coders must be positive");
+		this.registry = registry;
+		this.cache = cache;
+		this.requests = registry.counter("service_requests_total", "Requests served by the compression service");
+		this.failures = registry.counter("service_failures_total", "Requests failed by the compression service");
+		this.batches = registry.counter("service_batches_total", "Batches of requests coded by the compression service");
+		
+		// one instance of each algorithm, so every request reuses its per thread state
+		for (CompressionAlgorithm algo : CompressionAlgorithms.getAll()) algorithm(algo.toString());
+		
+		// coder threads, warmed up before they take requests
+		coderThreads = new ArrayList<>(coders);
+		for (int i = 0; i < coders; i ++) {
+			Thread coder = new Thread(this::code, "compression-coder-" + (i + 1));
+			coder.setDaemon(true);
+			coderThreads.add(coder);
+			coder.start();
+		}
+		
+		// serve each connection on its own thread
+		ExecutorService virtual = CompressionJobs.newVirtualThreadExecutor();
+		connections = virtual != null ? virtual : CompressionJobs.newPool(MAX_CONNECTIONS, "compression-connection");
+		serverSocket = new ServerSocket(port, 0, InetAddress.getLoopbackAddress());
+		new Thread(this::accept, "compression-acceptor").start();
+	}
+	
+	/**
+	 * Gets the port the service listens on.
+	 * @return the port
+	 */
+	public int getPort() {
+		return serverSocket.getLocalPort();
+	}
+	
+	/**
+	 * Stops accepting connections and stops the coders.
+	 * @throws IOException if closing the server socket fails
+	 */
+	public void close() throws IOException {
+		serverSocket.close();
+		connections.shutdownNow();
+		for (Thread coder : coderThreads) coder.interrupt();
+	}
+	
+	/**
+	 * Accepts connections until the server socket is closed.
+	 */
+	private void accept() {
+		while (!serverSocket.isClosed()) {
+			try {
+				// at most MAX_CONNECTIONS connections at once, even on virtual threads
+				connectionSlots.acquire();
+				Socket socket = serverSocket.accept();
+				socket.setTcpNoDelay(true);
+				connections.execute(() -> serve(socket));
+			} catch (InterruptedException e) {
+				return;
+			} catch (IOException | RuntimeException e) {
+				connectionSlots.release();
+				if (!serverSocket.isClosed()) System.err.println("Failed to accept a connection: " + e.getMessage());
+			}
+		}
+	}
+	
+	/**
+	 * Serves the requests of a connection until the client closes it.
+	 * @param socket the connection
+	 */
+	private void serve(Socket socket) {
+		try (Socket s = socket;
+				DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream(), BUFFER_SIZE));
+				DataOutputStream out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream(), BUFFER_SIZE))) {
+			while (true) {
+				
+				// read the next frame
+				int length;
+				try {
+					length = in.readInt();
+				} catch (EOFException e) {
+					return;
+				}
+				if (length < 0 || length > MAX_FRAME) throw new IOException("Invalid frame length: " + length);
+				
+				// wait for room for the frame and a compressed result of up to its size
+				int charge = 2 * length;
+				if (charge > inFlightBudget) throw new IOException("Frame is larger than the service accepts: " + length);
+				inFlight.acquire(charge);
+				Request request = new Request(charge);
+				try {
+					request.frame = new byte[length];
+					in.readFully(request.frame);
+					
+					// code it on a coder thread and send the response
+					request.parseKey();
+					queue.add(request);
+					writeResponse(out, request.result);
+				} finally {
+					inFlight.release(request.charged);
+				}
+			}
+		} catch (SocketException e) {
+			// the client went away
+		} catch (IOException e) {
+			System.err.println("Closing connection: " + e.getMessage());
+		} catch (InterruptedException e) {
+			// the service was closed
+		} finally {
+			connectionSlots.release();
+		}
+	}
+	
+	/**
+	 * Writes the response to a request once it is coded.
+	 * @param out the stream of the connection
+	 * @param result the result of the request
+	 * @throws IOException if writing the connection fails
+	 */
+	private void writeResponse(DataOutputStream out, CompletableFuture<ByteBuffer> result) throws IOException {
+		ByteBuffer payload;
+		try {
+			payload = result.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Service is shutting down");
+		} catch (ExecutionException e) {
+			failures.increment();
+			Throwable cause = e.getCause();
+			String text = cause.getMessage() != null ? cause.getMessage() : cause.toString();
+			byte[] message = text.getBytes(StandardCharsets.UTF_8);
+			out.writeInt(1 + message.length);
+			out.writeByte(STATUS_ERROR);
+			out.write(message);
+			out.flush();
+			return;
+		}
+		out.writeInt(1 + payload.remaining());
+		out.writeByte(STATUS_OK);
+		out.write(payload.array(), payload.arrayOffset() + payload.position(), payload.remaining());
+		out.flush();
+	}
+	
+	/**
+	 * Runs on each coder thread: warms up the algorithms, then codes the queued
+	 * requests until interrupted.
+	 */
+	private void code() {
+		warmUp();
+		List<Request> batch = new ArrayList<>(MAX_BATCH);
+		try {
+			while (true) {
+				
+				// wait for a request as an idle coder
+				Request first;
+				idleCoders.incrementAndGet();
+				try {
+					first = queue.take();
+				} finally {
+					idleCoders.decrementAndGet();
+				}
+				batch.add(first);
+				
+				// while no other coder is idle, also take the waiting requests sharing the state of this one
+				long bytes = first.frame.length;
+				if (first.key != null) {
+					Iterator<Request> waiting = queue.iterator();
+					while (idleCoders.get() == 0 && batch.size() < MAX_BATCH && bytes < BATCH_BYTES && waiting.hasNext()) {
+						Request next = waiting.next();
+						if (first.key.equals(next.key) && queue.remove(next)) {
+							batch.add(next);
+							bytes += next.frame.length;
+						}
+					}
+				}
+				
+				// code the batch
+				for (Request request : batch) request.run();
+				batches.increment();
+				requests.add(batch.size());
+				batch.clear();
+			}
+		} catch (InterruptedException e) {
+			// the service was closed
+		}
+	}
+	
+	/**
+	 * Compresses and decompresses a small image with every algorithm on this
+	 * thread, so the first requests do not pay for class loading, compilation
+	 * and the allocation of the per thread state.
+	 */
+	private void warmUp() {
+		int[][] image = new int[WARM_UP_SIZE][WARM_UP_SIZE];
+		for (int y = 0; y < WARM_UP_SIZE; y ++) {
+			for (int x = 0; x < WARM_UP_SIZE; x ++) image[y][x] = (x + y + (x * y & 7)) & 0xFF;
+		}
+		PixelBuffer pixels = PixelBuffer.fromMatrix(image);
+		for (Map.Entry<String, CompressionAlgorithm> entry : warmUpAlgorithms.entrySet()) {
+			CompressionAlgorithm algo = entry.getValue();
+			try {
+				for (int i = 0; i < WARM_UP_ROUNDS; i ++) {
+					algo.decodePixels(algo.encode(pixels));
+				}
+			} catch (Throwable e) {
+				// a cold algorithm is slower, a dead coder would hang its requests
+				System.err.println("Failed to warm up " + entry.getKey() + ": " + e);
+			}
+		}
+	}
+	
+	/**
+	 * Gets the shared instance of an algorithm. forName accepts each wrapper
+	 * prefix once, so the names a client can send form a small fixed set and
+	 * the instances are kept for the life of the service.
+	 * @param name the name of the algorithm, as accepted by CompressionAlgorithms.forName
+	 * @return the algorithm, recording the metrics of the service
+	 * @throws IllegalArgumentException if no algorithm matches the name
+	 */
+	private CompressionAlgorithm algorithm(String name) {
+		String key = name.replace(" ", "").toLowerCase();
+		CompressionAlgorithm algo = algorithms.get(key);
+		if (algo != null) return algo;
+		return algorithms.computeIfAbsent(key, k -> {
+			// warm up the bare algorithm, so warm up runs do not show in the metrics
+			CompressionAlgorithm bare = CompressionAlgorithms.forName(name);
+			warmUpAlgorithms.put(k, bare);
+			return new InstrumentedCompression(cache == null ? bare : new CachedCompression(bare, cache), registry);
+		});
+	}
+	
+	/*
+	 * A request frame and its result, coded on a coder thread
+	 */
+	class Request {
+		Request(int charged) {
+			this.charged = charged;
+		}
+		void parseKey() {
+			// the op and algorithm name, which select the coder state the request uses
+			int nameLength = frame.length < 3 ? -1 : ((frame[1] & 0xFF) << 8 | (frame[2] & 0xFF));
+			key = nameLength < 0 || 3 + nameLength > frame.length ? null
+					: (char) frame[0] + new String(frame, 3, nameLength, StandardCharsets.UTF_8).replace(" ", "").toLowerCase();
+		}
+		void run() {
+			try {
+				result.complete(process(ByteBuffer.wrap(frame)));
+			} catch (Throwable e) {
+				// even an error such as running out of memory must answer the client and keep the coder alive
+				result.completeExceptionally(e);
+			}
+		}
+		ByteBuffer process(ByteBuffer data) throws IOException {
+			if (data.remaining() < 3) throw new EOFException("Request is truncated");
+			byte op = data.get();
+			byte[] name = new byte[data.getShort() & 0xFFFF];
+			data.get(name);
+			CompressionAlgorithm algo = algorithm(new String(name, StandardCharsets.UTF_8));
+			if (op == OP_COMPRESS) {
+				
+				// compress the gray values in place
+				int width = data.getInt();
+				int height = data.getInt();
+				if (width < 0 || height < 0 || (long) width * height != data.remaining()) {
+					throw new IOException("Image size does not match the payload");
+				}
+				PixelBuffer pixels = PixelBuffer.wrap(frame, data.position(), width, height, width);
+				return ByteBuffer.wrap(algo.encode(pixels));
+			} else if (op == OP_DECOMPRESS) {
+				
+				// decompress straight from the frame into the response
+				ResponseRowSink sink = new ResponseRowSink(this);
+				algo.decode(data, sink);
+				if (sink.response == null) throw new IOException("No image was decoded");
+				return ByteBuffer.wrap(sink.response);
+			} else {
+				throw new IOException("Unknown op: " + op);
+			}
+		}
+		byte[] frame;
+		String key;
+		volatile int charged;
+		final CompletableFuture<ByteBuffer> result = new CompletableFuture<>();
+	}
+	
+	/*
+	 * Sink decoding into the payload of a decompression response. It refuses
+	 * images too large to send back, or without room in the byte budget,
+	 * before the decoder allocates anything of their size.
+	 */
+	class ResponseRowSink implements RowSink {
+		ResponseRowSink(Request request) {
+			this.request = request;
+		}
+		public void begin(int width, int height) throws IOException {
+			if (width < 0 || height < 0 || (long) width * height > MAX_FRAME - 8 || Math.max(width, height) > MAX_FRAME - 8) {
+				throw new IOException("Image is too large to send: " + width + "x" + height);
+			}
+			int size = 8 + width * height;
+			if (!inFlight.tryAcquire(size)) throw new IOException("Service is busy, retry later");
+			request.charged += size;
+			this.width = width;
+			response = new byte[size];
+			ByteBuffer.wrap(response).putInt(width).putInt(height);
+		}
+		public void writeRow(int y, int[] row) {
+			int start = 8 + y * width;
+			for (int x = 0; x < width; x ++) response[start + x] = (byte) row[x];
+		}
+		final Request request;
+		int width;
+		byte[] response;
+	}
+	
+	private final MetricsRegistry registry;
+	private final CompressionCache cache;
+	private final Counter requests;
+	private final Counter failures;
+	private final Counter batches;
+	
+	private final Map<String, CompressionAlgorithm> algorithms = new ConcurrentHashMap<>();
+	private final Map<String, CompressionAlgorithm> warmUpAlgorithms = new ConcurrentHashMap<>();
+	private final BlockingQueue<Request> queue = new LinkedBlockingQueue<>();
+	private final AtomicInteger idleCoders = new AtomicInteger();
+	private final int inFlightBudget = (int) Math.min(MAX_IN_FLIGHT, Runtime.getRuntime().maxMemory() / 2);
+	private final Semaphore inFlight = new Semaphore(inFlightBudget);
+	private final Semaphore connectionSlots = new Semaphore(MAX_CONNECTIONS);
+	private final List<Thread> coderThreads;
+	private final ExecutorService connections;
+	private final ServerSocket serverSocket;
+	
+	static final byte OP_COMPRESS = 'C';
+	static final byte OP_DECOMPRESS = 'D';
+	static final byte STATUS_OK = 0;
+	static final byte STATUS_ERROR = 1;
+	static final int MAX_FRAME = 1 << 28;
+	
+	private static final int MAX_CONNECTIONS = 256;
+	private static final int MAX_IN_FLIGHT = 1 << 30;
+	private static final int MAX_BATCH = 64;
+	private static final int BATCH_BYTES = 1 << 20;
+	private static final int BUFFER_SIZE = 1 << 16;
+	private static final int WARM_UP_SIZE = 64;
+	private static final int WARM_UP_ROUNDS = 20;
+	private static final String USAGE = "Usage: java service.CompressionServer port [coders] [--metrics-port port] [--cache MEGABYTES]";
+
+}